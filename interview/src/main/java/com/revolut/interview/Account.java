@@ -3,14 +3,23 @@ package com.revolut.interview;
 import static com.revolut.interview.TransactionType.CREDIT;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * The current balance, version and last committed transaction id are all maintained as transactions are added
+ * and committed, so none of them need to walk the transaction history.
+ * Money is held as {@link Money} minor units, and only converted to {@link BigDecimal} for JSON.
+ */
 public class Account {
     private Integer number;
     private String customerName;
-    private BigDecimal overdraftLimit = BigDecimal.ZERO;
-    private List<AccountTransaction> transactions = new ArrayList<>();
+    private long overdraftLimit;
+    private TransactionHistory transactions = new TransactionHistory();
+    private long currentBalance;
+    private int version;
+    private int committedTransactionCount;
+    private Integer lastTransactionId;
+    private Integer subLedgerOf;
 
     public Integer getNumber() {
         return number;
@@ -29,60 +38,117 @@ public class Account {
     }
 
     public BigDecimal getOverdraftLimit() {
-        return overdraftLimit;
+        return Money.toBigDecimal(overdraftLimit);
     }
 
     public void setOverdraftLimit(BigDecimal overdraftLimit) {
-        this.overdraftLimit = overdraftLimit;
+        this.overdraftLimit = Money.toMinorUnits(overdraftLimit);
+    }
+    
+    public long overdraftLimitInMinorUnits() {
+        return overdraftLimit;
     }
 
     public List<AccountTransaction> getTransactions() {
         return transactions;
     }
 
+    TransactionHistory getTransactionHistory() {
+        return transactions;
+    }
+
     public void setTransactions(List<AccountTransaction> transactions) {
-        this.transactions = transactions;
+        this.transactions = TransactionHistory.of(transactions);
+        this.currentBalance = this.transactions.isEmpty() ? 0 
+                : this.transactions.get(this.transactions.size() - 1).balanceInMinorUnits();
+    }
+
+    /**
+     * The version is incremented by the repository every time the account is committed, 
+     * so a stale copy of the account can be detected with a single compare.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
     }
     
     public BigDecimal getCurrentBalance() {
-        if (this.transactions.isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-        return getLastTransaction().getBalance();
+        return Money.toBigDecimal(currentBalance);
     }
     
+    public long currentBalanceInMinorUnits() {
+        return currentBalance;
+    }
+    
+    /**
+     * @return - the balance plus the overdraft limit, which is the most that can be transferred out of the account
+     */
+    public long availableFundsInMinorUnits() {
+        return Math.addExact(currentBalance, overdraftLimit);
+    }
+    
+    /**
+     * @return - the id of the last transaction committed to the repository, 
+     *              or null when no transactions have been committed yet
+     */
     public Integer getLastTransactionId() {
-        AccountTransaction lastTransaction = getLastTransaction();         
-        return lastTransaction==null? null : getLastTransaction().getId();
+        return lastTransactionId;
     }
     
-    public Integer getLastNonNullTransactionId() {
-        for(int i=transactions.size() - 1; i >= 0; i--) {
-            if (transactions.get(i).getId()!=null) {
-                return transactions.get(i).getId();
-            }
-        }
-        return null;
+    /**
+     * @return - the number of the hot account whose credits this account takes a share of, 
+     *              or null when it is an account in its own right
+     * @see HotAccounts
+     */
+    Integer getSubLedgerOf() {
+        return subLedgerOf;
+    }
+    
+    /**
+     * @return - the number of transactions at the start of the history that have already been committed, 
+     *              any transactions after these are new and have no id yet
+     */
+    int getCommittedTransactionCount() {
+        return committedTransactionCount;
     }
     
-    private AccountTransaction getLastTransaction() {
-        if (this.transactions.isEmpty()) {
-            return null;
+    /**
+     * Records that every transaction currently in the history has been committed.
+     */
+    void markTransactionsCommitted() {
+        this.committedTransactionCount = this.transactions.size();
+        if (!this.transactions.isEmpty()) {
+            this.lastTransactionId = this.transactions.get(this.transactions.size() - 1).getId();
         }
-        return this.transactions.get(this.transactions.size() - 1);
     }
     
     public void addTransaction(AccountTransaction transaction) {
         this.transactions.add(transaction);
+        this.currentBalance = transaction.balanceInMinorUnits();
     }
     
     public void addTransaction(TransactionType type, BigDecimal amount) {
-        BigDecimal newBalance = type.equals(CREDIT) ? getCurrentBalance().add(amount) : getCurrentBalance().subtract(amount);
-        this.transactions.add(
+        addTransactionInMinorUnits(type, Money.toMinorUnits(amount));
+    }
+    
+    public void addTransactionInMinorUnits(TransactionType type, long amount) {
+        addTransactionInMinorUnits(type, amount, null);
+    }
+    
+    /**
+     * @param idempotencyKey - the key of the transfer the transaction is part of, or null when it has none
+     */
+    public void addTransactionInMinorUnits(TransactionType type, long amount, String idempotencyKey) {
+        long newBalance = type.equals(CREDIT) ? Math.addExact(currentBalance, amount) : Math.subtractExact(currentBalance, amount);
+        addTransaction(
                 new AccountTransaction.Builder()
                     .type(type)
-                    .amount(amount)
-                    .balance(newBalance)
+                    .amountInMinorUnits(amount)
+                    .balanceInMinorUnits(newBalance)
+                    .idempotencyKey(idempotencyKey)
                     .build()
             );
     }
@@ -91,11 +157,19 @@ public class Account {
     public static class Builder {
         private Account instance = new Account();
         
+        /**
+         * Copies the account in O(1), as the new account shares the transaction history of the original.
+         */
         public Builder copy(Account account) {
             number(account.number);
             customerName(account.customerName);
-            overdraftLimit(account.overdraftLimit);
-            account.getTransactions().forEach(trans -> transaction(trans));
+            instance.overdraftLimit = account.overdraftLimit;
+            instance.transactions = account.transactions.copy();
+            instance.currentBalance = account.currentBalance;
+            instance.version = account.version;
+            instance.committedTransactionCount = account.committedTransactionCount;
+            instance.lastTransactionId = account.lastTransactionId;
+            instance.subLedgerOf = account.subLedgerOf;
             return this;
         }
         
@@ -110,7 +184,7 @@ public class Account {
         }
         
         public Builder overdraftLimit(BigDecimal overdraftLimit) {
-            instance.overdraftLimit = overdraftLimit;
+            instance.overdraftLimit = Money.toMinorUnits(overdraftLimit);
             return this;
         }
         
@@ -118,8 +192,39 @@ public class Account {
             return overdraftLimit(new BigDecimal(overdraftLimit));
         }
         
+        public Builder overdraftLimitInMinorUnits(long overdraftLimitInMinorUnits) {
+            instance.overdraftLimit = overdraftLimitInMinorUnits;
+            return this;
+        }
+        
+        /**
+         * Sets the balance of an account whose transaction history is not kept by its repository
+         */
+        Builder currentBalanceInMinorUnits(long currentBalanceInMinorUnits) {
+            instance.currentBalance = currentBalanceInMinorUnits;
+            return this;
+        }
+        
+        Builder lastTransactionId(Integer lastTransactionId) {
+            instance.lastTransactionId = lastTransactionId;
+            return this;
+        }
+        
+        /**
+         * Uses the history as it is, rather than adding its transactions one at a time
+         */
+        Builder transactionHistory(TransactionHistory transactions) {
+            instance.transactions = transactions;
+            return this;
+        }
+        
+        Builder subLedgerOf(Integer accountNo) {
+            instance.subLedgerOf = accountNo;
+            return this;
+        }
+        
         public Builder transaction(AccountTransaction transaction) {
-            instance.transactions.add(transaction);
+            instance.addTransaction(transaction);
             return this;
         }        
         public Account build() {
@@ -1,122 +1,410 @@
 package com.revolut.interview;
 
+import static com.revolut.interview.TransactionType.CREDIT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
+/**
+ * Holds every account in memory. When created with an {@link AccountJournal} every commit is also journaled 
+ * while its account locks are held, so the journal has the versions of each account in order, 
+ * and the commit only returns once its record is durable. Snapshots keep the journal that has to be replayed short.
+ * Accounts are journaled before they are published, so no reader ever sees a version that is not in the journal,
+ * and a snapshot rolls the journal holding every account lock, so the accounts in any record before the roll 
+ * have already been published when it reads them.
+ * A commit whose record fails to become durable has still been published, so it fails with a {@link NotDurableException}
+ * telling the caller not to run it again.
+ * With a {@link ColdTransactionStore} only the most recent transactions of each account are kept on the heap.
+ * Accounts are looked up by their number in an {@link AccountIndex}, without boxing or hashing it.
+ * Account numbers and transaction ids come from {@link IdAllocator}s, so threads can take transaction ids in blocks.
+ */
 public class AccountCache implements AccountRepository {
 
-    private static AtomicInteger accountCounter = new AtomicInteger();
-    private static AtomicInteger transactionCounter = new AtomicInteger();
+    // Account numbers are seen by clients and only taken once per account, so they are handed out in sequence
+    private final IdAllocator accountIds = new IdAllocator(1);
+    private final IdAllocator transactionIds = IdAllocator.fromSystemProperties();
+    private final int firstIdAfter;
+    
+    private final AccountIndex cache = new AccountIndex();
+    
+    private final AccountLocks locks = new AccountLocks();
+    
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+    
+    private final AccountJournal journal;
+    private final List<FundTransferRequest> recoveredTransfers;
+    private final List<Account> recoveredSubLedgers;
+    
+    private ColdTransactionStore coldStore;
+    private int hotTransactions;
+    
+    public AccountCache() {
+        this(0, null);
+    }
     
-    private static Map<Integer, Account> cache = new ConcurrentHashMap<>();
+    /**
+     * Recovers the accounts in the journal, and journals every commit made through this instance from then on.
+     */
+    public AccountCache(AccountJournal journal) {
+        this(0, journal);
+    }
+    
+    /**
+     * @param firstIdAfter - account numbers and transaction ids are given out from the next id after this,
+     *              so that caches for separate ranges of ids can be used together
+     * @param journal - the journal to recover from and to journal every commit to, or null when not journaled
+     */
+    public AccountCache(int firstIdAfter, AccountJournal journal) {
+        this(firstIdAfter, Integer.MAX_VALUE, journal);
+    }
+    
+    /**
+     * @param lastId - no account number or transaction id is given out above this, 
+     *              creating an account or committing a transaction fails instead
+     */
+    public AccountCache(int firstIdAfter, int lastId, AccountJournal journal) {
+        Validate.isTrue(firstIdAfter >= 0, "Ids must start after zero or above!");
+        Validate.isTrue(lastId > firstIdAfter, "The last id must be after the first!");
+        this.firstIdAfter = firstIdAfter;
+        this.journal = journal;
+        accountIds.limitTo(lastId);
+        transactionIds.limitTo(lastId);
+        reset();
+        if (journal != null) {
+            journal.recover(cache, accountIds, transactionIds);
+        }
+        this.recoveredTransfers = journal == null ? Collections.emptyList() : journal.getRecentTransfers();
+        this.recoveredSubLedgers = cache.values().stream()
+                .filter(account -> account.getSubLedgerOf() != null)
+                .map(this::copyOf)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Writes a snapshot of every account and the counters next to the journal, while writers carry on, 
+     * so that recovery only needs to replay the journal written after it.
+     */
+    public void snapshot() {
+        Validate.validState(journal != null, "Only a journaled cache can be snapshot!");
+        journal.snapshot(cache.values(), accountIds, transactionIds, roll -> {
+            locks.lockAll();
+            try {
+                return roll.get();
+            } finally {
+                locks.unlockAll();
+            }
+        });
+    }
+
+    /**
+     * Keeps at least the given number of the most recent transactions of each account on the heap 
+     * as it is committed, spilling older transactions to the cold store in whole chunks.
+     */
+    public AccountCache withColdStore(ColdTransactionStore coldStore, int hotTransactions) {
+        Validate.isTrue(hotTransactions >= 0, "The number of hot transactions cannot be negative!");
+        this.coldStore = coldStore;
+        this.hotTransactions = hotTransactions;
+        cache.values().forEach(this::spill);
+        return this;
+    }
+
+    public AccountLocks getLocks() {
+        return locks;
+    }
 
-    public static void clearAndReset() {
-        accountCounter.set(0);
-        transactionCounter.set(0);
+    /**
+     * Empties the cache and starts the ids again, this is not journaled.
+     */
+    public void clearAndReset() {
+        reset();
+    }
+    
+    private void reset() {
+        accountIds.reset();
+        accountIds.raiseTo(firstIdAfter);
+        transactionIds.reset();
+        transactionIds.raiseTo(firstIdAfter);
         cache.clear();
     }
     
     @Override
     public Account create(Account account) {
         Account newAccount = copyOf(account);
-        newAccount.setNumber(new Integer(accountCounter.incrementAndGet()));
+        newAccount.setNumber(accountIds.next());
+        newAccount.setVersion(1);
         setTransactionIds(newAccount);
-        cache.put(newAccount.getNumber(), newAccount);
+        long position;
+        // Locked so no update of the account can be journaled ahead of its creation
+        locks.lock(newAccount.getNumber());
+        try {
+            position = journal(Collections.singletonList(null), Collections.singletonList(newAccount));
+            cache.put(newAccount.getNumber().intValue(), newAccount);
+        } finally {
+            locks.unlock(newAccount.getNumber());
+        }
+        awaitDurable(position);
         return copyOf(newAccount);
     }
 
     /**
      * Updates the account only if no other thread has already updated it.
-     * This is checked by ensuring that the last transaction id in the old version is present in the new version 
-     * and is the last before any of the new transactions in the updated account.
-     * If it is not then the data being used is out of date, and thus the change is rolled back and 
-     * a {@link ConcurrentModificationException} is thrown.
+     * This is checked by ensuring that the version of the account being updated is still the version in the cache.
+     * If it is not then the data being used is out of date, so the update is rejected before it is ever visible 
+     * to readers and a {@link ConcurrentModificationException} is thrown.
+     * Only writers take the account lock, readers never block.
      */
     @Override
     public Account update(Account account) {
+        Account result;
+        long position;
+        locks.lock(account.getNumber());
+        try {
+            Account oldAccount = validate(account);
+            Account newAccount = prepare(oldAccount, account);
+            position = journal(Collections.singletonList(oldAccount), Collections.singletonList(newAccount));
+            result = commit(oldAccount, newAccount);
+        } finally {
+            locks.unlock(account.getNumber());
+        }
+        awaitDurable(position);
+        return result;
+    }
+
+    /**
+     * @return - the committed account in the cache that the given account is a modified copy of
+     */
+    private Account validate(Account account) {
+        Account oldAccount = cache.get(account.getNumber().intValue());
+        Validate.notNull(oldAccount, "Account number %d is not valid!", account.getNumber());
+        if (oldAccount.getVersion() != account.getVersion()) {
+            aborts.increment();
+            throw new ConcurrentModificationException("Current excecution is aborted as account is out of date!");
+        }
+        return oldAccount;
+    }
+
+    /**
+     * @return - the next version of the account, with ids for its new transactions
+     */
+    private Account prepare(Account oldAccount, Account account) {
         Account newAccount = copyOf(account);
-        synchronized (newAccount.getNumber()) {
-            Integer lastTransactionId = newAccount.getLastNonNullTransactionId();
-            setTransactionIds(newAccount);
-            Account oldAccount = cache.put(newAccount.getNumber(), newAccount);
-            if ((lastTransactionId==null && oldAccount.getLastTransactionId()==null) 
-                || lastTransactionId.equals(oldAccount.getLastTransactionId())) {
-                return copyOf(newAccount);
-            } else {
-                // if here then we need to roll back the change
-                cache.put(oldAccount.getNumber(), oldAccount);
-                throw new ConcurrentModificationException("Current excecution is aborted as account is out of date!");                
-            }
+        newAccount.setVersion(oldAccount.getVersion() + 1);
+        setTransactionIds(newAccount);
+        return newAccount;
+    }
+
+    /**
+     * Publishes the new version of the account with a compare and set against the version it was validated against,
+     * once it has been journaled. The account lock is held by the caller so the compare and set can only fail 
+     * if the cache has been cleared.
+     */
+    private Account commit(Account oldAccount, Account newAccount) {
+        if (!cache.replace(newAccount.getNumber().intValue(), oldAccount, newAccount)) {
+            aborts.increment();
+            throw new ConcurrentModificationException("Current excecution is aborted as account is out of date!");
+        }
+        commits.increment();
+        spill(newAccount);
+        return copyOf(newAccount);
+    }
+    
+    private void spill(Account account) {
+        if (coldStore != null) {
+            account.getTransactionHistory().spill(hotTransactions, coldStore);
         }
-                
     }
 
+    /**
+     * Transaction ids always increase within an account, so its history can be searched by id.
+     * The account is either new or its lock is held, so no other commit can give it a transaction id in between.
+     */
     private void setTransactionIds(Account account) {
         List<AccountTransaction> transactions = account.getTransactions();
-        int idCount = 0;
-        for (int i = transactions.size() - 1; i>=0 ; i--) {
-            AccountTransaction transaction = transactions.get(i);
-            if (transaction.getId()==null) {
-                idCount++;
-            } else {
-                break;
-            }
-        }
-        for (int i = transactions.size() - idCount; i<transactions.size(); i++) {
-            transactions.get(i).setId(new Integer(transactionCounter.incrementAndGet()));
+        int lastId = account.getLastTransactionId() == null ? 0 : account.getLastTransactionId();
+        for (int i = account.getCommittedTransactionCount(); i<transactions.size(); i++) {
+            lastId = transactionIds.next(lastId);
+            transactions.get(i).setId(lastId);
         }
+        account.markTransactionsCommitted();
     }
 
     @Override
     public Account get(Integer accountNo) {
-        Account account = cache.get(accountNo);
+        Account account = accountNo == null ? null : cache.get(accountNo.intValue());
         Validate.notNull(account, "Account number %d is not valid!", accountNo);
         return copyOf(account);
     }
     
     /**
-     * To reduces the chance of java deadlock we ensure that the accounts are synchronized in a consistent order.
-     * The synchronization will then prevent any concurrent updates across the same accounts during the operation.
-     * In addition this operation is atomic - all or nothing will complete.
+     * To avoid java deadlock the lock stripes of the accounts are always acquired in a consistent order by {@link AccountLocks}.
+     * Holding both stripes then prevents any concurrent updates across the same accounts during the operation.
+     * In addition this operation is atomic - both accounts are validated before either is published, 
+     * so all or nothing will complete.
      */
     @Override
     public Pair<Account, Account> update(Pair<Account, Account> accounts) {
-        Account firstAccount;
-        Account secondAccount;
-        boolean reverseSyncOrder = accounts.getLeft().getNumber() > accounts.getRight().getNumber();
-        if (reverseSyncOrder) {
-            firstAccount = accounts.getRight();
-            secondAccount = accounts.getLeft();            
-        } else {
-            firstAccount = accounts.getLeft();
-            secondAccount = accounts.getRight();
+        Account firstAccount = accounts.getLeft();
+        Account secondAccount = accounts.getRight();
+        Validate.isTrue(!firstAccount.getNumber().equals(secondAccount.getNumber()), 
+                "Account number %d cannot be updated twice at once!", firstAccount.getNumber());
+        
+        Pair<Account, Account> result;
+        long position;
+        locks.lock(firstAccount.getNumber(), secondAccount.getNumber());
+        try {
+            Account firstOldAccount = validate(firstAccount);
+            Account secondOldAccount = validate(secondAccount);
+            Account firstNewAccount = prepare(firstOldAccount, firstAccount);
+            Account secondNewAccount = prepare(secondOldAccount, secondAccount);
+            position = journal(Arrays.asList(firstOldAccount, secondOldAccount), Arrays.asList(firstNewAccount, secondNewAccount));
+            result = new ImmutablePair<Account, Account>(commit(firstOldAccount, firstNewAccount), 
+                    commit(secondOldAccount, secondNewAccount));
+        } finally {
+            locks.unlock(firstAccount.getNumber(), secondAccount.getNumber());
         }
-        Account firstResult;
-        Account secondResult;
+        awaitDurable(position);
+        return result;
+    }
+
+    /**
+     * Locks both accounts as for updating a pair, but only the updated account is validated. The credit is applied
+     * to the account in the cache while its lock is held, so it cannot be out of date and never aborts the update.
+     */
+    @Override
+    public Pair<Account, Account> updateAndCredit(Account account, Integer creditAccountNo, long amountInMinorUnits) {
+        Validate.isTrue(amountInMinorUnits > 0, "Credit of %d must be positive!", amountInMinorUnits);
+        Validate.notNull(creditAccountNo, "Account number %d is not valid!", creditAccountNo);
+        Validate.isTrue(!account.getNumber().equals(creditAccountNo), 
+                "Account number %d cannot be updated twice at once!", creditAccountNo);
         
-        synchronized (firstAccount.getNumber()) {
-            synchronized (secondAccount.getNumber()) {
-                Account rollbackAccount = cache.get(firstAccount.getNumber());
-                firstResult = this.update(firstAccount);
-                // If the second update fails we need to roll back the first
-                try {
-                    secondResult = this.update(secondAccount);                    
-                } catch (ConcurrentModificationException e) {
-                    cache.put(rollbackAccount.getNumber(), rollbackAccount);
-                    throw e;
-                }
-            }            
+        Pair<Account, Account> result;
+        long position;
+        locks.lock(account.getNumber(), creditAccountNo);
+        try {
+            Account oldAccount = validate(account);
+            Account oldCreditAccount = cache.get(creditAccountNo.intValue());
+            Validate.notNull(oldCreditAccount, "Account number %d is not valid!", creditAccountNo);
+            Account newAccount = prepare(oldAccount, account);
+            Account newCreditAccount = credit(oldCreditAccount, amountInMinorUnits);
+            position = journal(Arrays.asList(oldAccount, oldCreditAccount), Arrays.asList(newAccount, newCreditAccount));
+            result = new ImmutablePair<Account, Account>(commit(oldAccount, newAccount), 
+                    commit(oldCreditAccount, newCreditAccount));
+        } finally {
+            locks.unlock(account.getNumber(), creditAccountNo);
         }
+        awaitDurable(position);
+        return result;
+    }
+
+    /**
+     * @return - the next version of the committed account, with the credit added to it
+     */
+    private Account credit(Account oldAccount, long amountInMinorUnits) {
+        Account newAccount = copyOf(oldAccount);
+        newAccount.addTransactionInMinorUnits(CREDIT, amountInMinorUnits);
+        newAccount.setVersion(oldAccount.getVersion() + 1);
+        setTransactionIds(newAccount);
+        return newAccount;
+    }
+
+    /**
+     * As with updating a pair, every account's lock stripe is held and every account is validated 
+     * before any of them are published.
+     */
+    @Override
+    public List<Account> update(List<Account> accounts) {
+        List<Integer> accountNos = accounts.stream().map(Account::getNumber).collect(Collectors.toList());
+        Validate.isTrue(new HashSet<>(accountNos).size() == accountNos.size(), "Accounts can only be updated once at a time!");
         
-        return new ImmutablePair<Account, Account>(reverseSyncOrder?secondResult:firstResult, 
-                            reverseSyncOrder?firstResult:secondResult);
+        List<Account> results = new ArrayList<>(accounts.size());
+        long position;
+        locks.lock(accountNos);
+        try {
+            List<Account> oldAccounts = accounts.stream().map(this::validate).collect(Collectors.toList());
+            List<Account> newAccounts = new ArrayList<>(accounts.size());
+            for (int i = 0; i < accounts.size(); i++) {
+                newAccounts.add(prepare(oldAccounts.get(i), accounts.get(i)));
+            }
+            position = journal(oldAccounts, newAccounts);
+            for (int i = 0; i < accounts.size(); i++) {
+                results.add(commit(oldAccounts.get(i), newAccounts.get(i)));
+            }
+        } finally {
+            locks.unlock(accountNos);
+        }
+        awaitDurable(position);
+        return results;
+    }
+
+    @Override
+    public List<FundTransferRequest> getRecoveredTransfers() {
+        return recoveredTransfers;
+    }
+
+    @Override
+    public List<Account> getRecoveredSubLedgers() {
+        return recoveredSubLedgers;
+    }
+
+    @Override
+    public <T> T withLocks(Collection<Integer> accountNos, Supplier<T> operation) {
+        locks.lock(accountNos);
+        try {
+            return operation.get();
+        } finally {
+            locks.unlock(accountNos);
+        }
+    }
+
+    /**
+     * @return - the number of account versions successfully committed
+     */
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    /**
+     * @return - the number of updates rejected because the account was out of date
+     */
+    public long getAborts() {
+        return aborts.sum();
+    }
+
+    /**
+     * Journals accounts before they are published, while their locks are held.
+     * If the record cannot be appended nothing has been published, so the commit simply fails.
+     * @return - the journal position to wait on, or zero when the cache is not journaled
+     */
+    private long journal(List<Account> oldAccounts, List<Account> newAccounts) {
+        return journal == null ? 0 : journal.append(oldAccounts, newAccounts);
+    }
+
+    /**
+     * Called once the commit has been published, so a failure is reported as the commit having been applied.
+     * @throws - NotDurableException when the record could not be made durable
+     */
+    private void awaitDurable(long position) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.awaitDurable(position);
+        } catch (RuntimeException e) {
+            throw new NotDurableException(e);
+        }
     }
 
     private Account copyOf(Account account) {
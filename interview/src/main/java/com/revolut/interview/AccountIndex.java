@@ -0,0 +1,220 @@
+package com.revolut.interview;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A concurrent map from account number to account, for the dense account numbers a repository hands out in sequence.
+ * Accounts are held in an array indexed directly by account number, split into fixed size segments which are only
+ * allocated once an account number within them is first put, so looking up an account never boxes its number, 
+ * hashes or allocates. Segments are installed with a compare and set so the index grows without locking, 
+ * and every slot is read and written with volatile semantics, as in a {@link ConcurrentHashMap}.
+ * Only account numbers from zero upwards can be held, and iteration is weakly consistent.
+ */
+public class AccountIndex extends AbstractMap<Integer, Account> {
+
+    static final int SEGMENT_BITS = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Account>> segments = 
+            new AtomicReferenceArray<>((Integer.MAX_VALUE >>> SEGMENT_BITS) + 1);
+    private final AtomicInteger segmentLimit = new AtomicInteger();
+    private final LongAdder size = new LongAdder();
+
+    public Account get(int accountNo) {
+        if (accountNo < 0) {
+            return null;
+        }
+        AtomicReferenceArray<Account> segment = segments.get(accountNo >>> SEGMENT_BITS);
+        return segment == null ? null : segment.get(accountNo & SEGMENT_MASK);
+    }
+
+    /**
+     * @return - the account previously held for the account number, if any
+     * @throws - IllegalArgumentException when the account number is negative
+     */
+    public Account put(int accountNo, Account account) {
+        Validate.notNull(account, "Account number %d cannot be indexed without an account!", accountNo);
+        Account previous = segmentOf(accountNo).getAndSet(accountNo & SEGMENT_MASK, account);
+        if (previous == null) {
+            size.increment();
+        }
+        return previous;
+    }
+
+    /**
+     * Replaces the account only if it is still the same instance as the expected account, 
+     * so an account which is not held is never replaced.
+     */
+    public boolean replace(int accountNo, Account expected, Account account) {
+        Validate.notNull(account, "Account number %d cannot be indexed without an account!", accountNo);
+        AtomicReferenceArray<Account> segment = accountNo < 0 ? null : segments.get(accountNo >>> SEGMENT_BITS);
+        return expected != null && segment != null && segment.compareAndSet(accountNo & SEGMENT_MASK, expected, account);
+    }
+
+    /**
+     * Removes the account only if it is still the same instance as the expected account.
+     */
+    public boolean remove(int accountNo, Account expected) {
+        AtomicReferenceArray<Account> segment = accountNo < 0 ? null : segments.get(accountNo >>> SEGMENT_BITS);
+        if (expected != null && segment != null && segment.compareAndSet(accountNo & SEGMENT_MASK, expected, null)) {
+            size.decrement();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Account get(Object accountNo) {
+        return accountNo instanceof Integer ? get(((Integer) accountNo).intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object accountNo) {
+        return get(accountNo) != null;
+    }
+
+    @Override
+    public Account put(Integer accountNo, Account account) {
+        return put(accountNo.intValue(), account);
+    }
+
+    @Override
+    public boolean replace(Integer accountNo, Account expected, Account account) {
+        return replace(accountNo.intValue(), expected, account);
+    }
+
+    @Override
+    public boolean remove(Object accountNo, Object expected) {
+        return accountNo instanceof Integer && expected instanceof Account 
+                && remove(((Integer) accountNo).intValue(), (Account) expected);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, Math.min(size.sum(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Drops every segment, accounts put concurrently with clearing may be lost.
+     */
+    @Override
+    public void clear() {
+        int limit = segmentLimit.get();
+        for (int i = 0; i < limit; i++) {
+            segments.set(i, null);
+        }
+        size.reset();
+    }
+
+    @Override
+    public Collection<Account> values() {
+        return new AbstractCollection<Account>() {
+            @Override
+            public Iterator<Account> iterator() {
+                return new AccountIterator();
+            }
+
+            @Override
+            public int size() {
+                return AccountIndex.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Integer, Account>> entrySet() {
+        return new AbstractSet<Entry<Integer, Account>>() {
+            @Override
+            public Iterator<Entry<Integer, Account>> iterator() {
+                AccountIterator accounts = new AccountIterator();
+                return new Iterator<Entry<Integer, Account>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return accounts.hasNext();
+                    }
+
+                    @Override
+                    public Entry<Integer, Account> next() {
+                        Account account = accounts.next();
+                        return new SimpleImmutableEntry<>(accounts.accountNo, account);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return AccountIndex.this.size();
+            }
+        };
+    }
+
+    private AtomicReferenceArray<Account> segmentOf(int accountNo) {
+        Validate.isTrue(accountNo >= 0, "Account number %d cannot be indexed!", accountNo);
+        int index = accountNo >>> SEGMENT_BITS;
+        AtomicReferenceArray<Account> segment = segments.get(index);
+        if (segment == null) {
+            segment = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            if (!segments.compareAndSet(index, null, segment)) {
+                segment = segments.get(index);
+            }
+            segmentLimit.accumulateAndGet(index + 1, Math::max);
+        }
+        return segment;
+    }
+
+    /**
+     * Walks the slots in account number order, skipping whole segments which have not been allocated.
+     */
+    private class AccountIterator implements Iterator<Account> {
+        private int accountNo = -1;
+        private int nextAccountNo = -1;
+        private Account next;
+
+        AccountIterator() {
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Account next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Account account = next;
+            accountNo = nextAccountNo;
+            advance();
+            return account;
+        }
+
+        private void advance() {
+            next = null;
+            int limit = segmentLimit.get();
+            // The account number overflows to negative after the last slot
+            while (next == null && ++nextAccountNo >= 0 && (nextAccountNo >>> SEGMENT_BITS) < limit) {
+                AtomicReferenceArray<Account> segment = segments.get(nextAccountNo >>> SEGMENT_BITS);
+                if (segment == null) {
+                    nextAccountNo |= SEGMENT_MASK;
+                } else {
+                    next = segment.get(nextAccountNo & SEGMENT_MASK);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,620 @@
+package com.revolut.interview;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Writes every committed version of an account to a {@link Journal}, and rebuilds the accounts by replaying it.
+ * A record holds only what changed since the previous version - the new transactions with their ids -
+ * along with the new version, so a record for a version the account has already reached is skipped on replay.
+ * All of the accounts committed together are written as a single record, so they are recovered all or nothing.
+ * A transaction with an idempotency key has the {@link #KEYED} bit set in its type, and is followed by the key.
+ * A sub-ledger of a hot account is created with the number of that account after its customer name.
+ * <p>
+ * Snapshots of every account are written alongside the journal segments so that recovery only replays the journal
+ * written since the latest snapshot. As records for versions already reached are skipped, a snapshot does not need
+ * to stop writers: it only has to start after the journal has rolled to the segment that replay will begin from,
+ * and after every record appended before the roll has been published to the accounts it reads.
+ * <p>
+ * The most recent transfers with an idempotency key are also kept in a ring, written at the end of each snapshot
+ * and added to by replay, so the keys to deduplicate by are recovered without going through every transaction.
+ */
+public class AccountJournal implements AutoCloseable {
+
+    private static final byte CREATED = 1;
+    private static final byte UPDATED = 2;
+    private static final byte SUB_LEDGER_CREATED = 3;
+
+    private static final int ENTRY_BYTES = 1 + 4 + 4 + 8 + 4;
+    private static final int TRANSACTION_BYTES = 4 + 1 + 8 + 8;
+    private static final byte KEYED = (byte) 0x80;
+
+    private static final int SNAPSHOT_MAGIC = 0x534E4150;
+    private static final int SNAPSHOT_HEADER_BYTES = 4 + 8 + 4 + 4;
+    private static final int SNAPSHOT_END = -1;
+    private static final int SNAPSHOTS_KEPT = 2;
+    private static final long SNAPSHOT_WINDOW_BYTES = 256 * 1024 * 1024;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Journal journal;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final RecentTransfers recentTransfers;
+
+    /**
+     * Keeps as many recent transfers as the <code>idempotency.maxKeys</code> system property.
+     */
+    public AccountJournal(Journal journal) {
+        this(journal, Integer.getInteger("idempotency.maxKeys", IdempotencyCache.DEFAULT_MAX_KEYS));
+    }
+
+    /**
+     * @param recentTransfers - the most transfers with an idempotency key to keep for recovery
+     */
+    public AccountJournal(Journal journal, int recentTransfers) {
+        Validate.isTrue(recentTransfers >= 0, "Number of recent transfers cannot be negative!");
+        this.journal = journal;
+        this.recentTransfers = new RecentTransfers(recentTransfers);
+    }
+
+    /**
+     * Opens the journal, replaying it into the accounts.
+     */
+    public void recover(Map<Integer, Account> accounts) {
+        recover(accounts, new IdAllocator(), new IdAllocator());
+    }
+
+    /**
+     * Loads the latest snapshot that is intact and then opens the journal, replaying only the segments written since.
+     * The allocators are raised to at least the high-water marks in the snapshot and the highest account number 
+     * and transaction id recovered.
+     */
+    public void recover(Map<Integer, Account> accounts, IdAllocator accountIds, IdAllocator transactionIds) {
+        long fromSegment = 1;
+        try {
+            for (Path snapshot : snapshots()) {
+                try {
+                    fromSegment = readSnapshot(snapshot, accounts, accountIds, transactionIds);
+                    break;
+                } catch (IllegalStateException | BufferUnderflowException e) {
+                    // Fall back to the previous snapshot, the journal is kept from there
+                    accounts.clear();
+                    recentTransfers.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        journal.open(fromSegment, record -> replay(record, accounts));
+        accountIds.raiseTo(accounts.keySet().stream().mapToInt(Integer::intValue).max().orElse(0));
+        transactionIds.raiseTo(accounts.values().stream().map(Account::getLastTransactionId)
+                .filter(Objects::nonNull).mapToInt(Integer::intValue).max().orElse(0));
+    }
+
+    /**
+     * Appends the changes from each old account to its new version as one record.
+     * An old account is null when the new account has just been created.
+     * @return - the position to wait on with {@link #awaitDurable(long)}
+     */
+    public long append(List<Account> oldAccounts, List<Account> newAccounts) {
+        int size = 4;
+        byte[][] customerNames = new byte[newAccounts.size()][];
+        for (int i = 0; i < newAccounts.size(); i++) {
+            customerNames[i] = customerNameOf(oldAccounts.get(i), newAccounts.get(i));
+            size += entryBytes(oldAccounts.get(i), newAccounts.get(i), customerNames[i]);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(newAccounts.size());
+        for (int i = 0; i < newAccounts.size(); i++) {
+            putEntry(record, oldAccounts.get(i), newAccounts.get(i), customerNames[i]);
+        }
+        record.flip();
+        long position = journal.append(record);
+        for (int i = 0; i < newAccounts.size(); i++) {
+            Account newAccount = newAccounts.get(i);
+            List<AccountTransaction> transactions = newAccount.getTransactions();
+            for (int j = transactionsBefore(oldAccounts.get(i)); j < transactions.size(); j++) {
+                AccountTransaction transaction = transactions.get(j);
+                if (transaction.getIdempotencyKey() != null) {
+                    recentTransfers.add(transaction.getIdempotencyKey(), newAccount.getNumber(), transaction.amountInMinorUnits());
+                }
+            }
+        }
+        return position;
+    }
+
+    public void awaitDurable(long position) {
+        journal.awaitDurable(position);
+    }
+
+    /**
+     * @return - the most recent transfers with an idempotency key journaled or recovered, oldest first, 
+     *              each with only its key, the account it debited and its amount
+     */
+    public List<FundTransferRequest> getRecentTransfers() {
+        return recentTransfers.copy().toTransferRequests();
+    }
+
+    /**
+     * Writes a snapshot of the accounts, which may still be being updated, and the high-water marks of the allocators.
+     * Only the latest two snapshots are kept, along with the journal from the older of them,
+     * so there is always a previous snapshot to fall back to.
+     */
+    public void snapshot(Collection<Account> accounts, IdAllocator accountIds, IdAllocator transactionIds) {
+        snapshot(accounts, accountIds, transactionIds, Supplier::get);
+    }
+
+    /**
+     * @param exclusively - rolls the journal with the commits held off, so that none of them has appended 
+     *              a record before the roll without having published its accounts yet
+     */
+    public void snapshot(Collection<Account> accounts, IdAllocator accountIds, IdAllocator transactionIds,
+            Function<Supplier<Long>, Long> exclusively) {
+        snapshotLock.lock();
+        try {
+            // Everything journaled before the roll is at least as old as the versions the snapshot will see
+            long segment = exclusively.apply(journal::roll);
+            // Taken after the roll, so a transfer journaled before it is kept even if the ring has moved on since
+            RecentTransfers transfers = recentTransfers.copy();
+            Path snapshot = journal.getDirectory().resolve(String.format("%s%016d%s", SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX));
+            Path temporary = journal.getDirectory().resolve(snapshot.getFileName() + ".tmp");
+            writeSnapshot(temporary, segment, accounts, accountIds.getHighWaterMark(), transactionIds.getHighWaterMark(), transfers);
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel directory = FileChannel.open(journal.getDirectory(), StandardOpenOption.READ)) {
+                directory.force(true);
+            }
+
+            List<Path> snapshots = snapshots();
+            for (int i = SNAPSHOTS_KEPT; i < snapshots.size(); i++) {
+                Files.delete(snapshots.get(i));
+            }
+            if (snapshots.size() >= SNAPSHOTS_KEPT) {
+                journal.deleteSegmentsBefore(segmentOf(snapshots.get(SNAPSHOTS_KEPT - 1)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+
+    private void writeSnapshot(Path file, long segment, Collection<Account> accounts,
+            int accountCounter, int transactionCounter, RecentTransfers transfers) throws IOException {
+        CRC32 crc = new CRC32();
+        try (OutputStream fileOut = Files.newOutputStream(file);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOut, crc), 64 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(segment);
+            out.writeInt(accountCounter);
+            out.writeInt(transactionCounter);
+            ByteBuffer entry = ByteBuffer.allocate(1024);
+            for (Account account : accounts) {
+                byte[] customerName = customerNameOf(null, account);
+                int size = entryBytes(null, account, customerName);
+                if (entry.capacity() < size) {
+                    entry = ByteBuffer.allocate(Math.max(size, entry.capacity() * 2));
+                }
+                entry.clear();
+                putEntry(entry, null, account, customerName);
+                out.writeInt(size);
+                out.write(entry.array(), 0, size);
+            }
+            out.writeInt(SNAPSHOT_END);
+            transfers.write(out);
+            out.flush();
+            new DataOutputStream(fileOut).writeInt((int) crc.getValue());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Reads the snapshot through a memory mapping, a window at a time so snapshots larger than 2GB can still be mapped.
+     * @return - the journal segment to replay from
+     * @throws - IllegalStateException when the snapshot is corrupt
+     */
+    private long readSnapshot(Path snapshot, Map<Integer, Account> accounts,
+            IdAllocator accountIds, IdAllocator transactionIds) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel);
+            CRC32 crc = new CRC32();
+
+            ByteBuffer header = reader.read(SNAPSHOT_HEADER_BYTES);
+            crc.update(header.duplicate());
+            Validate.validState(header.getInt() == SNAPSHOT_MAGIC, "%s is not a snapshot!", snapshot);
+            long segment = header.getLong();
+            int snapshotAccountCounter = header.getInt();
+            int snapshotTransactionCounter = header.getInt();
+
+            while (true) {
+                ByteBuffer length = reader.read(4);
+                crc.update(length.duplicate());
+                int size = length.getInt();
+                if (size == SNAPSHOT_END) {
+                    break;
+                }
+                Validate.validState(size > 0, "Snapshot %s is corrupt!", snapshot);
+                ByteBuffer entry = reader.read(size);
+                crc.update(entry.duplicate());
+                applyEntry(entry, accounts, false);
+            }
+            // Snapshots written before the recent transfers were kept end with the checksum
+            if (reader.remaining() > 4) {
+                recentTransfers.read(reader, crc);
+            }
+            Validate.validState(reader.read(4).getInt() == (int) crc.getValue(), "Snapshot %s is corrupt!", snapshot);
+
+            accountIds.raiseTo(snapshotAccountCounter);
+            transactionIds.raiseTo(snapshotTransactionCounter);
+            return segment;
+        }
+    }
+
+    /**
+     * @return - the snapshots, newest first
+     */
+    private List<Path> snapshots() throws IOException {
+        if (!Files.isDirectory(journal.getDirectory())) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(journal.getDirectory())) {
+            return files
+                    .filter(file -> file.getFileName().toString().startsWith(SNAPSHOT_PREFIX)
+                            && file.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+                    .sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long segmentOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    private int transactionsBefore(Account oldAccount) {
+        return oldAccount == null ? 0 : oldAccount.getTransactions().size();
+    }
+
+    private byte[] customerNameOf(Account oldAccount, Account newAccount) {
+        return oldAccount == null && newAccount.getCustomerName() != null
+                ? newAccount.getCustomerName().getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private int entryBytes(Account oldAccount, Account newAccount, byte[] customerName) {
+        List<AccountTransaction> transactions = newAccount.getTransactions();
+        int size = ENTRY_BYTES + (transactions.size() - transactionsBefore(oldAccount)) * TRANSACTION_BYTES;
+        if (oldAccount == null) {
+            size += 4 + (customerName == null ? 0 : customerName.length);
+            if (newAccount.getSubLedgerOf() != null) {
+                size += 4;
+            }
+        }
+        for (int j = transactionsBefore(oldAccount); j < transactions.size(); j++) {
+            String idempotencyKey = transactions.get(j).getIdempotencyKey();
+            if (idempotencyKey != null) {
+                size += 2 + utf8Length(idempotencyKey);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return - the number of bytes in the UTF-8 encoding of the value, without encoding it
+     */
+    private static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    private void putEntry(ByteBuffer record, Account oldAccount, Account newAccount, byte[] customerName) {
+        record.put(oldAccount != null ? UPDATED : newAccount.getSubLedgerOf() == null ? CREATED : SUB_LEDGER_CREATED);
+        record.putInt(newAccount.getNumber());
+        record.putInt(newAccount.getVersion());
+        record.putLong(newAccount.overdraftLimitInMinorUnits());
+        if (oldAccount == null) {
+            if (customerName == null) {
+                record.putInt(-1);
+            } else {
+                record.putInt(customerName.length);
+                record.put(customerName);
+            }
+            if (newAccount.getSubLedgerOf() != null) {
+                record.putInt(newAccount.getSubLedgerOf());
+            }
+        }
+        List<AccountTransaction> transactions = newAccount.getTransactions();
+        int first = transactionsBefore(oldAccount);
+        record.putInt(transactions.size() - first);
+        for (int j = first; j < transactions.size(); j++) {
+            AccountTransaction transaction = transactions.get(j);
+            String idempotencyKey = transaction.getIdempotencyKey();
+            record.putInt(transaction.getId());
+            record.put((byte) (transaction.getType().ordinal() | (idempotencyKey == null ? 0 : KEYED)));
+            record.putLong(transaction.amountInMinorUnits());
+            record.putLong(transaction.balanceInMinorUnits());
+            if (idempotencyKey != null) {
+                byte[] key = idempotencyKey.getBytes(StandardCharsets.UTF_8);
+                record.putShort((short) key.length);
+                record.put(key);
+            }
+        }
+    }
+
+    private String getCustomerName(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] customerName = new byte[length];
+        record.get(customerName);
+        return new String(customerName, StandardCharsets.UTF_8);
+    }
+
+    private void replay(ByteBuffer record, Map<Integer, Account> accounts) {
+        int entries = record.getInt();
+        for (int i = 0; i < entries; i++) {
+            applyEntry(record, accounts, true);
+        }
+    }
+
+    /**
+     * @param journaled - whether the entry is from the journal, when the transfers in it are kept as recent
+     *              even if the account has already reached its version
+     */
+    private void applyEntry(ByteBuffer record, Map<Integer, Account> accounts, boolean journaled) {
+        byte kind = record.get();
+        Integer number = record.getInt();
+        int version = record.getInt();
+        long overdraftLimit = record.getLong();
+        Account account;
+        if (kind == CREATED || kind == SUB_LEDGER_CREATED) {
+            String customerName = getCustomerName(record);
+            Integer subLedgerOf = kind == SUB_LEDGER_CREATED ? record.getInt() : null;
+            account = accounts.get(number);
+            if (account == null) {
+                account = new Account.Builder()
+                        .number(number)
+                        .customerName(customerName)
+                        .overdraftLimitInMinorUnits(overdraftLimit)
+                        .subLedgerOf(subLedgerOf)
+                        .build();
+            }
+        } else {
+            account = accounts.get(number);
+            Validate.validState(account != null, "Journal updates account number %d before it was created!", number);
+        }
+
+        int transactions = record.getInt();
+        boolean alreadyApplied = version <= account.getVersion();
+        for (int j = 0; j < transactions; j++) {
+            Integer id = record.getInt();
+            byte type = record.get();
+            long amount = record.getLong();
+            long balance = record.getLong();
+            String idempotencyKey = null;
+            if ((type & KEYED) != 0) {
+                int keyLength = record.getShort() & 0xffff;
+                if (alreadyApplied && !journaled) {
+                    record.position(record.position() + keyLength);
+                } else {
+                    byte[] key = new byte[keyLength];
+                    record.get(key);
+                    idempotencyKey = new String(key, StandardCharsets.UTF_8);
+                    if (journaled) {
+                        recentTransfers.add(idempotencyKey, number, amount);
+                    }
+                }
+            }
+            if (!alreadyApplied) {
+                AccountTransaction transaction = new AccountTransaction.Builder()
+                        .type(TransactionType.values()[type & ~KEYED])
+                        .amountInMinorUnits(amount)
+                        .balanceInMinorUnits(balance)
+                        .idempotencyKey(idempotencyKey)
+                        .build();
+                transaction.setId(id);
+                account.addTransaction(transaction);
+            }
+        }
+        if (!alreadyApplied) {
+            if (account.overdraftLimitInMinorUnits() != overdraftLimit) {
+                account = new Account.Builder().copy(account).overdraftLimitInMinorUnits(overdraftLimit).build();
+            }
+            account.setVersion(version);
+            account.markTransactionsCommitted();
+            accounts.put(number, account);
+        }
+    }
+
+    /**
+     * A ring of the most recent transfers with an idempotency key, from the oldest at the head,
+     * each kept as its key, the account it debited and its amount.
+     */
+    private static class RecentTransfers {
+        private final String[] keys;
+        private final int[] accountNos;
+        private final long[] amounts;
+        private int head;
+        private int size;
+
+        RecentTransfers(int capacity) {
+            this.keys = new String[capacity];
+            this.accountNos = new int[capacity];
+            this.amounts = new long[capacity];
+        }
+
+        synchronized void add(String key, int accountNo, long amount) {
+            if (keys.length == 0) {
+                return;
+            }
+            int entry = (head + size) % keys.length;
+            if (size == keys.length) {
+                head = (head + 1) % keys.length;
+            } else {
+                size++;
+            }
+            keys[entry] = key;
+            accountNos[entry] = accountNo;
+            amounts[entry] = amount;
+        }
+
+        synchronized void clear() {
+            Arrays.fill(keys, null);
+            head = 0;
+            size = 0;
+        }
+
+        synchronized RecentTransfers copy() {
+            RecentTransfers copy = new RecentTransfers(size);
+            for (int i = 0; i < size; i++) {
+                int entry = (head + i) % keys.length;
+                copy.add(keys[entry], accountNos[entry], amounts[entry]);
+            }
+            return copy;
+        }
+
+        List<FundTransferRequest> toTransferRequests() {
+            List<FundTransferRequest> transferRequests = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int entry = (head + i) % keys.length;
+                FundTransferRequest transferRequest = new FundTransferRequest();
+                transferRequest.setFromAccountNo(accountNos[entry]);
+                transferRequest.setAmount(Money.toBigDecimal(amounts[entry]));
+                transferRequest.setIdempotencyKey(keys[entry]);
+                transferRequests.add(transferRequest);
+            }
+            return transferRequests;
+        }
+
+        /**
+         * Writes the number of transfers, then for each the length and UTF-8 of its key, its account and its amount.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                int entry = (head + i) % keys.length;
+                byte[] key = keys[entry].getBytes(StandardCharsets.UTF_8);
+                out.writeShort(key.length);
+                out.write(key);
+                out.writeInt(accountNos[entry]);
+                out.writeLong(amounts[entry]);
+            }
+        }
+
+        /**
+         * @throws - IllegalStateException when the transfers are corrupt
+         */
+        void read(MappedReader reader, CRC32 crc) throws IOException {
+            ByteBuffer count = reader.read(4);
+            crc.update(count.duplicate());
+            int transfers = count.getInt();
+            Validate.validState(transfers >= 0, "Snapshot is corrupt!");
+            for (int i = 0; i < transfers; i++) {
+                ByteBuffer keyLength = reader.read(2);
+                crc.update(keyLength.duplicate());
+                ByteBuffer transfer = reader.read((keyLength.getShort() & 0xffff) + 4 + 8);
+                crc.update(transfer.duplicate());
+                byte[] key = new byte[transfer.remaining() - 4 - 8];
+                transfer.get(key);
+                add(new String(key, StandardCharsets.UTF_8), transfer.getInt(), transfer.getLong());
+            }
+        }
+    }
+
+    /**
+     * Maps a file a window at a time, moving the window on whenever the next read would run past its end.
+     */
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        /**
+         * @return - the number of bytes of the file not read yet
+         */
+        long remaining() {
+            return size - windowStart - window.position();
+        }
+
+        /**
+         * @return - the next bytes of the file
+         * @throws - IllegalStateException when the file ends first
+         */
+        ByteBuffer read(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                map(windowStart + window.position());
+                Validate.validState(window.remaining() >= bytes, "Unexpected end of file!");
+            }
+            ByteBuffer slice = window.slice();
+            slice.limit(bytes);
+            window.position(window.position() + bytes);
+            return slice;
+        }
+
+        private void map(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SNAPSHOT_WINDOW_BYTES, size - start));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.revolut.interview;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A fixed size table of striped locks keyed by account number.
+ * The table size is always a power of two so the stripe for an account can be found with a simple mask,
+ * and accounts which share a stripe share the same lock.
+ * When two accounts need to be locked together the stripes are always acquired in index order,
+ * which removes any chance of deadlock between concurrent transfers.
+ */
+public class AccountLocks {
+
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contentions = new LongAdder();
+
+    public AccountLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public AccountLocks(int stripes) {
+        Validate.isTrue(stripes > 0 && Integer.bitCount(stripes) == 1, "Number of stripes must be a power of two!");
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+        this.mask = stripes - 1;
+    }
+
+    public int stripeOf(Integer accountNo) {
+        // Spread the bits so sequential account numbers do not all land in neighbouring stripes
+        int hash = accountNo * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    public void lock(Integer accountNo) {
+        acquire(locks[stripeOf(accountNo)]);
+    }
+
+    public void unlock(Integer accountNo) {
+        locks[stripeOf(accountNo)].unlock();
+    }
+
+    /**
+     * Locks the stripes of both accounts, lowest stripe first.
+     * If both accounts share a stripe then it is only acquired once.
+     */
+    public void lock(Integer firstAccountNo, Integer secondAccountNo) {
+        int first = stripeOf(firstAccountNo);
+        int second = stripeOf(secondAccountNo);
+        acquire(locks[Math.min(first, second)]);
+        if (first != second) {
+            acquire(locks[Math.max(first, second)]);
+        }
+    }
+
+    public void unlock(Integer firstAccountNo, Integer secondAccountNo) {
+        int first = stripeOf(firstAccountNo);
+        int second = stripeOf(secondAccountNo);
+        if (first != second) {
+            locks[Math.max(first, second)].unlock();
+        }
+        locks[Math.min(first, second)].unlock();
+    }
+
+    /**
+     * Locks the stripes of all of the accounts in ascending stripe order, taking each stripe only once.
+     */
+    public void lock(Collection<Integer> accountNos) {
+        for (int stripe : stripesOf(accountNos)) {
+            acquire(locks[stripe]);
+        }
+    }
+
+    public void unlock(Collection<Integer> accountNos) {
+        int[] stripes = stripesOf(accountNos);
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    /**
+     * Locks every stripe in ascending order, holding off every other holder of a stripe.
+     */
+    public void lockAll() {
+        for (ReentrantLock lock : locks) {
+            acquire(lock);
+        }
+    }
+
+    public void unlockAll() {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+
+    /**
+     * @return - the number of times a stripe has been acquired
+     */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * @return - the number of times a stripe was already held by another thread when acquiring it
+     */
+    public long getContentions() {
+        return contentions.sum();
+    }
+
+    public int getStripes() {
+        return locks.length;
+    }
+
+    private int[] stripesOf(Collection<Integer> accountNos) {
+        return accountNos.stream().mapToInt(this::stripeOf).sorted().distinct().toArray();
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquisitions.increment();
+        if (!lock.tryLock()) {
+            contentions.increment();
+            lock.lock();
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.revolut.interview;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
 import org.apache.commons.lang3.tuple.Pair;
 
 /**
@@ -9,6 +14,14 @@ public interface AccountRepository {
 
     Account create(Account account);
     
+    /**
+     * Creates the account where it can be updated together with an existing account, 
+     * in the same ledger when the repository has more than one.
+     */
+    default Account createAlongside(Integer accountNo, Account account) {
+        return create(account);
+    }
+    
     /**
      * @throws - ConcurrentModificationException when the account is modified by another thread and the 
      *              data in the current thread is now out of date
@@ -21,8 +34,50 @@ public interface AccountRepository {
      */
     Pair<Account, Account> update(Pair<Account, Account> accounts);
 
+    /**
+     * Updates the account and credits the other account with the amount atomically. Only the updated account is 
+     * validated against the version it was read at, the credit is applied to the current state of the other account,
+     * as a credit commutes with any other change to it and can never take it past its overdraft limit.
+     * @return - both accounts as committed, the updated account on the left
+     * @throws - IllegalArgumentException when the amount is not positive, as a negative credit would be an unchecked debit
+     * @throws - ConcurrentModificationException when the updated account is modified by another thread and the 
+     *              data in the current thread is now out of date
+     */
+    Pair<Account, Account> updateAndCredit(Account account, Integer creditAccountNo, long amountInMinorUnits);
+
+    /**
+     * Updates all of the accounts atomically, each account may only appear once.
+     * @throws - ConcurrentModificationException when any of the accounts are modified by another thread and the 
+     *              data in the current thread is now out of date
+     */
+    List<Account> update(List<Account> accounts);
+
     /**
      * @throws - IllegalArgumentException when either of the accounts for the transfer do not exist
      */
     Account get(Integer accountNo);
+
+    /**
+     * Runs the operation while holding the locks of all of the accounts, so no other thread can update them 
+     * and any reads and updates of them made by the operation cannot be out of date.
+     */
+    <T> T withLocks(Collection<Integer> accountNos, Supplier<T> operation);
+    
+    /**
+     * @return - the most recent transfers with an idempotency key recovered when the repository was created, 
+     *              oldest first, each with only its key, the account it debited and its amount,
+     *              which is empty when it does not persist its accounts
+     */
+    default List<FundTransferRequest> getRecoveredTransfers() {
+        return Collections.emptyList();
+    }
+    
+    /**
+     * @return - the sub-ledgers of hot accounts recovered when the repository was created, 
+     *              which is empty when it does not persist its accounts
+     * @see HotAccounts
+     */
+    default List<Account> getRecoveredSubLedgers() {
+        return Collections.emptyList();
+    }
 }
@@ -1,5 +1,9 @@
 package com.revolut.interview;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 /**
  * Provides all business methods to create and query {@link Account}s, plus also allows transferring of money between accounts
  */
@@ -25,4 +29,56 @@ public interface AccountService {
      *              data in the current thread is now out of date
      */
     void transfer(FundTransferRequest transferRequest);
+    
+    /**
+     * Applies all of the transfers in order, committing each account involved once for the whole batch.
+     * @param atomic - when true a failure of any transfer means none are applied, 
+     *              otherwise transfers that fail are skipped and the rest are applied
+     * @return - the result of each transfer, in the same order as the requests
+     * @throws - ConcurrentModificationException when any of the accounts are modified by another thread and the 
+     *              data in the current thread is now out of date, in which case none of the transfers are applied
+     */
+    List<FundTransferResult> transferBatch(List<FundTransferRequest> transferRequests, boolean atomic);
+    
+    /**
+     * As {@link #createAccount(NewAccountRequest)}, but completes the future instead of blocking the caller 
+     * when the service has threads of its own to do the work on, otherwise it is run on the calling thread.
+     */
+    default CompletableFuture<Account> createAccountAsync(NewAccountRequest newAccountRequest) {
+        return completed(() -> createAccount(newAccountRequest));
+    }
+    
+    /**
+     * As {@link #getAccount(Integer)}, but completes the future instead of blocking the caller where the service can.
+     */
+    default CompletableFuture<Account> getAccountAsync(Integer accountNo) {
+        return completed(() -> getAccount(accountNo));
+    }
+    
+    /**
+     * As {@link #transfer(FundTransferRequest)}, but completes the future instead of blocking the caller where the service can.
+     */
+    default CompletableFuture<Void> transferAsync(FundTransferRequest transferRequest) {
+        return completed(() -> {
+            transfer(transferRequest);
+            return null;
+        });
+    }
+    
+    /**
+     * @return - a future already completed with the result of the call, or with the exception it threw
+     */
+    static <T> CompletableFuture<T> completed(Supplier<T> call) {
+        try {
+            return CompletableFuture.completedFuture(call.get());
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+    
+    static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
 }
@@ -1,58 +1,162 @@
 package com.revolut.interview;
 
 import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * Provides a JSON REST Webservice for the {@link AccountService}
+ * Creating, reading and single transfers are asynchronous, the request is suspended until the service completes it 
+ * so that no HTTP thread waits on the service, and a service too busy to take the request responds with 503.
+ * A transfer sent with an idempotency key already used for a different transfer responds with 422.
+ * It is registered as a single instance by {@link AccountServiceInitializer#createResourceConfig(AccountService)},
+ * so every request is served by the one service and its ledger.
  */
 @Path("accounts")
 public class AccountServiceController {
     
-    private AccountService accountService = new AccountServiceImpl();
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    
+    private static final int UNPROCESSABLE_ENTITY = 422;
+    private static final JsonCodec<AccountTransaction> TRANSACTION_CODEC = new JsonCodec.AccountTransactionCodec();
+    
+    private final AccountService accountService;
+    
+    public AccountServiceController(AccountService accountService) {
+        this.accountService = accountService;
+    }
     
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response createAccount(NewAccountRequest newAccountRequest) {
-        return createResponse(() -> this.accountService.createAccount(newAccountRequest));
+    public void createAccount(NewAccountRequest newAccountRequest, @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, () -> this.accountService.createAccountAsync(newAccountRequest));
     }
     
     @POST
     @Path("/transfer")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response transfer(FundTransferRequest transferRequest) {
-        return createResponse(() -> {
-                this.accountService.transfer(transferRequest);
-                return null;
-            });
+    public void transfer(FundTransferRequest transferRequest, @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, () -> this.accountService.transferAsync(transferRequest));
+    }
+
+    /**
+     * Returns the result of each transfer in the batch, in the same order as the requests
+     */
+    @POST
+    @Path("/transfers")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response transferBatch(FundTransferBatchRequest batchRequest) {
+        return createResponse(() -> new GenericEntity<List<FundTransferResult>>(
+                this.accountService.transferBatch(batchRequest.getTransfers(), batchRequest.isAtomic())) {});
     }
 
     @GET
     @Path("/{accountNo}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAccount(@PathParam("accountNo") Integer accountNo) {
-        return createResponse(() -> this.accountService.getAccount(accountNo));
+    public void getAccount(@PathParam("accountNo") Integer accountNo, @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, () -> this.accountService.getAccountAsync(accountNo));
+    }
+
+    /**
+     * Returns the balance, overdraft limit and version of the account without its transactions
+     */
+    @GET
+    @Path("/{accountNo}/summary")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void getAccountSummary(@PathParam("accountNo") Integer accountNo, @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, () -> this.accountService.getAccountAsync(accountNo).thenApply(AccountSummary::of));
+    }
+
+    /**
+     * Returns a page of the account's transactions after the cursor, which is the id of a transaction
+     */
+    @GET
+    @Path("/{accountNo}/transactions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void getTransactions(@PathParam("accountNo") Integer accountNo, @QueryParam("after") Integer after,
+            @QueryParam("limit") @DefaultValue("" + TransactionPage.DEFAULT_LIMIT) int limit, 
+            @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, () -> this.accountService.getAccountAsync(accountNo)
+                .thenApply(account -> TransactionPage.of(account.getTransactions(), after, limit)));
+    }
+
+    /**
+     * Streams every transaction of the account after the cursor as a JSON object per line, 
+     * writing each straight to the response with the same codec as any other transaction
+     * rather than building the response in memory
+     */
+    @GET
+    @Path("/{accountNo}/transactions")
+    @Produces(APPLICATION_NDJSON + ";qs=0.5")
+    public void streamTransactions(@PathParam("accountNo") Integer accountNo, @QueryParam("after") Integer after,
+            @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, () -> this.accountService.getAccountAsync(accountNo).thenApply(account -> {
+            List<AccountTransaction> transactions = account.getTransactions();
+            int from = TransactionPage.indexAfter(transactions, after);
+            return (StreamingOutput) output -> {
+                JsonWriter writer = new JsonWriter(output);
+                for (int i = from; i < transactions.size(); i++) {
+                    TRANSACTION_CODEC.write(transactions.get(i), writer);
+                    writer.newLine();
+                }
+                writer.flush();
+            };
+        }));
     }
     
     private Response createResponse(Supplier<?> dataGetter) {
         try {
             return Response.status(Status.OK).entity(dataGetter.get()).build();         
-        } catch (IllegalArgumentException | ConcurrentModificationException | IllegalStateException e) {
-            return Response.status(Status.BAD_REQUEST).entity(e.getMessage()).build();
         } catch (Exception e) {
-            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build();
+            return createErrorResponse(e);
+        }
+    }
+    
+    private void resume(AsyncResponse asyncResponse, Supplier<CompletableFuture<?>> operation) {
+        CompletableFuture<?> future;
+        try {
+            future = operation.get();
+        } catch (RuntimeException e) {
+            future = AccountService.failed(e);
+        }
+        future.whenComplete((data, failure) -> asyncResponse.resume(failure == null 
+                ? Response.status(Status.OK).entity(data).build() 
+                : createErrorResponse(failure instanceof CompletionException ? failure.getCause() : failure)));
+    }
+    
+    private Response createErrorResponse(Throwable failure) {
+        if (failure instanceof IdempotencyKeyReusedException) {
+            return Response.status(UNPROCESSABLE_ENTITY).entity(failure.getMessage()).build();
+        }
+        if (failure instanceof IllegalArgumentException || failure instanceof ConcurrentModificationException 
+                || failure instanceof IllegalStateException) {
+            return Response.status(Status.BAD_REQUEST).entity(failure.getMessage()).build();
+        }
+        if (failure instanceof RejectedExecutionException) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).entity(failure.getMessage()).build();
         }
+        return Response.status(Status.INTERNAL_SERVER_ERROR).entity(failure.getMessage()).build();
     }
 
 }
@@ -3,56 +3,391 @@ package com.revolut.interview;
 import static com.revolut.interview.TransactionType.CREDIT;
 import static com.revolut.interview.TransactionType.DEBIT;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.Validate;
-import org.apache.commons.lang3.tuple.ImmutablePair;
 
 public class AccountServiceImpl implements AccountService {
     
-    private AccountRepository accountRepo = new AccountCache();
+    private AccountRepository accountRepo;
+    
+    private final RetryPolicy retryPolicy;
+    private final ConflictMetrics conflictMetrics = new ConflictMetrics();
+    private final Executor executor;
+    private final IdempotencyCache idempotencyCache;
+    private final HotAccounts hotAccounts;
+    
+    public AccountServiceImpl() {
+        this(RetryPolicy.fromSystemProperties());
+    }
+    
+    public AccountServiceImpl(RetryPolicy retryPolicy) {
+        this(new AccountCache(), retryPolicy);
+    }
+    
+    public AccountServiceImpl(AccountRepository accountRepo, RetryPolicy retryPolicy) {
+        this(accountRepo, retryPolicy, Runnable::run);
+    }
+    
+    public AccountServiceImpl(AccountRepository accountRepo, RetryPolicy retryPolicy, Executor executor) {
+        this(accountRepo, retryPolicy, executor, IdempotencyCache.fromSystemProperties(), HotAccounts.fromSystemProperties());
+    }
+    
+    /**
+     * @param executor - runs the asynchronous variants of the operations, which should be bounded so that 
+     *              when it is full the operations fail with a {@link RejectedExecutionException} rather than queue forever
+     * @param idempotencyCache - deduplicates transfers by their idempotency key, 
+     *              and is given the transfers the repository recovered
+     * @param hotAccounts - splits contended accounts, and is given the sub-ledgers the repository recovered
+     */
+    public AccountServiceImpl(AccountRepository accountRepo, RetryPolicy retryPolicy, Executor executor, 
+            IdempotencyCache idempotencyCache, HotAccounts hotAccounts) {
+        this.accountRepo = accountRepo;
+        this.retryPolicy = retryPolicy;
+        this.executor = executor;
+        this.idempotencyCache = idempotencyCache;
+        this.hotAccounts = hotAccounts;
+        accountRepo.getRecoveredTransfers().forEach(idempotencyCache::putSucceeded);
+        hotAccounts.recover(accountRepo.getRecoveredSubLedgers());
+    }
     
     @Override
     public Account createAccount(NewAccountRequest newAccountRequest) {
-        Validate.isTrue(newAccountRequest.getInitialDeposit().doubleValue()>=0, "Initial deposit must be positive!");
+        long initialDeposit = Money.toMinorUnits(newAccountRequest.getInitialDeposit());
+        Validate.isTrue(initialDeposit>=0, "Initial deposit must be positive!");
         Account.Builder accountBuilder = new Account.Builder()
                 .customerName(newAccountRequest.getCustomerName())
                 .overdraftLimit(newAccountRequest.getOverDraftLimit());
-        if (!newAccountRequest.getInitialDeposit().equals(BigDecimal.ZERO)) {
+        if (initialDeposit != 0) {
             accountBuilder.transaction(
                         new AccountTransaction.Builder()
                             .type(CREDIT)
-                            .amount(newAccountRequest.getInitialDeposit())
-                            .balance(newAccountRequest.getInitialDeposit())
+                            .amountInMinorUnits(initialDeposit)
+                            .balanceInMinorUnits(initialDeposit)
                             .build()
                     );
         }
         return accountRepo.create(accountBuilder.build());
     }
 
+    /**
+     * A hot account is read along with its sub-ledgers holding all of their locks, so no commit of any of them 
+     * is half published, and returned as a single account
+     */
     @Override
     public Account getAccount(Integer accountNo) {
-        return this.accountRepo.get(accountNo);
+        validateNotSubLedger(accountNo);
+        int[] subLedgers = hotAccounts.subLedgersOf(accountNo);
+        if (subLedgers == null) {
+            return this.accountRepo.get(accountNo);
+        }
+        return accountRepo.withLocks(ledgersOf(accountNo, subLedgers), () -> {
+            Account account = this.accountRepo.get(accountNo);
+            List<Account> accountSubLedgers = new ArrayList<>(subLedgers.length);
+            for (int subLedger : subLedgers) {
+                accountSubLedgers.add(this.accountRepo.get(subLedger));
+            }
+            return hotAccounts.merge(account, accountSubLedgers);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Account> createAccountAsync(NewAccountRequest newAccountRequest) {
+        return supplyAsync(() -> createAccount(newAccountRequest));
+    }
+
+    @Override
+    public CompletableFuture<Account> getAccountAsync(Integer accountNo) {
+        return supplyAsync(() -> getAccount(accountNo));
     }
 
+    /**
+     * The retries and their backoff all happen on the executor, so the caller is never held up by a contended account.
+     * A transfer with the idempotency key of one already in progress completes along with it.
+     */
+    @Override
+    public CompletableFuture<Void> transferAsync(FundTransferRequest transferRequest) {
+        return idempotencyCache.deduplicateAsync(transferRequest, () -> supplyAsync(() -> {
+            transferWithRetries(transferRequest);
+            return null;
+        }));
+    }
+    
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            return AccountService.failed(e);
+        }
+    }
+
+    /**
+     * Transfers that are aborted by a concurrent modification are retried according to the {@link RetryPolicy}.
+     * A transfer with the idempotency key of a recent transfer is not applied again, it has the same outcome instead,
+     * and the key is journaled with the debit so that the transfer is still known after a restart.
+     * The transfers of a batch are not deduplicated.
+     */
     @Override
     public void transfer(FundTransferRequest transferRequest) {
+        idempotencyCache.deduplicate(transferRequest, () -> transferWithRetries(transferRequest));
+    }
+    
+    /**
+     * A credit to a hot account goes to one of its sub-ledgers, which is picked once so that every attempt 
+     * locks and updates the same accounts. A debit of a hot account also locks its sub-ledgers when the attempt
+     * is pessimistic, as they may have to be swept into it.
+     */
+    private void transferWithRetries(FundTransferRequest transferRequest) {
+        Integer fromAccountNo = transferRequest.getFromAccountNo();
+        Integer toAccountNo = transferRequest.getToAccountNo();
+        Validate.isTrue(!fromAccountNo.equals(toAccountNo), "Cannot transfer from account %d to itself!", fromAccountNo);
+        validateNotSubLedger(fromAccountNo);
+        validateNotSubLedger(toAccountNo);
+        Integer creditAccountNo = hotAccounts.creditAccountOf(toAccountNo);
+        int[] fromSubLedgers = hotAccounts.subLedgersOf(fromAccountNo);
+        List<Integer> accountNos = ledgersOf(fromAccountNo, fromSubLedgers);
+        accountNos.add(creditAccountNo);
+        withRetries(accountNos, () -> {
+            attemptTransfer(transferRequest, fromSubLedgers, creditAccountNo);
+            return null;
+        });
+    }
+    
+    private void attemptTransfer(FundTransferRequest transferRequest, int[] fromSubLedgers, Integer creditAccountNo) {
+        long amount = Money.toMinorUnits(transferRequest.getAmount());
+        Validate.isTrue(amount > 0, "Transfer amount must be positive!");
         Account fromAccount = accountRepo.get(transferRequest.getFromAccountNo());
-
-        BigDecimal fundsAvailable = fromAccount.getCurrentBalance().add(fromAccount.getOverdraftLimit());
+        if (fromSubLedgers != null && fromAccount.availableFundsInMinorUnits() < amount) {
+            sweep(fromAccount.getNumber(), fromSubLedgers);
+            fromAccount = accountRepo.get(transferRequest.getFromAccountNo());
+        }
 
         // Need to validate there is enough cash in the account
-        Validate.validState(fundsAvailable.compareTo(transferRequest.getAmount()) >= 0, 
-                "Insufficient funds in account %d of %f for transfer of %f!",
-                transferRequest.getFromAccountNo(), fundsAvailable, transferRequest.getAmount());
+        validateFunds(fromAccount, amount);
+        
+        fromAccount.addTransactionInMinorUnits(DEBIT, amount, transferRequest.getIdempotencyKey());
         
-        Account toAccount = accountRepo.get(transferRequest.getToAccountNo());
+        // Only the debit can be out of date, the credit is applied to the account as it is when committed
+        this.accountRepo.updateAndCredit(fromAccount, creditAccountNo, amount);
+    }
+
+    /**
+     * Every account in the batch is read once, all of its legs are applied to that one copy, 
+     * and then all of the changed accounts are committed together.
+     * As with a single transfer, credits to hot accounts go to sub-ledgers picked once for the whole batch,
+     * and the sub-ledgers of a hot account are swept into it as part of the batch when it cannot cover a debit.
+     * A batch aborted by a concurrent modification is retried as a whole according to the {@link RetryPolicy}
+     */
+    @Override
+    public List<FundTransferResult> transferBatch(List<FundTransferRequest> transferRequests, boolean atomic) {
+        Set<Integer> accountNos = new LinkedHashSet<>();
+        Map<Integer, int[]> fromSubLedgers = new HashMap<>();
+        List<Integer> creditAccountNos = new ArrayList<>(transferRequests.size());
+        transferRequests.forEach(transferRequest -> {
+            validateNotSubLedger(transferRequest.getFromAccountNo());
+            validateNotSubLedger(transferRequest.getToAccountNo());
+            int[] subLedgers = hotAccounts.subLedgersOf(transferRequest.getFromAccountNo());
+            if (subLedgers != null) {
+                fromSubLedgers.put(transferRequest.getFromAccountNo(), subLedgers);
+            }
+            accountNos.addAll(ledgersOf(transferRequest.getFromAccountNo(), subLedgers));
+            Integer creditAccountNo = hotAccounts.creditAccountOf(transferRequest.getToAccountNo());
+            creditAccountNos.add(creditAccountNo);
+            accountNos.add(creditAccountNo);
+        });
+        return withRetries(accountNos, () -> attemptTransferBatch(transferRequests, fromSubLedgers, creditAccountNos, atomic));
+    }
+    
+    private List<FundTransferResult> attemptTransferBatch(List<FundTransferRequest> transferRequests, 
+            Map<Integer, int[]> fromSubLedgers, List<Integer> creditAccountNos, boolean atomic) {
+        Map<Integer, Account> accounts = new LinkedHashMap<>();
+        List<FundTransferResult> results = new ArrayList<>(transferRequests.size());
+        boolean failed = false;
         
-        fromAccount.addTransaction(DEBIT, transferRequest.getAmount());
-        toAccount.addTransaction(CREDIT, transferRequest.getAmount());
+        for (int i = 0; i < transferRequests.size(); i++) {
+            FundTransferRequest transferRequest = transferRequests.get(i);
+            try {
+                Validate.isTrue(!transferRequest.getFromAccountNo().equals(transferRequest.getToAccountNo()), 
+                        "Cannot transfer from account %d to itself!", transferRequest.getFromAccountNo());
+                Account fromAccount = accounts.computeIfAbsent(transferRequest.getFromAccountNo(), accountRepo::get);
+                Account toAccount = accounts.computeIfAbsent(creditAccountNos.get(i), accountRepo::get);
+                long amount = Money.toMinorUnits(transferRequest.getAmount());
+                Validate.isTrue(amount > 0, "Transfer amount must be positive!");
+                
+                int[] subLedgers = fromSubLedgers.get(fromAccount.getNumber());
+                if (subLedgers != null && fromAccount.availableFundsInMinorUnits() < amount) {
+                    sweep(fromAccount, subLedgers, accounts);
+                }
+                validateFunds(fromAccount, amount);
+                
+                fromAccount.addTransactionInMinorUnits(DEBIT, amount);
+                toAccount.addTransactionInMinorUnits(CREDIT, amount);
+                results.add(FundTransferResult.success());
+            } catch (IllegalArgumentException | IllegalStateException | NullPointerException e) {
+                failed = true;
+                results.add(FundTransferResult.failure(e.getMessage()));
+            }
+        }
         
-        this.accountRepo.update(new ImmutablePair<Account, Account>(fromAccount, toAccount));
+        if (atomic && failed) {
+            return results.stream()
+                    .map(result -> result.isSuccess() 
+                            ? FundTransferResult.failure("Not applied as another transfer in the batch failed!") : result)
+                    .collect(Collectors.toList());
+        }
         
+        this.accountRepo.update(changedAccounts(accounts));
+        return results;
+    }
+    
+    /**
+     * Moves the balances of the sub-ledgers of a hot account back into it, holding the locks of all of them,
+     * so that it can be debited with the credits they have taken.
+     * This is done when a debit cannot be covered by the account on its own, rather than reading the sub-ledgers 
+     * on every debit, and the sweep is committed whether or not the debit then goes ahead.
+     */
+    private void sweep(Integer accountNo, int[] subLedgers) {
+        accountRepo.withLocks(ledgersOf(accountNo, subLedgers), () -> {
+            // The account is committed after its sub-ledgers, so their debits come before its credit
+            Map<Integer, Account> accounts = new LinkedHashMap<>();
+            Account account = accountRepo.get(accountNo);
+            sweep(account, subLedgers, accounts);
+            accounts.put(accountNo, account);
+            List<Account> changedAccounts = changedAccounts(accounts);
+            if (!changedAccounts.isEmpty()) {
+                this.accountRepo.update(changedAccounts);
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * Debits each sub-ledger with a balance by all of it, and credits the account with the total, 
+     * so the combined balance is the same once they are committed together.
+     * @param accounts - the copies of the accounts being changed, which the sub-ledgers are read into
+     */
+    private void sweep(Account account, int[] subLedgers, Map<Integer, Account> accounts) {
+        long swept = 0;
+        for (int subLedgerNo : subLedgers) {
+            Account subLedger = accounts.computeIfAbsent(subLedgerNo, accountRepo::get);
+            long balance = subLedger.currentBalanceInMinorUnits();
+            if (balance > 0) {
+                subLedger.addTransactionInMinorUnits(DEBIT, balance);
+                swept = Math.addExact(swept, balance);
+            }
+        }
+        if (swept > 0) {
+            account.addTransactionInMinorUnits(CREDIT, swept);
+        }
+    }
+    
+    private static List<Account> changedAccounts(Map<Integer, Account> accounts) {
+        return accounts.values().stream()
+                .filter(account -> account.getTransactions().size() > account.getCommittedTransactionCount())
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * @throws - InsufficientFundsException when the account does not have enough funds for the amount
+     */
+    static void validateFunds(Account account, long amount) {
+        long fundsAvailable = account.availableFundsInMinorUnits();
+        if (fundsAvailable < amount) {
+            // Only format the message when failing, to keep the successful path free of allocation
+            throw new InsufficientFundsException(String.format("Insufficient funds in account %d of %f for transfer of %f!",
+                    account.getNumber(), Money.toBigDecimal(fundsAvailable), Money.toBigDecimal(amount)));
+        }
+    }
+    
+    public ConflictMetrics getConflictMetrics() {
+        return conflictMetrics;
+    }
+    
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+    
+    public HotAccounts getHotAccounts() {
+        return hotAccounts;
+    }
+    
+    /**
+     * @param subLedgers - the sub-ledgers of the account, or null when it is not hot
+     * @return - the account followed by its sub-ledgers, which can be added to
+     */
+    private static List<Integer> ledgersOf(Integer accountNo, int[] subLedgers) {
+        List<Integer> accountNos = new ArrayList<>(subLedgers == null ? 2 : subLedgers.length + 2);
+        accountNos.add(accountNo);
+        if (subLedgers != null) {
+            for (int subLedger : subLedgers) {
+                accountNos.add(subLedger);
+            }
+        }
+        return accountNos;
+    }
+    
+    /**
+     * Sub-ledgers are internal to their hot account, so are treated as if they do not exist
+     */
+    private void validateNotSubLedger(Integer accountNo) {
+        if (hotAccounts.isSubLedger(accountNo)) {
+            throw new NullPointerException(String.format("Account number %d is not valid!", accountNo));
+        }
+    }
+    
+    /**
+     * Splits any of the accounts whose commits have been aborted often enough to be worth splitting
+     */
+    private void splitContended(Collection<Integer> accountNos) {
+        for (Integer accountNo : accountNos) {
+            if (hotAccounts.isContended(accountNo, conflictMetrics)) {
+                hotAccounts.split(accountNo, subLedger -> accountRepo.createAlongside(accountNo, subLedger).getNumber());
+            }
+        }
+    }
+    
+    /**
+     * Runs the read-validate-commit operation until it is not aborted by a concurrent modification, 
+     * backing off between attempts and holding the account locks throughout once the policy says to.
+     * @throws - ConcurrentModificationException when every attempt allowed by the policy has been aborted
+     */
+    private <T> T withRetries(Collection<Integer> accountNos, Supplier<T> operation) {
+        for (int attempt = 1; ; attempt++) {
+            accountNos.forEach(conflictMetrics::attempted);
+            try {
+                return retryPolicy.isPessimistic(attempt) ? accountRepo.withLocks(accountNos, operation) : operation.get();
+            } catch (ConcurrentModificationException e) {
+                accountNos.forEach(conflictMetrics::aborted);
+                splitContended(accountNos);
+                if (attempt >= retryPolicy.getMaxAttempts()) {
+                    accountNos.forEach(conflictMetrics::failed);
+                    throw e;
+                }
+                backoff(attempt, e);
+            }
+        }
+    }
+    
+    private void backoff(int abortedAttempts, ConcurrentModificationException abort) {
+        try {
+            Thread.sleep(retryPolicy.backoffMillis(abortedAttempts));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw abort;
+        }
     }
     
 }
@@ -1,19 +1,220 @@
 package com.revolut.interview;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.ws.rs.core.Configurable;
 import javax.ws.rs.core.UriBuilder;
 
-import org.glassfish.jersey.jdkhttp.JdkHttpServerFactory;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 
+/**
+ * Starts the REST webservice. The {@link AccountService} implementation is chosen with the system property 
+ * <code>accountService</code>, either <code>locking</code> (the default) or <code>sharded</code>, 
+ * with the number of shards set by <code>accountService.shards</code>.
+ * The locking service keeps its accounts durably in a {@link Journal} when <code>journal.dir</code> is set,
+ * with a snapshot taken every <code>snapshot.intervalMillis</code>.
+ * When <code>history.hotTransactions</code> is set only that many recent transactions of each account are kept
+ * on the heap, with older ones moved off-heap, or to memory mapped files in <code>history.coldDir</code> when set.
+ * Setting <code>accountRepository</code> to <code>offHeap</code> keeps only the current state of each account, off the heap.
+ * Transaction ids are taken in blocks of <code>ids.blockSize</code>, by default 64, while account numbers are in sequence.
+ * The in-memory accounts are split into <code>accountRepository.partitions</code> independent ledgers, by default one,
+ * with the journal of each ledger in its own directory under <code>journal.dir</code>.
+ * The HTTP server handles requests on <code>http.threads</code> threads, and the locking service completes 
+ * asynchronous requests on <code>async.threads</code> threads with up to <code>async.queueCapacity</code> waiting.
+ * Setting <code>http.virtualThreads</code> instead handles each request, and each asynchronous request, on its own virtual thread,
+ * with no more asynchronous requests in progress at once than the pooled threads and queue would have accepted.
+ * JSON is bound by MOXy unless <code>json.codec</code> is <code>streaming</code>, when the accounts, transactions
+ * and requests on the hot endpoints are read and written by hand by a {@link JsonCodec} instead.
+ * When <code>binary.port</code> is set transfers are also accepted on that port by a {@link BinaryTransferServer}.
+ * Transfers with an idempotency key are deduplicated by an {@link IdempotencyCache} of up to <code>idempotency.maxKeys</code>
+ * keys, each kept for <code>idempotency.ttlMillis</code>, which the locking service rebuilds from its journal.
+ * The locking service splits accounts whose commits keep aborting into <code>hotAccounts.subLedgers</code> sub-ledgers
+ * which take their credits, by default none, as decided by <code>hotAccounts.minAborts</code> and <code>hotAccounts.abortRatio</code>.
+ */
 public class AccountServiceInitializer {
     private final static int port = 8080;
     private final static String host = "http://localhost/";
+    private final static long defaultSnapshotIntervalMillis = 60000;
+    private final static int defaultAsyncQueueCapacity = 1024;
      
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
         URI baseUri = UriBuilder.fromUri(host).port(port).build();
-        ResourceConfig config = new ResourceConfig(AccountServiceController.class);
-        JdkHttpServerFactory.createHttpServer(baseUri, config);
+        AccountService accountService = createAccountService();
+        HttpServer server = createHttpServer(baseUri, createResourceConfig(accountService));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow, "http-shutdown"));
+        server.start();
+        Integer binaryPort = Integer.getInteger("binary.port");
+        if (binaryPort != null) {
+            new BinaryTransferServer(accountService, binaryPort).start();
+        }
+        // Grizzly's threads are all daemons, so the main thread has to keep the server running
+        Thread.currentThread().join();
+    }
+    
+    /**
+     * @return - a server which has not been started yet
+     */
+    public static HttpServer createHttpServer(URI baseUri, ResourceConfig config) {
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(baseUri, config, false);
+        int httpThreads = Integer.getInteger("http.threads", Runtime.getRuntime().availableProcessors());
+        for (NetworkListener listener : server.getListeners()) {
+            if (Boolean.getBoolean("http.virtualThreads")) {
+                listener.getTransport().setWorkerThreadPool(
+                        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-worker-", 1).factory()));
+            } else {
+                listener.getTransport().setWorkerThreadPoolConfig(ThreadPoolConfig.defaultConfig()
+                        .setPoolName("http-worker")
+                        .setCorePoolSize(httpThreads)
+                        .setMaxPoolSize(httpThreads));
+            }
+        }
+        return server;
+    }
+    
+    public static AccountService createAccountService() {
+        return createAccountService(AccountServiceInitializer::createAccountRepository);
+    }
+    
+    /**
+     * @param accountRepository - creates the repository of the locking service, a new one for each service
+     */
+    public static AccountService createAccountService(Supplier<AccountRepository> accountRepository) {
+        String accountService = System.getProperty("accountService", "locking");
+        switch (accountService) {
+            case "locking":
+                return new AccountServiceImpl(accountRepository.get(), RetryPolicy.fromSystemProperties(), createAsyncExecutor());
+            case "sharded":
+                return new ShardedAccountService(
+                        Integer.getInteger("accountService.shards", Runtime.getRuntime().availableProcessors()),
+                        ShardedAccountService.DEFAULT_QUEUE_CAPACITY);
+            default:
+                throw new IllegalArgumentException("Unknown account service " + accountService);
+        }
+    }
+    
+    /**
+     * A bounded pool whose threads stop when idle, which rejects work once its queue is full 
+     * rather than letting requests for a slow account build up without limit.
+     * With virtual threads the same number of requests is bounded by a {@link BoundedVirtualThreadExecutor} instead.
+     */
+    public static ExecutorService createAsyncExecutor() {
+        int threads = Integer.getInteger("async.threads", 4 * Runtime.getRuntime().availableProcessors());
+        int queueCapacity = Integer.getInteger("async.queueCapacity", defaultAsyncQueueCapacity);
+        if (Boolean.getBoolean("http.virtualThreads")) {
+            return new BoundedVirtualThreadExecutor("account-service", threads + queueCapacity);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreads("account-service"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    public static AccountRepository createAccountRepository() {
+        if ("offHeap".equals(System.getProperty("accountRepository"))) {
+            return new OffHeapAccountRepository();
+        }
+        int partitions = Integer.getInteger("accountRepository.partitions", 1);
+        if (partitions == 1) {
+            return createAccountCache(0, Integer.MAX_VALUE, null);
+        }
+        return new PartitionedAccountRepository(partitions, 
+                (partition, firstIdAfter, lastId) -> createAccountCache(firstIdAfter, lastId, "partition-" + partition));
+    }
+    
+    /**
+     * @param partitionDirectory - the directory of the partition under the journal and cold directories, 
+     *              or null when the repository is not partitioned
+     */
+    private static AccountCache createAccountCache(int firstIdAfter, int lastId, String partitionDirectory) {
+        Path journalDirectory = directoryOf("journal.dir", partitionDirectory);
+        AccountCache cache = journalDirectory == null 
+                ? new AccountCache(firstIdAfter, lastId, null) 
+                : createJournaledAccountCache(firstIdAfter, lastId, journalDirectory);
+        Integer hotTransactions = Integer.getInteger("history.hotTransactions");
+        if (hotTransactions != null) {
+            Path coldDirectory = directoryOf("history.coldDir", partitionDirectory);
+            cache.withColdStore(coldDirectory == null 
+                    ? ColdTransactionStore.offHeap(ColdTransactionStore.DEFAULT_BLOCK_BYTES)
+                    : ColdTransactionStore.mapped(coldDirectory, ColdTransactionStore.DEFAULT_BLOCK_BYTES), 
+                    hotTransactions);
+        }
+        return cache;
+    }
+    
+    private static Path directoryOf(String property, String partitionDirectory) {
+        String directory = System.getProperty(property);
+        if (directory == null) {
+            return null;
+        }
+        return partitionDirectory == null ? Paths.get(directory) : Paths.get(directory, partitionDirectory);
+    }
+    
+    private static AccountCache createJournaledAccountCache(int firstIdAfter, int lastId, Path journalDirectory) {
+        AccountJournal journal = new AccountJournal(Journal.fromSystemProperties(journalDirectory));
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "journal-shutdown"));
+        AccountCache cache = new AccountCache(firstIdAfter, lastId, journal);
+        
+        long snapshotIntervalMillis = Long.getLong("snapshot.intervalMillis", defaultSnapshotIntervalMillis);
+        ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(daemonThreads("account-snapshots"));
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                cache.snapshot();
+            } catch (RuntimeException e) {
+                // Keep snapshotting, the journal still holds everything until a snapshot succeeds
+                Logger.getLogger(AccountServiceInitializer.class.getName()).log(Level.WARNING, "Account snapshot failed", e);
+            }
+        }, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        return cache;
+    }
+    
+    public static ResourceConfig createResourceConfig(AccountService accountService) {
+        ResourceConfig config = new ResourceConfig().register(new AccountServiceController(accountService));
+        registerJsonCodecs(config);
+        return config;
+    }
+    
+    /**
+     * Registers the {@link JsonCodec}s chosen by <code>json.codec</code> with a server or client
+     */
+    public static void registerJsonCodecs(Configurable<?> configurable) {
+        String codec = System.getProperty("json.codec", "moxy");
+        switch (codec) {
+            case "moxy":
+                break;
+            case "streaming":
+                for (JsonCodec<?> jsonCodec : JsonCodec.all()) {
+                    configurable.register(jsonCodec);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown JSON codec " + codec);
+        }
     }
 }
@@ -0,0 +1,56 @@
+package com.revolut.interview;
+
+import java.math.BigDecimal;
+
+/**
+ * The current state of an {@link Account} without its transaction history, for balance checks.
+ */
+public class AccountSummary {
+    private Integer number;
+    private String customerName;
+    private BigDecimal currentBalance;
+    private BigDecimal overdraftLimit;
+    private int version;
+
+    public static AccountSummary of(Account account) {
+        AccountSummary summary = new AccountSummary();
+        summary.setNumber(account.getNumber());
+        summary.setCustomerName(account.getCustomerName());
+        summary.setCurrentBalance(account.getCurrentBalance());
+        summary.setOverdraftLimit(account.getOverdraftLimit());
+        summary.setVersion(account.getVersion());
+        return summary;
+    }
+
+    public Integer getNumber() {
+        return number;
+    }
+    public void setNumber(Integer number) {
+        this.number = number;
+    }
+    public String getCustomerName() {
+        return customerName;
+    }
+    public void setCustomerName(String customerName) {
+        this.customerName = customerName;
+    }
+    public BigDecimal getCurrentBalance() {
+        return currentBalance;
+    }
+    public void setCurrentBalance(BigDecimal currentBalance) {
+        this.currentBalance = currentBalance;
+    }
+    public BigDecimal getOverdraftLimit() {
+        return overdraftLimit;
+    }
+    public void setOverdraftLimit(BigDecimal overdraftLimit) {
+        this.overdraftLimit = overdraftLimit;
+    }
+    public int getVersion() {
+        return version;
+    }
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+}
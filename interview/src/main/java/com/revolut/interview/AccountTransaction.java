@@ -2,11 +2,18 @@ package com.revolut.interview;
 
 import java.math.BigDecimal;
 
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * The amount and balance are held as {@link Money} minor units, and only converted to {@link BigDecimal} for JSON.
+ * The debit of a transfer made with an idempotency key carries the key, so it is journaled along with the transaction.
+ */
 public class AccountTransaction {
     private Integer id;
     private TransactionType type;
-    private BigDecimal amount;
-    private BigDecimal balance;    
+    private long amount;
+    private long balance;    
+    private String idempotencyKey;
 
     public Integer getId() {
         return id;
@@ -25,19 +32,40 @@ public class AccountTransaction {
     }
 
     public BigDecimal getAmount() {
-        return amount;
+        return Money.toBigDecimal(amount);
     }
 
     public void setAmount(BigDecimal amount) {
-        this.amount = amount;
+        this.amount = Money.toMinorUnits(amount);
     }
 
     public BigDecimal getBalance() {
-        return balance;
+        return Money.toBigDecimal(balance);
     }
 
     public void setBalance(BigDecimal balance) {
-        this.balance = balance;
+        this.balance = Money.toMinorUnits(balance);
+    }
+    
+    /**
+     * Only kept in the journal, as the key identifies the transfer to the client that sent it and is not public.
+     * @return - the idempotency key of the transfer this transaction is the debit of, or null when it has none
+     */
+    @XmlTransient
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+    
+    public long amountInMinorUnits() {
+        return amount;
+    }
+    
+    public long balanceInMinorUnits() {
+        return balance;
     }
 
     public static class Builder {
@@ -49,7 +77,12 @@ public class AccountTransaction {
         }
         
         public Builder amount(BigDecimal amount) {
-            instance.amount = amount;
+            instance.amount = Money.toMinorUnits(amount);
+            return this;
+        }
+        
+        public Builder amountInMinorUnits(long amountInMinorUnits) {
+            instance.amount = amountInMinorUnits;
             return this;
         }
         
@@ -58,7 +91,12 @@ public class AccountTransaction {
         }
         
         public Builder balance(BigDecimal balance) {
-            instance.balance = balance;
+            instance.balance = Money.toMinorUnits(balance);
+            return this;
+        }        
+        
+        public Builder balanceInMinorUnits(long balanceInMinorUnits) {
+            instance.balance = balanceInMinorUnits;
             return this;
         }        
         
@@ -66,6 +104,11 @@ public class AccountTransaction {
             return balance(new BigDecimal(amount));
         }
         
+        public Builder idempotencyKey(String idempotencyKey) {
+            instance.idempotencyKey = idempotencyKey;
+            return this;
+        }
+        
         public AccountTransaction build() {
             return instance;
         }
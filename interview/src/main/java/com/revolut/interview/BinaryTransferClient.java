@@ -0,0 +1,102 @@
+package com.revolut.interview;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import com.revolut.interview.BinaryTransferServer.Status;
+
+/**
+ * A blocking client of the {@link BinaryTransferServer}. Requests are buffered until {@link #flush()},
+ * so any number can be sent before reading their responses, which arrive in the order the requests were sent.
+ * Not thread safe, each thread should have its own client.
+ */
+public class BinaryTransferClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataOutputStream output;
+    private final DataInputStream input;
+
+    public BinaryTransferClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    public void send(long correlationId, int fromAccountNo, int toAccountNo, long amountInMinorUnits) throws IOException {
+        send(correlationId, fromAccountNo, toAccountNo, amountInMinorUnits, null);
+    }
+
+    /**
+     * @param idempotencyKey - the key the server deduplicates the transfer by, or null when it is not to be deduplicated
+     */
+    public void send(long correlationId, int fromAccountNo, int toAccountNo, long amountInMinorUnits, 
+            String idempotencyKey) throws IOException {
+        byte[] key = idempotencyKey == null ? null : idempotencyKey.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(BinaryTransferServer.REQUEST_BYTES + (key == null ? 0 : Short.BYTES + key.length));
+        output.writeLong(correlationId);
+        output.writeInt(fromAccountNo);
+        output.writeInt(toAccountNo);
+        output.writeLong(amountInMinorUnits);
+        if (key != null) {
+            output.writeShort(key.length);
+            output.write(key);
+        }
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * Blocks until the next response arrives.
+     * @throws - EOFException when the server has closed the connection
+     */
+    public Response receive() throws IOException {
+        int length = input.readInt();
+        long correlationId = input.readLong();
+        Status status = Status.of(input.readByte());
+        byte[] message = new byte[input.readUnsignedShort()];
+        input.readFully(message);
+        // Anything after the message is from a later version of the protocol
+        input.skipBytes(length - Long.BYTES - 1 - Short.BYTES - message.length);
+        return new Response(correlationId, status, new String(message, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    public static class Response {
+        private final long correlationId;
+        private final Status status;
+        private final String message;
+
+        public Response(long correlationId, Status status, String message) {
+            this.correlationId = correlationId;
+            this.status = status;
+            this.message = message;
+        }
+
+        public long getCorrelationId() {
+            return correlationId;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return - the reason the transfer was not applied, empty when it was
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Accepts transfers over a plain socket in a compact binary protocol, as a second way into the {@link AccountService}
+ * for clients which cannot afford JSON. Every frame is a big-endian int length followed by that many bytes.
+ * A request is a fixed {@link #REQUEST_BYTES} byte record of a long correlation id chosen by the client,
+ * an int from account number, an int to account number and a long amount in {@link Money} minor units,
+ * optionally followed by a short length and the UTF-8 idempotency key of the transfer.
+ * A response is the correlation id, a {@link Status} byte, and a short length followed by the UTF-8 error message,
+ * which is empty when the transfer succeeded.
+ * <p>
+ * Requests are pipelined, a client can send any number without waiting, and each is handed to
+ * {@link AccountService#transferAsync(FundTransferRequest)} as soon as it is read. Responses are always sent
+ * in the order the requests arrived on the connection, whatever order the transfers complete in.
+ * Once {@link #DEFAULT_MAX_PENDING} transfers are waiting on a connection it is not read from until some have completed.
+ * A single thread runs the selector for every connection, any frame of the wrong length closes its connection.
+ * A client which shuts down its output still receives the responses to everything it sent.
+ */
+public class BinaryTransferServer implements AutoCloseable {
+
+    public static final int REQUEST_BYTES = 24;
+    /** The longest request, with an idempotency key of the most UTF-8 bytes it can have. */
+    public static final int MAX_REQUEST_BYTES = REQUEST_BYTES + Short.BYTES + 3 * IdempotencyCache.MAX_KEY_LENGTH;
+    public static final int DEFAULT_MAX_PENDING = 1024;
+    /** Longer error messages are cut short, so that a response always fits the connection's buffer. */
+    public static final int MAX_MESSAGE_BYTES = 1024;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final Logger LOGGER = Logger.getLogger(BinaryTransferServer.class.getName());
+
+    /**
+     * The outcome of a transfer, sent as its ordinal.
+     */
+    public enum Status {
+        /** The transfer was applied. */
+        OK,
+        /** The transfer was invalid, or could not be applied, e.g. for lack of funds. */
+        REJECTED,
+        /** The service was too busy to take the transfer, it can be retried. */
+        BUSY,
+        /** The transfer failed for any other reason. */
+        FAILED;
+
+        private static final Status[] VALUES = values();
+
+        public static Status of(byte ordinal) {
+            Validate.validIndex(VALUES, ordinal, "Unknown status %d!", ordinal);
+            return VALUES[ordinal];
+        }
+    }
+
+    private final AccountService accountService;
+    private final int maxPending;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public BinaryTransferServer(AccountService accountService, int port) throws IOException {
+        this(accountService, port, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param port - the port to listen on, or 0 for any free port
+     */
+    public BinaryTransferServer(AccountService accountService, int port, int maxPending) throws IOException {
+        Validate.isTrue(maxPending > 0, "Maximum pending transfers must be positive!");
+        this.accountService = accountService;
+        this.maxPending = maxPending;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this::run, "binary-transfer");
+        this.thread.setDaemon(true);
+    }
+
+    public BinaryTransferServer start() {
+        thread.start();
+        return this;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting and closes every connection, transfers already handed to the service still complete
+     * but their responses are not sent.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (!thread.isAlive()) {
+            closeChannels();
+            return;
+        }
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Connection connection;
+                while ((connection = completed.poll()) != null) {
+                    connection.respond();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        ((Connection) key.attachment()).read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        ((Connection) key.attachment()).respond();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Binary transfer server stopped", e);
+        } finally {
+            closeChannels();
+        }
+    }
+
+    private void closeChannels() {
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key);
+        }
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close binary transfer server", e);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(key, channel));
+        } catch (IOException e) {
+            // Keep serving the connections already open, the client will see its connection fail
+            LOGGER.log(Level.WARNING, "Failed to accept binary transfer connection", e);
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // already closing
+        }
+    }
+
+    /**
+     * A transfer which has been handed to the service and whose response has not been sent yet.
+     */
+    private static class Pending {
+        private final long correlationId;
+        private final CompletableFuture<Void> result;
+
+        Pending(long correlationId, CompletableFuture<Void> result) {
+            this.correlationId = correlationId;
+            this.result = result;
+        }
+    }
+
+    /**
+     * The state of a single connection, only ever touched by the selector thread.
+     */
+    private class Connection {
+        private final SelectionKey key;
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(BUFFER_BYTES);
+        private final ByteBuffer output = ByteBuffer.allocate(BUFFER_BYTES);
+        private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+        private boolean inputShutdown;
+
+        Connection(SelectionKey key, SocketChannel channel) {
+            this.key = key;
+            this.channel = channel;
+        }
+
+        void read() {
+            try {
+                inputShutdown = channel.read(input) < 0;
+                submitRequests();
+            } catch (IOException e) {
+                closeQuietly(key);
+            }
+        }
+
+        /**
+         * Hands every complete request in the input to the service until too many are pending,
+         * when reading stops until responses have been sent.
+         */
+        private void submitRequests() {
+            input.flip();
+            while (pending.size() < maxPending && input.remaining() >= Integer.BYTES) {
+                int length = input.getInt(input.position());
+                if (length != REQUEST_BYTES && (length < REQUEST_BYTES + Short.BYTES || length > MAX_REQUEST_BYTES)) {
+                    closeAfterFrame(length);
+                    return;
+                }
+                if (input.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                input.getInt();
+                long correlationId = input.getLong();
+                int fromAccountNo = input.getInt();
+                int toAccountNo = input.getInt();
+                long amount = input.getLong();
+                String idempotencyKey = null;
+                if (length > REQUEST_BYTES) {
+                    int keyLength = input.getShort() & 0xffff;
+                    if (keyLength != length - REQUEST_BYTES - Short.BYTES) {
+                        closeAfterFrame(length);
+                        return;
+                    }
+                    idempotencyKey = new String(input.array(), input.arrayOffset() + input.position(), keyLength, StandardCharsets.UTF_8);
+                    input.position(input.position() + keyLength);
+                }
+                submit(correlationId, fromAccountNo, toAccountNo, amount, idempotencyKey);
+            }
+            input.compact();
+            updateInterest();
+            respond();
+        }
+
+        private void closeAfterFrame(int length) {
+            LOGGER.warning("Closing binary transfer connection after a frame of " + length + " bytes");
+            closeQuietly(key);
+        }
+
+        private void submit(long correlationId, int fromAccountNo, int toAccountNo, long amount, String idempotencyKey) {
+            FundTransferRequest request = new FundTransferRequest();
+            request.setFromAccountNo(fromAccountNo);
+            request.setToAccountNo(toAccountNo);
+            request.setAmount(Money.toBigDecimal(amount));
+            request.setIdempotencyKey(idempotencyKey);
+            CompletableFuture<Void> result;
+            try {
+                result = accountService.transferAsync(request);
+            } catch (RuntimeException e) {
+                result = AccountService.failed(e);
+            }
+            pending.add(new Pending(correlationId, result));
+            if (!result.isDone()) {
+                result.whenComplete((ignored, failure) -> {
+                    completed.add(this);
+                    selector.wakeup();
+                });
+            }
+        }
+
+        /**
+         * Sends the responses of the transfers at the head of the connection which have completed,
+         * stopping at the first still in progress so that responses keep the order of their requests.
+         */
+        void respond() {
+            if (!key.isValid()) {
+                return;
+            }
+            boolean wasFull = pending.size() >= maxPending;
+            while (!pending.isEmpty() && pending.peek().result.isDone()) {
+                if (!encode(pending.peek())) {
+                    break;
+                }
+                pending.poll();
+            }
+            try {
+                output.flip();
+                channel.write(output);
+                output.compact();
+            } catch (IOException e) {
+                closeQuietly(key);
+                return;
+            }
+            if (wasFull && pending.size() < maxPending && input.position() > 0) {
+                submitRequests();
+            } else if (inputShutdown && pending.isEmpty() && output.position() == 0) {
+                closeQuietly(key);
+            } else {
+                updateInterest();
+            }
+        }
+
+        /**
+         * @return - false when there is no room left in the output for the response
+         */
+        private boolean encode(Pending transfer) {
+            Status status = Status.OK;
+            byte[] message = new byte[0];
+            try {
+                transfer.result.join();
+            } catch (CompletionException e) {
+                Throwable failure = e.getCause();
+                status = statusOf(failure);
+                message = String.valueOf(failure.getMessage()).getBytes(StandardCharsets.UTF_8);
+                if (message.length > MAX_MESSAGE_BYTES) {
+                    message = Arrays.copyOf(message, MAX_MESSAGE_BYTES);
+                }
+            }
+            int length = Long.BYTES + 1 + Short.BYTES + message.length;
+            if (output.remaining() < Integer.BYTES + length) {
+                return false;
+            }
+            output.putInt(length)
+                    .putLong(transfer.correlationId)
+                    .put((byte) status.ordinal())
+                    .putShort((short) message.length)
+                    .put(message);
+            return true;
+        }
+
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int interest = pending.size() < maxPending && !inputShutdown ? SelectionKey.OP_READ : 0;
+            if (output.position() > 0) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interest);
+        }
+    }
+
+    /**
+     * The same outcomes as the REST API gives for each failure.
+     */
+    private static Status statusOf(Throwable failure) {
+        if (failure instanceof IllegalArgumentException || failure instanceof ConcurrentModificationException
+                || failure instanceof IllegalStateException) {
+            return Status.REJECTED;
+        }
+        if (failure instanceof RejectedExecutionException) {
+            return Status.BUSY;
+        }
+        return Status.FAILED;
+    }
+}
@@ -0,0 +1,91 @@
+package com.revolut.interview;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Runs every task on its own virtual thread, so a task blocked on an account lock or the journal
+ * only parks its virtual thread rather than holding on to a platform thread.
+ * Virtual threads are not pooled, so instead of a queue the number of tasks running at once is limited by
+ * <code>maxTasks</code>, and any task beyond that is rejected rather than letting work build up without limit.
+ */
+public class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+    private final ExecutorService threads;
+    private final Semaphore permits;
+    private final int maxTasks;
+
+    public BoundedVirtualThreadExecutor(String name, int maxTasks) {
+        Validate.isTrue(maxTasks > 0, "Maximum number of tasks must be positive!");
+        ThreadFactory factory = Thread.ofVirtual().name(name + "-", 1).factory();
+        this.threads = Executors.newThreadPerTaskExecutor(factory);
+        this.permits = new Semaphore(maxTasks);
+        this.maxTasks = maxTasks;
+    }
+
+    /**
+     * @throws - RejectedExecutionException when <code>maxTasks</code> tasks are already running, or the executor is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("Too many tasks in progress!");
+        }
+        try {
+            threads.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return - the number of tasks which have been accepted but not yet finished
+     */
+    public int getActiveCount() {
+        return maxTasks - permits.availablePermits();
+    }
+
+    public int getMaxTasks() {
+        return maxTasks;
+    }
+
+    @Override
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return threads.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threads.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return threads.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threads.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,151 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * An append-only store of committed {@link AccountTransaction}s outside of the heap, which older chunks of each
+ * {@link TransactionHistory} are spilled to. Transactions are held as fixed size records in large blocks,
+ * either allocated off-heap or memory mapped from files, and are only ever addressed by their position,
+ * so the index of where each account's transactions are is kept by the history itself.
+ * Space is never reclaimed, as histories are never truncated.
+ */
+public class ColdTransactionStore implements AutoCloseable {
+
+    public static final int DEFAULT_BLOCK_BYTES = 64 * 1024 * 1024;
+
+    static final int RECORD_BYTES = 4 + 1 + 8 + 8;
+
+    private final Path directory;
+    private final int blockBytes;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile ByteBuffer[] blocks = new ByteBuffer[0];
+    private long position;
+
+    private ColdTransactionStore(Path directory, int blockBytes) {
+        Validate.isTrue(blockBytes >= RECORD_BYTES * TransactionHistory.CHUNK_SIZE, "Cold store blocks are too small!");
+        this.directory = directory;
+        this.blockBytes = blockBytes;
+    }
+
+    /**
+     * @return - a store in memory allocated outside of the heap
+     */
+    public static ColdTransactionStore offHeap(int blockBytes) {
+        return new ColdTransactionStore(null, blockBytes);
+    }
+
+    /**
+     * @return - a store in files in the directory which are memory mapped, so the operating system can page them out
+     */
+    public static ColdTransactionStore mapped(Path directory, int blockBytes) {
+        Validate.notNull(directory, "The cold store directory must be set!");
+        return new ColdTransactionStore(directory, blockBytes);
+    }
+
+    /**
+     * Appends the transactions, which are never split across blocks.
+     * @return - the position of the first transaction
+     */
+    public long append(AccountTransaction[] transactions) {
+        int bytes = transactions.length * RECORD_BYTES;
+        appendLock.lock();
+        try {
+            if (position % blockBytes + bytes > blockBytes) {
+                position += blockBytes - position % blockBytes;
+            }
+            int block = (int) (position / blockBytes);
+            if (block == blocks.length) {
+                addBlock();
+            }
+            ByteBuffer buffer = blocks[block];
+            int offset = (int) (position % blockBytes);
+            for (AccountTransaction transaction : transactions) {
+                buffer.putInt(offset, transaction.getId());
+                buffer.put(offset + 4, (byte) transaction.getType().ordinal());
+                buffer.putLong(offset + 5, transaction.amountInMinorUnits());
+                buffer.putLong(offset + 13, transaction.balanceInMinorUnits());
+                offset += RECORD_BYTES;
+            }
+            long start = position;
+            position += bytes;
+            return start;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return - a new copy of the transaction at the index from the position it was appended at
+     */
+    public AccountTransaction get(long start, int index) {
+        long recordPosition = start + (long) index * RECORD_BYTES;
+        ByteBuffer buffer = blocks[(int) (recordPosition / blockBytes)];
+        int offset = (int) (recordPosition % blockBytes);
+        AccountTransaction transaction = new AccountTransaction.Builder()
+                .type(TransactionType.values()[buffer.get(offset + 4)])
+                .amountInMinorUnits(buffer.getLong(offset + 5))
+                .balanceInMinorUnits(buffer.getLong(offset + 13))
+                .build();
+        transaction.setId(buffer.getInt(offset));
+        return transaction;
+    }
+
+    /**
+     * @return - the number of bytes appended so far
+     */
+    public long getBytes() {
+        appendLock.lock();
+        try {
+            return position;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the references to the blocks. Off-heap blocks are freed once collected,
+     * and mapped files are left in the directory.
+     */
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            blocks = new ByteBuffer[0];
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void addBlock() {
+        ByteBuffer block;
+        if (directory == null) {
+            block = ByteBuffer.allocateDirect(blockBytes);
+        } else {
+            try {
+                Files.createDirectories(directory);
+                Path file = directory.resolve(String.format("cold-%08d.log", blocks.length));
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    // The mapping stays valid after the channel is closed
+                    block = channel.map(FileChannel.MapMode.READ_WRITE, 0, blockBytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        ByteBuffer[] grown = new ByteBuffer[blocks.length + 1];
+        System.arraycopy(blocks, 0, grown, 0, blocks.length);
+        grown[blocks.length] = block;
+        // volatile write publishes the block before any position within it is handed out
+        blocks = grown;
+    }
+}
@@ -0,0 +1,114 @@
+package com.revolut.interview;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Counts, per account, the attempts to commit a change, how many of those were aborted by a concurrent
+ * modification, and how many operations finally failed after running out of retries.
+ * <p>
+ * Only accounts which have had a conflict are counted, from the attempt which was first aborted, so accounts
+ * which are never contended cost nothing. At most a fixed number of accounts are counted, once there are more
+ * the half with the fewest aborts is dropped.
+ */
+public class ConflictMetrics {
+
+    public static final int DEFAULT_MAX_ACCOUNTS = 10000;
+
+    private final Map<Integer, Counters> counters = new ConcurrentHashMap<>();
+    private final int maxAccounts;
+
+    public ConflictMetrics() {
+        this(DEFAULT_MAX_ACCOUNTS);
+    }
+
+    public ConflictMetrics(int maxAccounts) {
+        Validate.isTrue(maxAccounts > 1, "At least two accounts must be counted!");
+        this.maxAccounts = maxAccounts;
+    }
+
+    public void attempted(Integer accountNo) {
+        Counters accountCounters = counters.get(accountNo);
+        if (accountCounters != null) {
+            accountCounters.attempts.increment();
+        }
+    }
+
+    public void aborted(Integer accountNo) {
+        countersFor(accountNo).aborts.increment();
+    }
+
+    public void failed(Integer accountNo) {
+        countersFor(accountNo).failures.increment();
+    }
+
+    public long getAttempts(Integer accountNo) {
+        Counters accountCounters = counters.get(accountNo);
+        return accountCounters == null ? 0 : accountCounters.attempts.sum();
+    }
+
+    public long getAborts(Integer accountNo) {
+        Counters accountCounters = counters.get(accountNo);
+        return accountCounters == null ? 0 : accountCounters.aborts.sum();
+    }
+
+    public long getFailures(Integer accountNo) {
+        Counters accountCounters = counters.get(accountNo);
+        return accountCounters == null ? 0 : accountCounters.failures.sum();
+    }
+
+    /**
+     * @return - the number of accounts currently counted
+     */
+    public int getCountedAccounts() {
+        return counters.size();
+    }
+
+    public void clear() {
+        counters.clear();
+    }
+
+    /**
+     * Starts counting an account with the attempt which has just been aborted.
+     */
+    private Counters countersFor(Integer accountNo) {
+        Counters accountCounters = counters.get(accountNo);
+        if (accountCounters != null) {
+            return accountCounters;
+        }
+        if (counters.size() >= maxAccounts) {
+            evictLeastAborted();
+        }
+        return counters.computeIfAbsent(accountNo, key -> new Counters());
+    }
+
+    private synchronized void evictLeastAborted() {
+        if (counters.size() < maxAccounts) {
+            return;
+        }
+        // The counts are taken once, as they can change while sorting
+        List<Map.Entry<Integer, Long>> aborts = new ArrayList<>(counters.size());
+        counters.forEach((accountNo, accountCounters) ->
+                aborts.add(new AbstractMap.SimpleImmutableEntry<>(accountNo, accountCounters.aborts.sum())));
+        aborts.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<Integer, Long> entry : aborts.subList(0, Math.max(0, aborts.size() - maxAccounts / 2))) {
+            counters.remove(entry.getKey());
+        }
+    }
+
+    private static class Counters {
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder aborts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        Counters() {
+            attempts.increment();
+        }
+    }
+}
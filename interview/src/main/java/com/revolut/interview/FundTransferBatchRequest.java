@@ -0,0 +1,27 @@
+package com.revolut.interview;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FundTransferBatchRequest {
+    private boolean atomic;
+    private List<FundTransferRequest> transfers = new ArrayList<>();
+    
+    /**
+     * When atomic either every transfer in the batch completes or none of them do, 
+     * otherwise each transfer succeeds or fails independently.
+     */
+    public boolean isAtomic() {
+        return atomic;
+    }
+    public void setAtomic(boolean atomic) {
+        this.atomic = atomic;
+    }
+    public List<FundTransferRequest> getTransfers() {
+        return transfers;
+    }
+    public void setTransfers(List<FundTransferRequest> transfers) {
+        this.transfers = transfers;
+    }
+    
+}
@@ -6,6 +6,7 @@ public class FundTransferRequest {
     private Integer fromAccountNo;
     private Integer toAccountNo;
     private BigDecimal amount;
+    private String idempotencyKey;
     
     public Integer getFromAccountNo() {
         return fromAccountNo;
@@ -25,5 +26,15 @@ public class FundTransferRequest {
     public void setAmount(BigDecimal amount) {
         this.amount = amount;
     }
+    /**
+     * @return - a key chosen by the client to identify the transfer, so that resending it with the same key 
+     *              cannot apply it twice, or null when the transfer is not to be deduplicated
+     */
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
     
 }
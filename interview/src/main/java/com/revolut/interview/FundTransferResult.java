@@ -0,0 +1,35 @@
+package com.revolut.interview;
+
+/**
+ * The outcome of a single transfer within a batch.
+ */
+public class FundTransferResult {
+    private boolean success;
+    private String message;
+    
+    public static FundTransferResult success() {
+        FundTransferResult result = new FundTransferResult();
+        result.setSuccess(true);
+        return result;
+    }
+    
+    public static FundTransferResult failure(String message) {
+        FundTransferResult result = new FundTransferResult();
+        result.setMessage(message);
+        return result;
+    }
+    
+    public boolean isSuccess() {
+        return success;
+    }
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+    public String getMessage() {
+        return message;
+    }
+    public void setMessage(String message) {
+        this.message = message;
+    }
+    
+}
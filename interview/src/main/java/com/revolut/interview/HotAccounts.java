@@ -0,0 +1,169 @@
+package com.revolut.interview;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Splits the balance of accounts which are credited so often that their commits keep aborting each other.
+ * A hot account takes its credits on one of a number of sub-ledgers picked at random, each an internal account
+ * with its own version and lock stripe, so concurrent credits no longer all conflict on the one version.
+ * A debit of the hot account is checked against its own funds only, and when they do not cover it the balances of 
+ * the sub-ledgers are first swept back into the account, in one commit holding the locks of all of them.
+ * So the sub-ledgers are only read together, under their locks, when the account is short of funds or is read.
+ * <p>
+ * Accounts are split automatically once enough of their commits have been aborted, according to the {@link ConflictMetrics}.
+ * Sub-ledgers are journaled like any other account along with the account they belong to, so a split survives a restart.
+ * They are never seen by clients: their numbers are not valid accounts,
+ * and the hot account is read with the sub-ledgers folded back into it by {@link #merge(Account, List)}.
+ */
+public class HotAccounts {
+
+    public static final long DEFAULT_MIN_ABORTS = 1000;
+    public static final double DEFAULT_ABORT_RATIO = 0.2;
+
+    private final int subLedgerCount;
+    private final long minAborts;
+    private final double abortRatio;
+
+    private final Map<Integer, int[]> subLedgers = new ConcurrentHashMap<>();
+    private final Set<Integer> subLedgerNumbers = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> splitting = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param subLedgerCount - the number of sub-ledgers a hot account is split into, or zero to never split accounts
+     * @param minAborts - the fewest aborted commits of an account before it can be split
+     * @param abortRatio - the share of the attempts to commit an account which have to be aborted for it to be split
+     */
+    public HotAccounts(int subLedgerCount, long minAborts, double abortRatio) {
+        Validate.isTrue(subLedgerCount >= 0, "The number of sub-ledgers cannot be negative!");
+        Validate.isTrue(abortRatio >= 0 && abortRatio <= 1, "The abort ratio must be between zero and one!");
+        this.subLedgerCount = subLedgerCount;
+        this.minAborts = minAborts;
+        this.abortRatio = abortRatio;
+    }
+
+    /**
+     * Accounts split before a restart stay split, but no more are.
+     */
+    public static HotAccounts disabled() {
+        return new HotAccounts(0, DEFAULT_MIN_ABORTS, DEFAULT_ABORT_RATIO);
+    }
+
+    /**
+     * Reads the sub-ledgers from the <code>hotAccounts.subLedgers</code> system property, zero by default so
+     * no account is split, and when to split from <code>hotAccounts.minAborts</code> and <code>hotAccounts.abortRatio</code>.
+     */
+    public static HotAccounts fromSystemProperties() {
+        String abortRatio = System.getProperty("hotAccounts.abortRatio");
+        return new HotAccounts(
+                Integer.getInteger("hotAccounts.subLedgers", 0),
+                Long.getLong("hotAccounts.minAborts", DEFAULT_MIN_ABORTS),
+                abortRatio == null ? DEFAULT_ABORT_RATIO : Double.parseDouble(abortRatio));
+    }
+
+    /**
+     * Registers the sub-ledgers the repository recovered, with the hot accounts they belong to.
+     */
+    public void recover(List<Account> recoveredSubLedgers) {
+        Map<Integer, List<Integer>> byAccount = new TreeMap<>();
+        recoveredSubLedgers.stream()
+                .sorted(Comparator.comparing(Account::getNumber))
+                .forEach(subLedger -> byAccount.computeIfAbsent(subLedger.getSubLedgerOf(), accountNo -> new ArrayList<>())
+                        .add(subLedger.getNumber()));
+        byAccount.forEach((accountNo, numbers) -> {
+            subLedgerNumbers.addAll(numbers);
+            subLedgers.put(accountNo, numbers.stream().mapToInt(Integer::intValue).toArray());
+        });
+    }
+
+    /**
+     * @return - the numbers of the sub-ledgers of the account, or null when it is not hot
+     */
+    public int[] subLedgersOf(Integer accountNo) {
+        return subLedgers.isEmpty() ? null : subLedgers.get(accountNo);
+    }
+
+    public boolean isSubLedger(Integer accountNo) {
+        return !subLedgerNumbers.isEmpty() && subLedgerNumbers.contains(accountNo);
+    }
+
+    /**
+     * @return - a sub-ledger picked at random to take a credit to the account, or the account itself when it is not hot
+     */
+    public Integer creditAccountOf(Integer accountNo) {
+        int[] numbers = subLedgersOf(accountNo);
+        return numbers == null ? accountNo : numbers[ThreadLocalRandom.current().nextInt(numbers.length)];
+    }
+
+    /**
+     * @return - true when the account has not been split, but enough of its commits have been aborted that it should be
+     */
+    public boolean isContended(Integer accountNo, ConflictMetrics metrics) {
+        if (subLedgerCount == 0 || subLedgers.containsKey(accountNo) || isSubLedger(accountNo)) {
+            return false;
+        }
+        long aborts = metrics.getAborts(accountNo);
+        return aborts >= minAborts && aborts >= abortRatio * metrics.getAttempts(accountNo);
+    }
+
+    /**
+     * Splits the account into sub-ledgers, unless another thread already has or is doing so.
+     * The sub-ledgers are created in the repository before they are published, so no lock is held while journaling them,
+     * and they are known to be sub-ledgers before any credit can be made to them.
+     * @param createSubLedger - creates an empty sub-ledger of the account in the repository, returning its number
+     */
+    public void split(Integer accountNo, Function<Account, Integer> createSubLedger) {
+        if (subLedgers.containsKey(accountNo) || !splitting.add(accountNo)) {
+            return;
+        }
+        try {
+            int[] numbers = new int[subLedgerCount];
+            for (int i = 0; i < subLedgerCount; i++) {
+                numbers[i] = createSubLedger.apply(new Account.Builder().subLedgerOf(accountNo).build());
+                subLedgerNumbers.add(numbers[i]);
+            }
+            subLedgers.putIfAbsent(accountNo, numbers);
+        } finally {
+            splitting.remove(accountNo);
+        }
+    }
+
+    /**
+     * Folds the sub-ledgers into a copy of the hot account, as if every credit had been made to the account itself.
+     * Only the balance and the version are worked out here, the version counting every commit of any of them.
+     * The transactions are a {@link MergedTransactionHistory}, which merges them in the order of their ids 
+     * only as they are read.
+     */
+    public Account merge(Account account, List<Account> accountSubLedgers) {
+        List<Account> ledgers = new ArrayList<>(accountSubLedgers.size() + 1);
+        ledgers.add(account);
+        long balance = account.currentBalanceInMinorUnits();
+        int version = account.getVersion();
+        for (Account subLedger : accountSubLedgers) {
+            ledgers.add(subLedger);
+            balance = Math.addExact(balance, subLedger.currentBalanceInMinorUnits());
+            version += subLedger.getVersion() - 1;
+        }
+
+        Account view = new Account.Builder()
+                .number(account.getNumber())
+                .customerName(account.getCustomerName())
+                .overdraftLimitInMinorUnits(account.overdraftLimitInMinorUnits())
+                .currentBalanceInMinorUnits(balance)
+                .lastTransactionId(account.getLastTransactionId())
+                .transactionHistory(new MergedTransactionHistory(ledgers))
+                .build();
+        view.setVersion(version);
+        view.markTransactionsCommitted();
+        return view;
+    }
+}
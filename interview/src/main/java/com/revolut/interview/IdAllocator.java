@@ -0,0 +1,156 @@
+package com.revolut.interview;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Hands out unique ids from one, with blocks of ids taken at a time from a shared high-water mark
+ * so that threads only contend on the shared counter once per block rather than for every id.
+ * The blocks are held in a fixed number of stripes which threads are spread over by their id, rather than
+ * one per thread, as a virtual thread per request would otherwise take a new block for every request
+ * and leave the rest of it unused. Each stripe is only locked for as long as it takes to hand out an id.
+ * Ids are unique but only increase within a stripe, so {@link #next(int)} is used wherever ids must keep increasing,
+ * such as the transactions of an account. No id handed out is above the high-water mark,
+ * so it is what has to be persisted for ids to stay unique after a restart.
+ * With a block size of one every id comes straight from the high-water mark, so ids are handed out in sequence.
+ * An allocator can be limited to a range of ids, once they are used up it refuses to hand out any more.
+ */
+public class IdAllocator {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final int blockSize;
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final Block[] blocks;
+    // Blocks taken before the high-water mark was last reset or raised are discarded
+    private volatile int generation;
+    private int lastId = Integer.MAX_VALUE;
+
+    public IdAllocator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    public IdAllocator(int blockSize) {
+        this(blockSize, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes - the number of blocks threads are spread over, a power of two
+     */
+    public IdAllocator(int blockSize, int stripes) {
+        Validate.isTrue(blockSize > 0, "Block size must be at least one!");
+        Validate.isTrue(stripes > 0 && Integer.bitCount(stripes) == 1, "The number of stripes must be a power of two!");
+        this.blockSize = blockSize;
+        this.blocks = new Block[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.blocks[i] = new Block();
+        }
+    }
+
+    /**
+     * Reads the block size from the <code>ids.blockSize</code> system property.
+     */
+    public static IdAllocator fromSystemProperties() {
+        return new IdAllocator(Integer.getInteger("ids.blockSize", DEFAULT_BLOCK_SIZE));
+    }
+
+    /**
+     * @throws - IllegalStateException when every id up to the limit has been handed out
+     */
+    public int next() {
+        if (blockSize == 1) {
+            return validate(highWaterMark.incrementAndGet());
+        }
+        Block block = blockOfThread();
+        synchronized (block) {
+            if (block.next > block.last || block.generation != generation) {
+                take(block);
+            }
+            return validate(block.next++);
+        }
+    }
+
+    /**
+     * @return - an id greater than the given id, taking a new block when the rest of this thread's block is not
+     */
+    public int next(int after) {
+        int id = next();
+        if (id <= after) {
+            // Every id in a new block is above every id handed out before it
+            Block block = blockOfThread();
+            synchronized (block) {
+                take(block);
+                id = validate(block.next++);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * @return - the highest id that has been, or may yet be, handed out from the blocks taken so far
+     */
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Ensures every id handed out from now on is greater than the given id, such as the highest id recovered.
+     */
+    public void raiseTo(int id) {
+        highWaterMark.accumulateAndGet(id, Math::max);
+        generation++;
+    }
+
+    /**
+     * Limits the ids to those up to and including the given id, for when the ids above it belong to something else.
+     * Only to be called before any id is handed out.
+     */
+    public void limitTo(int lastId) {
+        Validate.isTrue(lastId > 0, "The last id must be positive!");
+        this.lastId = lastId;
+    }
+
+    public int getLastId() {
+        return lastId;
+    }
+
+    public void reset() {
+        highWaterMark.set(0);
+        generation++;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getStripes() {
+        return blocks.length;
+    }
+
+    private int validate(int id) {
+        // An id of zero or below has overflowed past the largest int
+        if (id <= 0 || id > lastId) {
+            throw new IllegalStateException(String.format("Every id up to %d has been used!", lastId));
+        }
+        return id;
+    }
+
+    private Block blockOfThread() {
+        return blocks[(int) Thread.currentThread().threadId() & (blocks.length - 1)];
+    }
+
+    private void take(Block block) {
+        block.generation = generation;
+        int last = highWaterMark.addAndGet(blockSize);
+        block.next = last - blockSize + 1;
+        block.last = last;
+    }
+
+    private static class Block {
+        private int next = 1;
+        private int last;
+        private int generation = -1;
+    }
+}
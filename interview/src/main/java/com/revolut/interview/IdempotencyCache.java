@@ -0,0 +1,451 @@
+package com.revolut.interview;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Remembers the outcome of recent transfers by their idempotency key, so that a transfer retried with the same key
+ * is given the outcome of the first rather than being applied again. A retry of a transfer still in progress
+ * waits on the same outcome. Only outcomes a retry would repeat are kept - success, the transfer being invalid or
+ * there being insufficient funds, or the transfer having been applied but not made durable - any other failure, such
+ * as a conflict, the service being busy or the journal failing before the commit, forgets the key so it can be retried.
+ * A key is kept along with the transfer it was first sent with, and a transfer sent again with the key must be from
+ * and to the same accounts for the same amount, so that a client reusing a key for another transfer finds out.
+ * <p>
+ * Keys are kept for a time to live and up to a maximum number, the oldest being evicted first when full.
+ * A key whose transfer is still in progress is never evicted, as a duplicate would then run the transfer again,
+ * so when every key of a stripe is in progress new keys are refused until one completes.
+ * The keys are split across lock striped stripes by their hash, each of which is a preallocated ring of entries
+ * in the order they were added, which is also the order they expire in, indexed by an open addressing table.
+ * Adding and finding a key allocates nothing beyond the outcome itself.
+ */
+public class IdempotencyCache {
+
+    public static final int DEFAULT_MAX_KEYS = 1 << 16;
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+    public static final int DEFAULT_STRIPES = 64;
+    /** Keys are journaled with a short length, which the UTF-8 of this many characters always fits. */
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final CompletableFuture<Void> SUCCEEDED = CompletableFuture.completedFuture(null);
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    private final int stripeMask;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    public IdempotencyCache() {
+        this(DEFAULT_MAX_KEYS, DEFAULT_TTL_MILLIS, DEFAULT_STRIPES, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxKeys - the most keys kept, split evenly across the stripes
+     * @param stripes - a power of two, no more than the maximum keys
+     * @param clock - the time in milliseconds
+     */
+    public IdempotencyCache(int maxKeys, long ttlMillis, int stripes, LongSupplier clock) {
+        Validate.isTrue(stripes > 0 && Integer.bitCount(stripes) == 1, "Number of stripes must be a power of two!");
+        Validate.isTrue(maxKeys >= stripes, "There must be room for at least one key in every stripe!");
+        Validate.isTrue(ttlMillis > 0, "Time to live must be positive!");
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(maxKeys / stripes);
+        }
+        this.stripeShift = 32 - Integer.numberOfTrailingZeros(stripes);
+        this.stripeMask = stripes - 1;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Reads the cache from the <code>idempotency.maxKeys</code>, <code>idempotency.ttlMillis</code>
+     * and <code>idempotency.stripes</code> system properties.
+     */
+    public static IdempotencyCache fromSystemProperties() {
+        return new IdempotencyCache(
+                Integer.getInteger("idempotency.maxKeys", DEFAULT_MAX_KEYS),
+                Long.getLong("idempotency.ttlMillis", DEFAULT_TTL_MILLIS),
+                Integer.getInteger("idempotency.stripes", DEFAULT_STRIPES),
+                System::currentTimeMillis);
+    }
+
+    /**
+     * As {@link #deduplicateAsync(FundTransferRequest, Supplier)}, but runs the transfer on the calling thread,
+     * waiting for the outcome of the transfer already run with the key when it is still in progress.
+     */
+    public void deduplicate(FundTransferRequest transferRequest, Runnable transfer) {
+        if (transferRequest.getIdempotencyKey() == null) {
+            transfer.run();
+            return;
+        }
+        try {
+            deduplicateAsync(transferRequest, () -> AccountService.completed(() -> {
+                transfer.run();
+                return null;
+            })).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Runs the transfer unless one with the same key has already been run, when its outcome is returned instead.
+     * @param transferRequest - the transfer, which is always run when it has no idempotency key
+     * @return - the outcome of the transfer, or of the transfer already run with the key, 
+     *              which fails with an IllegalArgumentException when the key is longer than {@link #MAX_KEY_LENGTH},
+     *              or with an {@link IdempotencyKeyReusedException} when the key was run with a different transfer,
+     *              or with a RejectedExecutionException when there is no room for the key
+     */
+    public CompletableFuture<Void> deduplicateAsync(FundTransferRequest transferRequest, Supplier<CompletableFuture<Void>> transfer) {
+        String key = transferRequest.getIdempotencyKey();
+        if (key == null) {
+            return transfer.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return AccountService.failed(new IllegalArgumentException(
+                    String.format("Idempotency key cannot be longer than %d characters!", MAX_KEY_LENGTH)));
+        }
+        CompletableFuture<Void> outcome = new CompletableFuture<>();
+        CompletableFuture<Void> existing;
+        try {
+            existing = putIfAbsent(key, transferRequest, outcome);
+        } catch (IdempotencyKeyReusedException | RejectedExecutionException e) {
+            return AccountService.failed(e);
+        }
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<Void> result;
+        try {
+            result = transfer.get();
+        } catch (RuntimeException e) {
+            result = AccountService.failed(e);
+        }
+        result.whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                outcome.complete(null);
+                return;
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            if (!isFinal(cause)) {
+                remove(key, outcome);
+            }
+            outcome.completeExceptionally(cause);
+        });
+        return outcome;
+    }
+
+    /**
+     * Only validation and business rejections are final, not every IllegalStateException, as those also come from
+     * a failed journal or running out of ids. A transfer applied but not made durable is final too, as applying it
+     * again would apply it twice.
+     */
+    private static boolean isFinal(Throwable failure) {
+        return failure instanceof IllegalArgumentException || failure instanceof InsufficientFundsException
+                || failure instanceof NotDurableException;
+    }
+
+    /**
+     * As {@link #putIfAbsent(String, FundTransferRequest, CompletableFuture)}, for a key not kept with any transfer.
+     */
+    public CompletableFuture<Void> putIfAbsent(String key, CompletableFuture<Void> outcome) {
+        return putIfAbsent(key, null, outcome);
+    }
+
+    /**
+     * @param transferRequest - the transfer sent with the key, or null when it is not known
+     * @return - null when the key was added with the outcome, otherwise the outcome already kept for the key
+     * @throws - IdempotencyKeyReusedException when the key is kept with a different transfer
+     * @throws - RejectedExecutionException when the stripe of the key is full of transfers still in progress
+     */
+    public CompletableFuture<Void> putIfAbsent(String key, FundTransferRequest transferRequest, CompletableFuture<Void> outcome) {
+        int hash = hash(key);
+        return stripeOf(hash).putIfAbsent(key, hash, transferRequest, outcome, clock.getAsLong(), ttlMillis);
+    }
+
+    /**
+     * Keeps the key as having succeeded, not kept with any transfer.
+     */
+    public void putSucceeded(String key) {
+        putIfAbsent(key, SUCCEEDED);
+    }
+
+    /**
+     * Keeps the key of the transfer as having succeeded, as when rebuilding the cache from transfers already committed.
+     * The account the transfer was to may be left out, when any transfer sent again with the key is taken to match it.
+     */
+    public void putSucceeded(FundTransferRequest transferRequest) {
+        putIfAbsent(transferRequest.getIdempotencyKey(), transferRequest, SUCCEEDED);
+    }
+
+    /**
+     * @return - the outcome kept for the key, or null when the key is not known or has expired
+     */
+    public CompletableFuture<Void> get(String key) {
+        int hash = hash(key);
+        return stripeOf(hash).get(key, hash, clock.getAsLong());
+    }
+
+    /**
+     * Forgets the key, but only while it is still kept with the given outcome.
+     * @return - true when the key was removed
+     */
+    public boolean remove(String key, CompletableFuture<Void> outcome) {
+        int hash = hash(key);
+        return stripeOf(hash).remove(key, hash, outcome);
+    }
+
+    /**
+     * @return - the number of keys kept, some of which may have expired
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private static int hash(String key) {
+        return key.hashCode() * 0x9E3779B9;
+    }
+
+    /**
+     * The top bits of the hash pick the stripe, leaving the bottom bits to pick the slot in its table.
+     */
+    private Stripe stripeOf(int hash) {
+        // Masked as well as shifted since a shift of 32 with a single stripe is no shift at all
+        return stripes[(hash >>> stripeShift) & stripeMask];
+    }
+
+    /**
+     * A ring of entries from the oldest at the head, entries removed out of order are left as gaps until they reach it.
+     * The table holds the ring index plus one of each entry, with zero for an empty slot.
+     */
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final String[] keys;
+        private final int[] hashes;
+        private final long[] expiresAt;
+        private final CompletableFuture<?>[] outcomes;
+        private final FundTransferRequest[] transferRequests;
+        private final int[] table;
+        private final int mask;
+        private int head;
+        private int used;
+        private int size;
+
+        Stripe(int capacity) {
+            this.keys = new String[capacity];
+            this.hashes = new int[capacity];
+            this.expiresAt = new long[capacity];
+            this.outcomes = new CompletableFuture<?>[capacity];
+            this.transferRequests = new FundTransferRequest[capacity];
+            this.table = new int[Integer.highestOneBit(capacity) << 2];
+            this.mask = table.length - 1;
+        }
+
+        CompletableFuture<Void> putIfAbsent(String key, int hash, FundTransferRequest transferRequest, 
+                CompletableFuture<Void> outcome, long now, long ttlMillis) {
+            lock.lock();
+            try {
+                evictExpired(now);
+                int slot = find(key, hash);
+                if (table[slot] != 0) {
+                    if (!isSameTransfer(transferRequests[table[slot] - 1], transferRequest)) {
+                        throw new IdempotencyKeyReusedException(key);
+                    }
+                    return outcomeOf(table[slot] - 1);
+                }
+                if (used == keys.length) {
+                    evictOldest();
+                    slot = find(key, hash);
+                }
+                int entry = (head + used) % keys.length;
+                keys[entry] = key;
+                hashes[entry] = hash;
+                expiresAt[entry] = now + ttlMillis;
+                outcomes[entry] = outcome;
+                transferRequests[entry] = transferRequest;
+                table[slot] = entry + 1;
+                used++;
+                size++;
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        CompletableFuture<Void> get(String key, int hash, long now) {
+            lock.lock();
+            try {
+                evictExpired(now);
+                int slot = find(key, hash);
+                return table[slot] == 0 ? null : outcomeOf(table[slot] - 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean remove(String key, int hash, CompletableFuture<Void> outcome) {
+            lock.lock();
+            try {
+                int slot = find(key, hash);
+                if (table[slot] == 0 || outcomes[table[slot] - 1] != outcome) {
+                    return false;
+                }
+                clear(table[slot] - 1);
+                delete(slot);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int slotOf(int hash) {
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        /**
+         * Transfers match when either is not known, and the account to is only compared when it was kept.
+         */
+        private static boolean isSameTransfer(FundTransferRequest kept, FundTransferRequest transferRequest) {
+            if (kept == null || transferRequest == null) {
+                return true;
+            }
+            return Objects.equals(kept.getFromAccountNo(), transferRequest.getFromAccountNo())
+                    && (kept.getToAccountNo() == null || kept.getToAccountNo().equals(transferRequest.getToAccountNo()))
+                    && (kept.getAmount() == null ? transferRequest.getAmount() == null 
+                            : transferRequest.getAmount() != null && kept.getAmount().compareTo(transferRequest.getAmount()) == 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private CompletableFuture<Void> outcomeOf(int entry) {
+            return (CompletableFuture<Void>) outcomes[entry];
+        }
+
+        /**
+         * @return - the slot holding the key, or the empty slot where it would be added
+         */
+        private int find(String key, int hash) {
+            int slot = slotOf(hash);
+            while (table[slot] != 0) {
+                int entry = table[slot] - 1;
+                if (hashes[entry] == hash && keys[entry].equals(key)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Entries expire in the order they were added, so only the head of the ring has to be checked.
+         * An entry still in progress at the head holds back the expiry of those behind it until it completes.
+         */
+        private void evictExpired(long now) {
+            while (used > 0 && (keys[head] == null || (expiresAt[head] <= now && outcomes[head].isDone()))) {
+                evictHead();
+            }
+        }
+
+        /**
+         * Makes room for an entry, passing over any gaps at the head before evicting the oldest completed key.
+         * When that is not at the head it is swapped with the head first, so the entry in progress is kept
+         * for at least its time to live, only later than its position suggests.
+         * @throws - RejectedExecutionException when every entry is still in progress
+         */
+        private void evictOldest() {
+            while (used > 0 && keys[head] == null) {
+                evictHead();
+            }
+            if (used < keys.length) {
+                return;
+            }
+            for (int i = 0; i < used; i++) {
+                int entry = (head + i) % keys.length;
+                if (keys[entry] != null && outcomes[entry].isDone()) {
+                    if (entry != head) {
+                        swap(entry, head);
+                    }
+                    evictHead();
+                    return;
+                }
+            }
+            throw new RejectedExecutionException("Too many transfers with an idempotency key are in progress!");
+        }
+
+        private void swap(int first, int second) {
+            int firstSlot = find(keys[first], hashes[first]);
+            int secondSlot = find(keys[second], hashes[second]);
+            table[firstSlot] = second + 1;
+            table[secondSlot] = first + 1;
+            String key = keys[first];
+            keys[first] = keys[second];
+            keys[second] = key;
+            int hash = hashes[first];
+            hashes[first] = hashes[second];
+            hashes[second] = hash;
+            long expiry = expiresAt[first];
+            expiresAt[first] = expiresAt[second];
+            expiresAt[second] = expiry;
+            CompletableFuture<?> outcome = outcomes[first];
+            outcomes[first] = outcomes[second];
+            outcomes[second] = outcome;
+            FundTransferRequest transferRequest = transferRequests[first];
+            transferRequests[first] = transferRequests[second];
+            transferRequests[second] = transferRequest;
+        }
+
+        private void evictHead() {
+            if (keys[head] != null) {
+                delete(find(keys[head], hashes[head]));
+                clear(head);
+            }
+            head = (head + 1) % keys.length;
+            used--;
+        }
+
+        /**
+         * Leaves a gap in the ring, which is passed over once it reaches the head.
+         */
+        private void clear(int entry) {
+            keys[entry] = null;
+            outcomes[entry] = null;
+            transferRequests[entry] = null;
+            size--;
+        }
+
+        /**
+         * Empties the slot, shifting back any later entries in its run which could not be found past the gap.
+         */
+        private void delete(int slot) {
+            int hole = slot;
+            for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+                int home = slotOf(hashes[table[next] - 1]);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    table[hole] = table[next];
+                    hole = next;
+                }
+            }
+            table[hole] = 0;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.revolut.interview;
+
+/**
+ * Thrown when a transfer is sent with an idempotency key already kept for a different transfer, 
+ * which would otherwise be given the outcome of that transfer without ever being applied.
+ */
+public class IdempotencyKeyReusedException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public IdempotencyKeyReusedException(String idempotencyKey) {
+        super(String.format("Idempotency key %s has already been used for a different transfer!", idempotencyKey));
+    }
+}
@@ -0,0 +1,14 @@
+package com.revolut.interview;
+
+/**
+ * Thrown when the account transferring the money does not have enough funds, which unlike other 
+ * illegal states is a final outcome of the transfer rather than a failure that may pass.
+ */
+public class InsufficientFundsException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InsufficientFundsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,501 @@
+package com.revolut.interview;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * An append-only log of binary records split across segment files in a directory.
+ * Each record is written through a {@link FileChannel} as its length and CRC32 followed by the payload,
+ * and a new segment is started once the current one reaches the segment size.
+ * <p>
+ * Records are appended in order under a short lock and only then made durable with {@link #awaitDurable(long)},
+ * so that callers can append inside their own critical section and wait for the disk outside of it.
+ * With {@link FsyncPolicy#EVERY_COMMIT} concurrent callers share a single <code>force()</code>: the first to arrive forces
+ * everything appended so far, and the callers queued behind it find their records already durable.
+ * <p>
+ * A record which fails part way through being written is cut off again, so the records after it are not hidden
+ * behind a torn one. Should that fail too, or a segment fail to roll, the journal refuses any further appends.
+ */
+public class Journal implements AutoCloseable {
+
+    public enum FsyncPolicy {
+        /** Every record is forced to disk before {@link Journal#awaitDurable(long)} returns. */
+        EVERY_COMMIT,
+        /** Records are forced to disk by a background thread at a fixed interval. */
+        INTERVAL,
+        /** Records are never explicitly forced, the operating system writes them back when it chooses. */
+        OS
+    }
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(Journal.class.getName());
+    private static final int MAGIC = 0x4A524E4C;
+    private static final int SEGMENT_HEADER_BYTES = 4;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private Path directory;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.EVERY_COMMIT;
+    private long fsyncIntervalMillis = DEFAULT_FSYNC_INTERVAL_MILLIS;
+    private long segmentBytes = DEFAULT_SEGMENT_BYTES;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segmentIndex;
+    private long segmentPosition;
+    private long appended;
+    private volatile long forced;
+    private IOException failure;
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder forces = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    /**
+     * Creates a journal in the directory with the <code>journal.fsync</code> policy, 
+     * <code>journal.fsyncIntervalMillis</code> and <code>journal.segmentBytes</code> system properties.
+     */
+    public static Journal fromSystemProperties(Path directory) {
+        return new Builder()
+                .directory(directory)
+                .fsyncPolicy(FsyncPolicy.valueOf(System.getProperty("journal.fsync", FsyncPolicy.EVERY_COMMIT.name())))
+                .fsyncIntervalMillis(Long.getLong("journal.fsyncIntervalMillis", DEFAULT_FSYNC_INTERVAL_MILLIS))
+                .segmentBytes(Long.getLong("journal.segmentBytes", DEFAULT_SEGMENT_BYTES))
+                .build();
+    }
+
+    /**
+     * Replays every record in the journal in the order it was appended and then opens the journal for appending.
+     * A record torn by a crash at the end of the last segment is discarded, as it was never made durable.
+     * Only a record cut short by the end of the journal is torn, a whole record which does not match its CRC 
+     * is corrupt wherever it is, as the records after it cannot be trusted to follow it.
+     * @throws - IllegalStateException when a record before the end of the journal is cut short, or any record is corrupt
+     */
+    public void open(Consumer<ByteBuffer> replay) {
+        open(1, replay);
+    }
+
+    /**
+     * Replays only the records from the segment onwards, for when everything before it is already known.
+     * @throws - IllegalStateException when a record before the end of the journal is corrupt,
+     *              or segments from the one given have been deleted
+     */
+    public void open(long fromSegment, Consumer<ByteBuffer> replay) {
+        writeLock.lock();
+        try {
+            Validate.validState(channel == null, "Journal is already open!");
+            Files.createDirectories(directory);
+            List<Path> segments = segments().stream().filter(segment -> indexOf(segment) >= fromSegment).collect(Collectors.toList());
+            Validate.validState(segments.isEmpty() || indexOf(segments.get(0)) == fromSegment, 
+                    "Journal segments from %d have been deleted!", fromSegment);
+            for (int i = 0; i < segments.size(); i++) {
+                replaySegment(segments.get(i), i == segments.size() - 1, replay);
+            }
+            if (segments.isEmpty()) {
+                startSegment(fromSegment);
+            } else {
+                Path last = segments.get(segments.size() - 1);
+                segmentIndex = indexOf(last);
+                channel = FileChannel.open(last, StandardOpenOption.WRITE);
+                segmentPosition = channel.size();
+                channel.position(segmentPosition);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::scheduledFlush, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Appends the record, which is not necessarily durable until {@link #awaitDurable(long)} has returned.
+     * @return - the position of the end of the record, to wait on with {@link #awaitDurable(long)}
+     * @throws - IllegalStateException when an earlier failure left the journal unable to append
+     */
+    public long append(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        header.putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+        long recordBytes = RECORD_HEADER_BYTES + payload.remaining();
+
+        writeLock.lock();
+        try {
+            validateWritable();
+            if (segmentPosition > SEGMENT_HEADER_BYTES && segmentPosition + recordBytes > segmentBytes) {
+                rollSegment();
+            }
+            ByteBuffer[] buffers = {header, payload};
+            try {
+                while (header.hasRemaining() || payload.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            } catch (IOException e) {
+                discardPartialRecord(e);
+                throw e;
+            }
+            segmentPosition += recordBytes;
+            appended += recordBytes;
+            appends.increment();
+            return appended;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new segment, unless nothing has been appended to the current one yet.
+     * @return - the index of the segment that the next record will be appended to
+     */
+    public long roll() {
+        writeLock.lock();
+        try {
+            validateWritable();
+            if (segmentPosition > SEGMENT_HEADER_BYTES) {
+                rollSegment();
+            }
+            return segmentIndex;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments before the segment, once everything in them is held elsewhere.
+     */
+    public void deleteSegmentsBefore(long index) {
+        try {
+            for (Path segment : segments()) {
+                if (indexOf(segment) < index) {
+                    Files.delete(segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits until the record ending at the position is durable according to the {@link FsyncPolicy}.
+     */
+    public void awaitDurable(long position) {
+        if (fsyncPolicy == FsyncPolicy.EVERY_COMMIT) {
+            force(position);
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk.
+     */
+    public void flush() {
+        long position;
+        writeLock.lock();
+        try {
+            position = appended;
+        } finally {
+            writeLock.unlock();
+        }
+        force(position);
+    }
+
+    /**
+     * A failed flush is only counted, so that the next interval tries again.
+     */
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            LOGGER.log(Level.WARNING, "Journal flush failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        writeLock.lock();
+        try {
+            if (channel != null) {
+                if (fsyncPolicy != FsyncPolicy.OS && failure == null) {
+                    channel.force(false);
+                }
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return - the number of records appended since the journal was opened
+     */
+    public long getAppends() {
+        return appends.sum();
+    }
+
+    /**
+     * @return - the number of times the journal has been forced to disk, which is less than the number of appends
+     *              whenever commits have been grouped
+     */
+    public long getForces() {
+        return forces.sum();
+    }
+
+    /**
+     * @return - the number of times the background flush has failed with {@link FsyncPolicy#INTERVAL}
+     */
+    public long getFlushFailures() {
+        return flushFailures.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Only one thread forces at a time. Any threads which queue up behind it re-check the forced position
+     * once they get the lock, so a single force covers every record appended before it started.
+     */
+    private void force(long position) {
+        if (forced >= position) {
+            return;
+        }
+        forceLock.lock();
+        try {
+            if (forced >= position) {
+                return;
+            }
+            FileChannel target;
+            long upTo;
+            writeLock.lock();
+            try {
+                target = channel;
+                upTo = appended;
+            } finally {
+                writeLock.unlock();
+            }
+            try {
+                if (target != null) {
+                    target.force(false);
+                }
+            } catch (ClosedChannelException e) {
+                // The segment was rolled or the journal closed, both of which force the segment before closing it
+            }
+            forces.increment();
+            forced = upTo;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    private void validateWritable() {
+        Validate.validState(channel != null, "Journal is not open!");
+        Validate.validState(failure == null, "Journal can no longer be appended to after failing with %s!", failure);
+    }
+
+    /**
+     * Cuts the segment back to the end of the last complete record, or fails the journal when that is not possible.
+     */
+    private void discardPartialRecord(IOException cause) {
+        try {
+            channel.truncate(segmentPosition);
+            channel.position(segmentPosition);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+        }
+    }
+
+    /**
+     * A segment which fails to roll leaves no complete segment to append to, so the journal is failed.
+     */
+    private void rollSegment() throws IOException {
+        try {
+            if (fsyncPolicy != FsyncPolicy.OS) {
+                channel.force(false);
+            }
+            channel.close();
+            startSegment(segmentIndex + 1);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private void startSegment(long index) throws IOException {
+        segmentIndex = index;
+        channel = FileChannel.open(directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        header.putInt(MAGIC).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        segmentPosition = SEGMENT_HEADER_BYTES;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void replaySegment(Path segment, boolean last, Consumer<ByteBuffer> replay) throws IOException {
+        long size = Files.size(segment);
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 64 * 1024))) {
+            if (size >= SEGMENT_HEADER_BYTES) {
+                Validate.validState(in.readInt() == MAGIC, "Journal segment %s is not a journal!", segment);
+                position = SEGMENT_HEADER_BYTES;
+            }
+            while (position < size) {
+                byte[] payload = readRecord(in, segment, position, size - position);
+                if (payload == null) {
+                    break;
+                }
+                replay.accept(ByteBuffer.wrap(payload));
+                position += RECORD_HEADER_BYTES + payload.length;
+            }
+        }
+        if (position < size || size < SEGMENT_HEADER_BYTES) {
+            Validate.validState(last, "Journal segment %s is corrupt at position %d!", segment, position);
+            truncate(segment, position);
+        }
+    }
+
+    /**
+     * @return - the payload of the next record, or null when the segment ends part way through the record
+     * @throws - IllegalStateException when the record is whole but its length or CRC is corrupt
+     */
+    private byte[] readRecord(DataInputStream in, Path segment, long position, long remaining) throws IOException {
+        if (remaining < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int length = in.readInt();
+        int crc = in.readInt();
+        Validate.validState(length >= 0, "Journal segment %s has a negative record length at position %d!", segment, position);
+        if (length > remaining - RECORD_HEADER_BYTES) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        try {
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32 actual = new CRC32();
+        actual.update(payload);
+        Validate.validState((int) actual.getValue() == crc, 
+                "Journal segment %s has a record at position %d which does not match its CRC!", segment, position);
+        return payload;
+    }
+
+    private void truncate(Path segment, long position) throws IOException {
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            if (position < SEGMENT_HEADER_BYTES) {
+                // Even the segment header was torn, so rewrite it
+                ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+                header.putInt(MAGIC).flip();
+                file.truncate(0);
+                while (header.hasRemaining()) {
+                    file.write(header, header.position());
+                }
+            } else {
+                file.truncate(position);
+            }
+            file.force(false);
+        }
+    }
+
+    public static class Builder {
+        private Journal instance = new Journal();
+
+        public Builder directory(Path directory) {
+            instance.directory = directory;
+            return this;
+        }
+
+        public Builder fsyncPolicy(FsyncPolicy fsyncPolicy) {
+            instance.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        public Builder fsyncIntervalMillis(long fsyncIntervalMillis) {
+            Validate.isTrue(fsyncIntervalMillis > 0, "The fsync interval must be positive!");
+            instance.fsyncIntervalMillis = fsyncIntervalMillis;
+            return this;
+        }
+
+        public Builder segmentBytes(long segmentBytes) {
+            Validate.isTrue(segmentBytes > SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES, "Journal segments are too small!");
+            instance.segmentBytes = segmentBytes;
+            return this;
+        }
+
+        public Journal build() {
+            Validate.notNull(instance.directory, "The journal directory must be set!");
+            Validate.notNull(instance.fsyncPolicy, "The fsync policy must be set!");
+            return instance;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+/**
+ * Reads and writes the JSON of one of the types on the hot endpoints by hand, streaming it through a
+ * {@link JsonParser} or {@link JsonWriter} rather than binding it reflectively through MOXy.
+ * The JSON is the same as MOXy's, with the members in alphabetical order and null members left out,
+ * and unknown members are ignored when reading.
+ * There is a codec for each type, as Jersey prefers the provider declared for the closest type over MOXy's,
+ * which is declared for any object. Every other type is still left to MOXy.
+ * The media types are declared on each codec, as Jersey does not look for them on a superclass.
+ */
+public abstract class JsonCodec<T> implements MessageBodyReader<T>, MessageBodyWriter<T> {
+
+    private final Class<T> type;
+
+    protected JsonCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * @return - a codec for each of {@link Account}, {@link AccountTransaction}, {@link FundTransferRequest}
+     *              and {@link NewAccountRequest}
+     */
+    public static List<JsonCodec<?>> all() {
+        return Arrays.asList(new AccountCodec(), new AccountTransactionCodec(),
+                new FundTransferRequestCodec(), new NewAccountRequestCodec());
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public abstract T read(JsonParser parser) throws IOException;
+
+    public abstract void write(T value, JsonWriter writer) throws IOException;
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return this.type == type;
+    }
+
+    /**
+     * @throws - BadRequestException when the entity is not valid JSON for the type
+     */
+    @Override
+    public T readFrom(Class<T> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        try {
+            JsonParser parser = new JsonParser(entityStream);
+            T value = read(parser);
+            parser.endDocument();
+            return value;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return this.type == type;
+    }
+
+    @Override
+    public long getSize(T value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(T value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        JsonWriter writer = new JsonWriter(entityStream);
+        write(value, writer);
+        writer.flush();
+    }
+
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public static class AccountCodec extends JsonCodec<Account> {
+
+        private final AccountTransactionCodec transactionCodec = new AccountTransactionCodec();
+
+        public AccountCodec() {
+            super(Account.class);
+        }
+
+        @Override
+        public Account read(JsonParser parser) throws IOException {
+            Account.Builder builder = new Account.Builder();
+            int version = 0;
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.nextName()) {
+                    case "customerName":
+                        builder.customerName(parser.nextString());
+                        break;
+                    case "number":
+                        builder.number(parser.nextInteger());
+                        break;
+                    case "overdraftLimit":
+                        builder.overdraftLimitInMinorUnits(toMinorUnits(parser));
+                        break;
+                    case "transactions":
+                        if (!parser.nextNull()) {
+                            parser.beginArray();
+                            while (parser.hasNext()) {
+                                builder.transaction(transactionCodec.read(parser));
+                            }
+                        }
+                        break;
+                    case "version":
+                        Integer value = parser.nextInteger();
+                        version = value == null ? 0 : value;
+                        break;
+                    default:
+                        parser.skipValue();
+                }
+            }
+            Account account = builder.build();
+            account.setVersion(version);
+            return account;
+        }
+
+        @Override
+        public void write(Account account, JsonWriter writer) throws IOException {
+            writer.beginObject();
+            if (account.getCustomerName() != null) {
+                writer.name("customerName").value(account.getCustomerName());
+            }
+            if (account.getNumber() != null) {
+                writer.name("number").value(account.getNumber());
+            }
+            writer.name("overdraftLimit").money(account.overdraftLimitInMinorUnits());
+            writer.name("transactions").beginArray();
+            for (AccountTransaction transaction : account.getTransactions()) {
+                transactionCodec.write(transaction, writer);
+            }
+            writer.endArray();
+            writer.name("version").value(account.getVersion());
+            writer.endObject();
+        }
+    }
+
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public static class AccountTransactionCodec extends JsonCodec<AccountTransaction> {
+
+        public AccountTransactionCodec() {
+            super(AccountTransaction.class);
+        }
+
+        @Override
+        public AccountTransaction read(JsonParser parser) throws IOException {
+            AccountTransaction.Builder builder = new AccountTransaction.Builder();
+            Integer id = null;
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.nextName()) {
+                    case "amount":
+                        builder.amountInMinorUnits(toMinorUnits(parser));
+                        break;
+                    case "balance":
+                        builder.balanceInMinorUnits(toMinorUnits(parser));
+                        break;
+                    case "id":
+                        id = parser.nextInteger();
+                        break;
+                    case "type":
+                        String type = parser.nextString();
+                        builder.type(type == null ? null : TransactionType.valueOf(type));
+                        break;
+                    default:
+                        parser.skipValue();
+                }
+            }
+            AccountTransaction transaction = builder.build();
+            transaction.setId(id);
+            return transaction;
+        }
+
+        @Override
+        public void write(AccountTransaction transaction, JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("amount").money(transaction.amountInMinorUnits());
+            writer.name("balance").money(transaction.balanceInMinorUnits());
+            if (transaction.getId() != null) {
+                writer.name("id").value(transaction.getId());
+            }
+            if (transaction.getType() != null) {
+                writer.name("type").value(transaction.getType().name());
+            }
+            writer.endObject();
+        }
+    }
+
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public static class FundTransferRequestCodec extends JsonCodec<FundTransferRequest> {
+
+        public FundTransferRequestCodec() {
+            super(FundTransferRequest.class);
+        }
+
+        @Override
+        public FundTransferRequest read(JsonParser parser) throws IOException {
+            FundTransferRequest request = new FundTransferRequest();
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.nextName()) {
+                    case "amount":
+                        request.setAmount(parser.nextDecimal());
+                        break;
+                    case "fromAccountNo":
+                        request.setFromAccountNo(parser.nextInteger());
+                        break;
+                    case "idempotencyKey":
+                        request.setIdempotencyKey(parser.nextString());
+                        break;
+                    case "toAccountNo":
+                        request.setToAccountNo(parser.nextInteger());
+                        break;
+                    default:
+                        parser.skipValue();
+                }
+            }
+            return request;
+        }
+
+        @Override
+        public void write(FundTransferRequest request, JsonWriter writer) throws IOException {
+            writer.beginObject();
+            if (request.getAmount() != null) {
+                writer.name("amount").value(request.getAmount());
+            }
+            if (request.getFromAccountNo() != null) {
+                writer.name("fromAccountNo").value(request.getFromAccountNo());
+            }
+            if (request.getIdempotencyKey() != null) {
+                writer.name("idempotencyKey").value(request.getIdempotencyKey());
+            }
+            if (request.getToAccountNo() != null) {
+                writer.name("toAccountNo").value(request.getToAccountNo());
+            }
+            writer.endObject();
+        }
+    }
+
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public static class NewAccountRequestCodec extends JsonCodec<NewAccountRequest> {
+
+        public NewAccountRequestCodec() {
+            super(NewAccountRequest.class);
+        }
+
+        @Override
+        public NewAccountRequest read(JsonParser parser) throws IOException {
+            NewAccountRequest request = new NewAccountRequest();
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.nextName()) {
+                    case "customerName":
+                        request.setCustomerName(parser.nextString());
+                        break;
+                    case "initialDeposit":
+                        request.setInitialDeposit(parser.nextDecimal());
+                        break;
+                    case "overDraftLimit":
+                        request.setOverDraftLimit(parser.nextDecimal());
+                        break;
+                    default:
+                        parser.skipValue();
+                }
+            }
+            return request;
+        }
+
+        @Override
+        public void write(NewAccountRequest request, JsonWriter writer) throws IOException {
+            writer.beginObject();
+            if (request.getCustomerName() != null) {
+                writer.name("customerName").value(request.getCustomerName());
+            }
+            if (request.getInitialDeposit() != null) {
+                writer.name("initialDeposit").value(request.getInitialDeposit());
+            }
+            if (request.getOverDraftLimit() != null) {
+                writer.name("overDraftLimit").value(request.getOverDraftLimit());
+            }
+            writer.endObject();
+        }
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the amount is not a valid amount of money
+     */
+    private static long toMinorUnits(JsonParser parser) throws IOException {
+        BigDecimal amount = parser.nextDecimal();
+        return amount == null ? 0 : Money.toMinorUnits(amount);
+    }
+}
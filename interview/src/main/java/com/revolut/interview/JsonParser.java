@@ -0,0 +1,342 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Pulls JSON values one at a time from a UTF-8 stream, through its own buffer, without building a tree.
+ * Objects are read by calling {@link #beginObject()} and then {@link #nextName()} while {@link #hasNext()},
+ * and arrays likewise with {@link #beginArray()}. Values which are not needed are passed over with {@link #skipValue()}.
+ * Numbers may also be given as strings, and any value may be null.
+ */
+public class JsonParser {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long offset;
+    private char[] chars = new char[64];
+    private int length;
+    private boolean afterValue;
+
+    public JsonParser(InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the next value is not an object
+     */
+    public void beginObject() throws IOException {
+        expect('{');
+        afterValue = false;
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the next value is not an array
+     */
+    public void beginArray() throws IOException {
+        expect('[');
+        afterValue = false;
+    }
+
+    /**
+     * @return - true when the current object or array has another member,
+     *              false when it has ended, in which case its closing bracket has been read
+     * @throws - IllegalArgumentException when the members are not separated by commas
+     */
+    public boolean hasNext() throws IOException {
+        int c = peek();
+        if (c == '}' || c == ']') {
+            position++;
+            afterValue = true;
+            return false;
+        }
+        if (afterValue) {
+            expect(',');
+            afterValue = false;
+        }
+        return true;
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the next member of the object has no name
+     */
+    public String nextName() throws IOException {
+        if (peek() != '"') {
+            throw error("Expected a name");
+        }
+        position++;
+        readString();
+        expect(':');
+        afterValue = false;
+        return new String(chars, 0, length);
+    }
+
+    public String nextString() throws IOException {
+        if (nextNull()) {
+            return null;
+        }
+        if (peek() != '"') {
+            throw error("Expected a string");
+        }
+        position++;
+        readString();
+        afterValue = true;
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the next value is not a whole number which fits an int
+     */
+    public Integer nextInteger() throws IOException {
+        if (!readNumber()) {
+            return null;
+        }
+        long value = 0;
+        int i = chars[0] == '-' ? 1 : 0;
+        if (i == length) {
+            throw error("Expected a whole number");
+        }
+        for (; i < length; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9' || (value = value * 10 + (c - '0')) > 1L + Integer.MAX_VALUE) {
+                throw error("Expected a whole number");
+            }
+        }
+        value = chars[0] == '-' ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw error("Expected a whole number");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the next value is not a number
+     */
+    public BigDecimal nextDecimal() throws IOException {
+        if (!readNumber()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(chars, 0, length);
+        } catch (NumberFormatException e) {
+            throw error("Expected a number");
+        }
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the next value is not true or false
+     */
+    public boolean nextBoolean() throws IOException {
+        int c = peek();
+        if (c == 't') {
+            literal("true");
+            return true;
+        }
+        if (c == 'f') {
+            literal("false");
+            return false;
+        }
+        throw error("Expected true or false");
+    }
+
+    /**
+     * Reads the next value if it is null.
+     * @return - true when the value was null
+     */
+    public boolean nextNull() throws IOException {
+        if (peek() != 'n') {
+            return false;
+        }
+        literal("null");
+        return true;
+    }
+
+    /**
+     * Reads past the next value, including everything nested in it.
+     */
+    public void skipValue() throws IOException {
+        int c = peek();
+        if (c == '{') {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+        } else if (c == '[') {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+        } else if (c == '"') {
+            nextString();
+        } else if (c == 't' || c == 'f') {
+            nextBoolean();
+        } else if (!nextNull()) {
+            nextDecimal();
+        }
+    }
+
+    /**
+     * @throws - IllegalArgumentException when anything other than whitespace follows the value which has been read
+     */
+    public void endDocument() throws IOException {
+        if (peek() != -1) {
+            throw error("Expected the end of the document");
+        }
+    }
+
+    /**
+     * Reads a number, or a string holding a number, into the characters.
+     * @return - false when the value was null
+     */
+    private boolean readNumber() throws IOException {
+        if (nextNull()) {
+            return false;
+        }
+        int c = peek();
+        if (c == '"') {
+            position++;
+            readString();
+        } else {
+            length = 0;
+            while ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                append((char) c);
+                position++;
+                c = position < limit || fill() ? buffer[position] : -1;
+            }
+        }
+        if (length == 0) {
+            throw error("Expected a number");
+        }
+        afterValue = true;
+        return true;
+    }
+
+    /**
+     * Reads the rest of a string after its opening quote into the characters, decoding escapes and UTF-8.
+     */
+    private void readString() throws IOException {
+        length = 0;
+        while (true) {
+            int b = read();
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                append(unescape(read()));
+            } else if (b < 0x80) {
+                append((char) b);
+            } else if ((b & 0xe0) == 0xc0) {
+                append((char) ((b & 0x1f) << 6 | continuation()));
+            } else if ((b & 0xf0) == 0xe0) {
+                append((char) ((b & 0x0f) << 12 | continuation() << 6 | continuation()));
+            } else if ((b & 0xf8) == 0xf0) {
+                int codePoint = (b & 0x07) << 18 | continuation() << 12 | continuation() << 6 | continuation();
+                append(Character.highSurrogate(codePoint));
+                append(Character.lowSurrogate(codePoint));
+            } else {
+                throw error("Invalid UTF-8");
+            }
+        }
+    }
+
+    private char unescape(int c) throws IOException {
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw error("Invalid unicode escape");
+                    }
+                    value = value << 4 | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Invalid escape");
+        }
+    }
+
+    private int continuation() throws IOException {
+        int b = read();
+        if ((b & 0xc0) != 0x80) {
+            throw error("Invalid UTF-8");
+        }
+        return b & 0x3f;
+    }
+
+    private void literal(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+        afterValue = true;
+    }
+
+    private void append(char c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        chars[length++] = c;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    /**
+     * @return - the next character which is not whitespace without reading it, or -1 at the end of the stream
+     */
+    private int peek() throws IOException {
+        while (position < limit || fill()) {
+            int c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            throw error("Unexpected end of document");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = Math.max(0, input.read(buffer));
+        return limit > 0;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + (offset + position) + " of the JSON!");
+    }
+}
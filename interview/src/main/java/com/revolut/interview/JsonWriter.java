@@ -0,0 +1,225 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+
+/**
+ * Writes JSON as UTF-8 straight into a byte buffer which is flushed to the stream when full,
+ * so no tree or intermediate strings are built. Numbers and {@link Money} minor units are written digit by digit.
+ * Commas are added automatically between the members of an object or array.
+ */
+public class JsonWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream output;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] digits = new byte[20];
+    private int position;
+    private boolean needsComma;
+
+    public JsonWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        separate();
+        write('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        write('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        separate();
+        write('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        write(']');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        write(':');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            ascii("null");
+        } else {
+            string(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        number(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        ascii(value ? "true" : "false");
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(BigDecimal value) throws IOException {
+        separate();
+        ascii(value == null ? "null" : value.toString());
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes the amount with the fewest decimal places needed, exactly as {@link Money#toBigDecimal(long)} would.
+     */
+    public JsonWriter money(long minorUnits) throws IOException {
+        if (minorUnits == Long.MIN_VALUE) {
+            return value(Money.toBigDecimal(minorUnits));
+        }
+        separate();
+        if (minorUnits < 0) {
+            write('-');
+            minorUnits = -minorUnits;
+        }
+        number(minorUnits / 100);
+        int fraction = (int) (minorUnits % 100);
+        if (fraction != 0) {
+            write('.');
+            write('0' + fraction / 10);
+            if (fraction % 10 != 0) {
+                write('0' + fraction % 10);
+            }
+        }
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Ends a line of newline delimited JSON, so the next value starts a document of its own rather than following a comma.
+     */
+    public JsonWriter newLine() throws IOException {
+        write('\n');
+        needsComma = false;
+        return this;
+    }
+
+    /**
+     * Writes anything still buffered to the stream, which is left open.
+     */
+    public void flush() throws IOException {
+        output.write(buffer, 0, position);
+        position = 0;
+        output.flush();
+    }
+
+    private void separate() throws IOException {
+        if (needsComma) {
+            write(',');
+        }
+    }
+
+    private void number(long value) throws IOException {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                ascii(Long.toString(value));
+                return;
+            }
+            write('-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start; i < digits.length; i++) {
+            write(digits[i]);
+        }
+    }
+
+    private void string(String value) throws IOException {
+        write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                write('\\');
+                write(c);
+            } else if (c < 0x20) {
+                escape(c);
+            } else if (c < 0x80) {
+                write(c);
+            } else if (c < 0x800) {
+                write(0xc0 | c >> 6);
+                write(0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                write(0xf0 | codePoint >> 18);
+                write(0x80 | codePoint >> 12 & 0x3f);
+                write(0x80 | codePoint >> 6 & 0x3f);
+                write(0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate cannot be encoded, so it is replaced just as String.getBytes would
+                write('?');
+            } else {
+                write(0xe0 | c >> 12);
+                write(0x80 | c >> 6 & 0x3f);
+                write(0x80 | c & 0x3f);
+            }
+        }
+        write('"');
+    }
+
+    private void escape(char c) throws IOException {
+        write('\\');
+        switch (c) {
+            case '\n':
+                write('n');
+                break;
+            case '\r':
+                write('r');
+                break;
+            case '\t':
+                write('t');
+                break;
+            default:
+                ascii("u00");
+                write(HEX[c >> 4]);
+                write(HEX[c & 0xf]);
+        }
+    }
+
+    private void ascii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            write(value.charAt(i));
+        }
+    }
+
+    private void write(int b) throws IOException {
+        if (position == buffer.length) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = (byte) b;
+    }
+}
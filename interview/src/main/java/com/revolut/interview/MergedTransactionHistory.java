@@ -0,0 +1,235 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read only view of the histories of a hot account and its sub-ledgers as a single history in the order of
+ * the transaction ids, each balance being the combined balance of all of them as of that transaction.
+ * Nothing is copied or sorted up front: each history is already in id order, so the view walks them together
+ * and only makes a transaction when it is read. Reading on from the last transaction read compares the next 
+ * transaction of each ledger, and jumping anywhere else binary searches the ledgers.
+ * <p>
+ * The view keeps its position between reads so it is not thread safe, but every copy of it has its own position.
+ */
+public class MergedTransactionHistory extends TransactionHistory {
+
+    private final List<List<AccountTransaction>> ledgers;
+    private final long[] openingBalances;
+    private final int size;
+
+    private final int[] positions;
+    private final long[] balances;
+    private final AccountTransaction[] heads;
+    private long balance;
+    private int index;
+    private AccountTransaction last;
+
+    /**
+     * @param accounts - the hot account and its sub-ledgers, whose histories must not change while they are viewed
+     */
+    public MergedTransactionHistory(List<Account> accounts) {
+        this(histories(accounts), openingBalances(accounts));
+    }
+
+    private MergedTransactionHistory(List<List<AccountTransaction>> ledgers, long[] openingBalances) {
+        this.ledgers = ledgers;
+        this.openingBalances = openingBalances;
+        this.size = ledgers.stream().mapToInt(List::size).sum();
+        this.positions = new int[ledgers.size()];
+        this.balances = new long[ledgers.size()];
+        this.heads = new AccountTransaction[ledgers.size()];
+        moveTo(positions);
+    }
+
+    @Override
+    public MergedTransactionHistory copy() {
+        return new MergedTransactionHistory(ledgers, openingBalances);
+    }
+
+    @Override
+    public AccountTransaction get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index == this.index - 1 && last != null) {
+            return last;
+        }
+        if (index == size - 1 && index != this.index) {
+            return lastTransaction();
+        }
+        if (index != this.index) {
+            seek(index);
+        }
+        return next();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(AccountTransaction transaction) {
+        throw new UnsupportedOperationException("A merged history cannot be added to!");
+    }
+
+    @Override
+    public int spill(int hotTransactions, ColdTransactionStore coldStore) {
+        return 0;
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("A merged history cannot be cleared!");
+    }
+
+    /**
+     * Also moves the view to the transaction after the id, so that reading on from there does not search again.
+     * @return - the index of the first transaction after the transaction id, or 0 when it is null
+     * @see TransactionPage#indexAfter(List, Integer)
+     */
+    public int indexAfter(Integer afterTransactionId) {
+        if (afterTransactionId == null) {
+            return 0;
+        }
+        moveTo(positionsAfter(afterTransactionId));
+        return index;
+    }
+
+    /**
+     * Ids are unique across the ledgers, so the transaction at the index is the one with the lowest id 
+     * that has as many transactions up to and including it, which is binary searched for.
+     */
+    private void seek(int index) {
+        if (index == 0) {
+            moveTo(new int[ledgers.size()]);
+            return;
+        }
+        int low = 0;
+        int high = 0;
+        for (List<AccountTransaction> ledger : ledgers) {
+            if (!ledger.isEmpty()) {
+                high = Math.max(high, ledger.get(ledger.size() - 1).getId());
+            }
+        }
+        while (high - low > 1) {
+            int middle = low + (high - low) / 2;
+            int count = 0;
+            for (List<AccountTransaction> ledger : ledgers) {
+                count += TransactionPage.indexAfter(ledger, middle);
+            }
+            if (count >= index) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+        moveTo(positionsAfter(high));
+    }
+
+    private int[] positionsAfter(Integer transactionId) {
+        int[] after = new int[ledgers.size()];
+        for (int i = 0; i < after.length; i++) {
+            after[i] = TransactionPage.indexAfter(ledgers.get(i), transactionId);
+        }
+        return after;
+    }
+
+    private void moveTo(int[] newPositions) {
+        balance = 0;
+        index = 0;
+        last = null;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = newPositions[i];
+            balances[i] = positions[i] == 0 ? openingBalances[i] : ledgers.get(i).get(positions[i] - 1).balanceInMinorUnits();
+            heads[i] = headOf(i);
+            balance = Math.addExact(balance, balances[i]);
+            index += positions[i];
+        }
+    }
+
+    /**
+     * Takes the transaction with the lowest id of those next in each ledger.
+     */
+    private AccountTransaction next() {
+        int next = -1;
+        for (int i = 0; i < heads.length; i++) {
+            if (heads[i] != null && (next < 0 || heads[i].getId() < heads[next].getId())) {
+                next = i;
+            }
+        }
+        AccountTransaction transaction = heads[next];
+        balance = Math.addExact(balance - balances[next], transaction.balanceInMinorUnits());
+        balances[next] = transaction.balanceInMinorUnits();
+        positions[next]++;
+        heads[next] = headOf(next);
+        index++;
+        last = withBalance(transaction, balance);
+        return last;
+    }
+
+    /**
+     * The last transaction is read whenever the view is put into an account, so it is found without moving the view.
+     */
+    private AccountTransaction lastTransaction() {
+        AccountTransaction latest = null;
+        long finalBalance = 0;
+        for (int i = 0; i < ledgers.size(); i++) {
+            List<AccountTransaction> ledger = ledgers.get(i);
+            if (ledger.isEmpty()) {
+                finalBalance = Math.addExact(finalBalance, openingBalances[i]);
+                continue;
+            }
+            AccountTransaction transaction = ledger.get(ledger.size() - 1);
+            finalBalance = Math.addExact(finalBalance, transaction.balanceInMinorUnits());
+            if (latest == null || transaction.getId() > latest.getId()) {
+                latest = transaction;
+            }
+        }
+        return withBalance(latest, finalBalance);
+    }
+
+    private AccountTransaction headOf(int ledger) {
+        List<AccountTransaction> transactions = ledgers.get(ledger);
+        return positions[ledger] < transactions.size() ? transactions.get(positions[ledger]) : null;
+    }
+
+    private static AccountTransaction withBalance(AccountTransaction transaction, long balance) {
+        AccountTransaction merged = new AccountTransaction.Builder()
+                .type(transaction.getType())
+                .amountInMinorUnits(transaction.amountInMinorUnits())
+                .balanceInMinorUnits(balance)
+                .idempotencyKey(transaction.getIdempotencyKey())
+                .build();
+        merged.setId(transaction.getId());
+        return merged;
+    }
+
+    private static List<List<AccountTransaction>> histories(List<Account> accounts) {
+        List<List<AccountTransaction>> histories = new ArrayList<>(accounts.size());
+        accounts.forEach(account -> histories.add(account.getTransactions()));
+        return histories;
+    }
+
+    /**
+     * @return - the balance of each account before the first transaction it still holds
+     */
+    private static long[] openingBalances(List<Account> accounts) {
+        long[] openingBalances = new long[accounts.size()];
+        for (int i = 0; i < openingBalances.length; i++) {
+            List<AccountTransaction> transactions = accounts.get(i).getTransactions();
+            if (transactions.isEmpty()) {
+                openingBalances[i] = accounts.get(i).currentBalanceInMinorUnits();
+            } else {
+                AccountTransaction first = transactions.get(0);
+                openingBalances[i] = first.getType() == CREDIT 
+                        ? first.balanceInMinorUnits() - first.amountInMinorUnits() 
+                        : first.balanceInMinorUnits() + first.amountInMinorUnits();
+            }
+        }
+        return openingBalances;
+    }
+}
@@ -0,0 +1,93 @@
+package com.revolut.interview;
+
+import java.math.BigDecimal;
+
+/**
+ * An amount of money held as a whole number of minor units (e.g. pence) of a currency with {@link #SCALE} decimal places.
+ * Balances and amounts are kept as minor units inside {@link Account} and {@link AccountTransaction} so that
+ * arithmetic on the transfer path is plain long arithmetic, which does not allocate.
+ * {@link BigDecimal} is only used at the JSON boundary, converted with {@link #toMinorUnits(BigDecimal)}
+ * and {@link #toBigDecimal(long)}.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money of(BigDecimal amount) {
+        return new Money(toMinorUnits(amount));
+    }
+
+    public static Money ofMinorUnits(long minorUnits) {
+        return new Money(minorUnits);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return toBigDecimal(minorUnits);
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the amount has more decimal places than the currency allows,
+     *              or is too large to be held as minor units
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.setScale(SCALE).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount " + amount + " is not a valid amount of money!", e);
+        }
+    }
+
+    /**
+     * @return - the amount with the fewest decimal places needed, so that 100 minor units becomes 1 rather than 1.00
+     */
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        long unscaled = minorUnits;
+        int scale = SCALE;
+        // Unlike stripTrailingZeros the scale never goes below zero, so 1000 stays 1000 rather than 1E+3
+        while (scale > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            scale--;
+        }
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money && ((Money) other).minorUnits == minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
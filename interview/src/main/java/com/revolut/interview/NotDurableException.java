@@ -0,0 +1,15 @@
+package com.revolut.interview;
+
+/**
+ * Thrown when a commit has already been published but its journal record could not be made durable.
+ * The change is visible and may or may not survive a restart, so the operation must not be retried as if
+ * it had never been applied.
+ */
+public class NotDurableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public NotDurableException(Throwable cause) {
+        super("The commit was applied, but could not be made durable!", cause);
+    }
+}
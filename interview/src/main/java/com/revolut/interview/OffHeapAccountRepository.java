@@ -0,0 +1,290 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * An {@link AccountRepository} for tens of millions of accounts, which holds the current state of each account as a
+ * fixed size record in off-heap pages addressed directly by account number, with customer names in a {@link StringArena}.
+ * Only the page directories are on the heap, so the number of accounts neither grows the heap nor adds to GC work.
+ * <p>
+ * The transaction history is not kept: new transactions are given ids and their balance is recorded when the account
+ * is committed, and accounts are read back with an empty history. A record is several fields written one at a time,
+ * so the lock stripe of an account is held to read it as well as to update it, and no read sees half of a commit.
+ * Each field could be read with acquire and release through a byte buffer view {@link java.lang.invoke.VarHandle},
+ * but reading the record as a whole without the lock would still need a version check and a retry.
+ */
+public class OffHeapAccountRepository implements AccountRepository {
+
+    public static final int DEFAULT_RECORDS_PER_PAGE = 1 << 20;
+
+    static final int RECORD_BYTES = 32;
+    private static final int BALANCE = 0;
+    private static final int OVERDRAFT_LIMIT = 8;
+    private static final int CUSTOMER_NAME = 16;
+    private static final int VERSION = 24;
+    private static final int LAST_TRANSACTION_ID = 28;
+
+    // In sequence, so every account number up to the high-water mark has a record
+    private final IdAllocator accountIds = new IdAllocator(1);
+    private final IdAllocator transactionIds = IdAllocator.fromSystemProperties();
+    private final AccountLocks locks = new AccountLocks();
+    private final LongAdder aborts = new LongAdder();
+    private final StringArena customerNames;
+    private final int recordsPerPage;
+
+    private final ReentrantLock growLock = new ReentrantLock();
+    private volatile ByteBuffer[] pages = new ByteBuffer[0];
+
+    public OffHeapAccountRepository() {
+        this(DEFAULT_RECORDS_PER_PAGE, new StringArena());
+    }
+
+    public OffHeapAccountRepository(int recordsPerPage, StringArena customerNames) {
+        Validate.isTrue(recordsPerPage > 0 && recordsPerPage <= Integer.MAX_VALUE / RECORD_BYTES, 
+                "Records per page must be between 1 and %d!", Integer.MAX_VALUE / RECORD_BYTES);
+        this.recordsPerPage = recordsPerPage;
+        this.customerNames = customerNames;
+    }
+
+    /**
+     * @return - the new account as committed, including the transactions it was created with
+     */
+    @Override
+    public Account create(Account account) {
+        Integer number = accountIds.next();
+        long customerName = customerNames.append(account.getCustomerName());
+        ensurePage(number);
+        Account newAccount = copyOf(account);
+        newAccount.setNumber(number);
+        newAccount.setVersion(1);
+        setTransactionIds(newAccount);
+        locks.lock(number);
+        try {
+            ByteBuffer page = pageOf(number);
+            page.putLong(offsetOf(number) + CUSTOMER_NAME, customerName);
+            write(page, offsetOf(number), newAccount);
+        } finally {
+            locks.unlock(number);
+        }
+        return copyOf(newAccount);
+    }
+
+    /**
+     * @return - the account as committed, including the transactions added since it was read
+     */
+    @Override
+    public Account update(Account account) {
+        locks.lock(account.getNumber());
+        try {
+            validate(account);
+            return commit(account);
+        } finally {
+            locks.unlock(account.getNumber());
+        }
+    }
+
+    @Override
+    public Pair<Account, Account> update(Pair<Account, Account> accounts) {
+        Account firstAccount = accounts.getLeft();
+        Account secondAccount = accounts.getRight();
+        Validate.isTrue(!firstAccount.getNumber().equals(secondAccount.getNumber()), 
+                "Account number %d cannot be updated twice at once!", firstAccount.getNumber());
+
+        locks.lock(firstAccount.getNumber(), secondAccount.getNumber());
+        try {
+            validate(firstAccount);
+            validate(secondAccount);
+            return new ImmutablePair<Account, Account>(commit(firstAccount), commit(secondAccount));
+        } finally {
+            locks.unlock(firstAccount.getNumber(), secondAccount.getNumber());
+        }
+    }
+
+    /**
+     * The credited account is read and committed while its lock is held, so it cannot be out of date.
+     */
+    @Override
+    public Pair<Account, Account> updateAndCredit(Account account, Integer creditAccountNo, long amountInMinorUnits) {
+        Validate.isTrue(amountInMinorUnits > 0, "Credit of %d must be positive!", amountInMinorUnits);
+        Validate.notNull(creditAccountNo, "Account number %d is not valid!", creditAccountNo);
+        Validate.isTrue(!account.getNumber().equals(creditAccountNo), 
+                "Account number %d cannot be updated twice at once!", creditAccountNo);
+
+        locks.lock(account.getNumber(), creditAccountNo);
+        try {
+            validate(account);
+            validateExists(creditAccountNo);
+            Account creditAccount = read(creditAccountNo);
+            creditAccount.addTransactionInMinorUnits(CREDIT, amountInMinorUnits);
+            return new ImmutablePair<Account, Account>(commit(account), commit(creditAccount));
+        } finally {
+            locks.unlock(account.getNumber(), creditAccountNo);
+        }
+    }
+
+    @Override
+    public List<Account> update(List<Account> accounts) {
+        List<Integer> accountNos = accounts.stream().map(Account::getNumber).collect(Collectors.toList());
+        Validate.isTrue(new HashSet<>(accountNos).size() == accountNos.size(), "Accounts can only be updated once at a time!");
+
+        locks.lock(accountNos);
+        try {
+            accounts.forEach(this::validate);
+            List<Account> results = new ArrayList<>(accounts.size());
+            for (Account account : accounts) {
+                results.add(commit(account));
+            }
+            return results;
+        } finally {
+            locks.unlock(accountNos);
+        }
+    }
+
+    /**
+     * @return - the current state of the account, with no transaction history
+     */
+    @Override
+    public Account get(Integer accountNo) {
+        Validate.notNull(accountNo, "Account number %d is not valid!", accountNo);
+        locks.lock(accountNo);
+        try {
+            validateExists(accountNo);
+            return read(accountNo);
+        } finally {
+            locks.unlock(accountNo);
+        }
+    }
+
+    @Override
+    public <T> T withLocks(Collection<Integer> accountNos, Supplier<T> operation) {
+        locks.lock(accountNos);
+        try {
+            return operation.get();
+        } finally {
+            locks.unlock(accountNos);
+        }
+    }
+
+    /**
+     * @return - the number of bytes of off-heap memory allocated to account records and customer names
+     */
+    public long getAllocatedBytes() {
+        return (long) pages.length * recordsPerPage * RECORD_BYTES + customerNames.getAllocatedBytes();
+    }
+
+    /**
+     * @return - the number of updates which were aborted as an account was out of date
+     */
+    public long getAborts() {
+        return aborts.sum();
+    }
+
+    private void validate(Account account) {
+        validateExists(account.getNumber());
+        if (pageOf(account.getNumber()).getInt(offsetOf(account.getNumber()) + VERSION) != account.getVersion()) {
+            aborts.increment();
+            throw new ConcurrentModificationException("Current excecution is aborted as account is out of date!");
+        }
+    }
+
+    /**
+     * An account number is only valid once its record has been written, which is when it has a version.
+     */
+    private void validateExists(Integer accountNo) {
+        boolean exists = accountNo > 0 && accountNo <= accountIds.getHighWaterMark() && (accountNo - 1) / recordsPerPage < pages.length
+                && pageOf(accountNo).getInt(offsetOf(accountNo) + VERSION) != 0;
+        if (!exists) {
+            throw new NullPointerException(String.format("Account number %d is not valid!", accountNo));
+        }
+    }
+
+    private Account commit(Account account) {
+        Account newAccount = copyOf(account);
+        newAccount.setVersion(account.getVersion() + 1);
+        setTransactionIds(newAccount);
+        write(pageOf(newAccount.getNumber()), offsetOf(newAccount.getNumber()), newAccount);
+        return copyOf(newAccount);
+    }
+
+    private void write(ByteBuffer page, int offset, Account account) {
+        page.putLong(offset + BALANCE, account.currentBalanceInMinorUnits());
+        page.putLong(offset + OVERDRAFT_LIMIT, account.overdraftLimitInMinorUnits());
+        page.putInt(offset + LAST_TRANSACTION_ID, account.getLastTransactionId() == null ? 0 : account.getLastTransactionId());
+        page.putInt(offset + VERSION, account.getVersion());
+    }
+
+    private Account read(Integer accountNo) {
+        ByteBuffer page = pageOf(accountNo);
+        int offset = offsetOf(accountNo);
+        int lastTransactionId = page.getInt(offset + LAST_TRANSACTION_ID);
+        Account account = new Account.Builder()
+                .number(accountNo)
+                .customerName(customerNames.get(page.getLong(offset + CUSTOMER_NAME)))
+                .overdraftLimitInMinorUnits(page.getLong(offset + OVERDRAFT_LIMIT))
+                .currentBalanceInMinorUnits(page.getLong(offset + BALANCE))
+                .lastTransactionId(lastTransactionId == 0 ? null : lastTransactionId)
+                .build();
+        account.setVersion(page.getInt(offset + VERSION));
+        return account;
+    }
+
+    private void setTransactionIds(Account account) {
+        List<AccountTransaction> transactions = account.getTransactions();
+        int lastId = account.getLastTransactionId() == null ? 0 : account.getLastTransactionId();
+        for (int i = account.getCommittedTransactionCount(); i < transactions.size(); i++) {
+            lastId = transactionIds.next(lastId);
+            transactions.get(i).setId(lastId);
+        }
+        account.markTransactionsCommitted();
+    }
+
+    private ByteBuffer pageOf(Integer accountNo) {
+        return pages[(accountNo - 1) / recordsPerPage];
+    }
+
+    private int offsetOf(Integer accountNo) {
+        return ((accountNo - 1) % recordsPerPage) * RECORD_BYTES;
+    }
+
+    private void ensurePage(Integer accountNo) {
+        int page = (accountNo - 1) / recordsPerPage;
+        if (page < pages.length) {
+            return;
+        }
+        growLock.lock();
+        try {
+            ByteBuffer[] current = pages;
+            if (page < current.length) {
+                return;
+            }
+            ByteBuffer[] grown = new ByteBuffer[page + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i <= page; i++) {
+                // Direct buffers are zeroed, so every record starts at version 0 meaning it does not exist yet
+                grown[i] = ByteBuffer.allocateDirect(recordsPerPage * RECORD_BYTES);
+            }
+            pages = grown;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    private Account copyOf(Account account) {
+        return new Account.Builder().copy(account).build();
+    }
+}
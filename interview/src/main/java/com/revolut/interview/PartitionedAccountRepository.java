@@ -0,0 +1,187 @@
+package com.revolut.interview;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Splits the accounts across a number of independent ledgers, each its own {@link AccountRepository} 
+ * with its own index, locks, ids and journal, so each ledger's structures stay small.
+ * The ledger of an account is the prefix of its account number: the top bits of the number hold the partition,
+ * and each partition gives out account numbers and transaction ids from the start of its own range,
+ * never going past its end into the range of the next partition.
+ * New accounts are spread across the partitions in turn unless a partition is given.
+ * As the ledgers are independent an update can only change accounts within one of them.
+ */
+public class PartitionedAccountRepository implements AccountRepository {
+
+    /**
+     * Creates the repository of a partition, which must give out account numbers and transaction ids 
+     * from after the first id, and no further than the last id.
+     */
+    @FunctionalInterface
+    public interface PartitionFactory {
+        AccountRepository create(int partition, int firstIdAfter, int lastId);
+    }
+
+    private final AccountRepository[] partitions;
+    private final int shift;
+    private final AtomicInteger nextPartition = new AtomicInteger();
+
+    public PartitionedAccountRepository(int partitionCount, PartitionFactory factory) {
+        Validate.isTrue(partitionCount > 0, "There must be at least one partition!");
+        int prefixBits = 32 - Integer.numberOfLeadingZeros(partitionCount - 1);
+        this.shift = Integer.SIZE - 1 - prefixBits;
+        this.partitions = new AccountRepository[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            this.partitions[i] = factory.create(i, firstIdAfter(i, shift), lastIdOf(i, shift));
+        }
+    }
+
+    /**
+     * @return - the id which the ids of the partition start after
+     */
+    public int firstIdAfter(int partition) {
+        return firstIdAfter(partition, shift);
+    }
+
+    /**
+     * @return - the last id of the partition, the one before the ids of the next partition start
+     */
+    public int lastIdOf(int partition) {
+        return lastIdOf(partition, shift);
+    }
+
+    private static int firstIdAfter(int partition, int shift) {
+        return partition << shift;
+    }
+
+    private static int lastIdOf(int partition, int shift) {
+        return (int) (((long) partition + 1 << shift) - 1);
+    }
+
+    public int partitionOf(Integer accountNo) {
+        int partition = accountNo >>> shift;
+        if (accountNo <= 0 || partition >= partitions.length) {
+            throw new NullPointerException(String.format("Account number %d is not valid!", accountNo));
+        }
+        return partition;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    public AccountRepository getPartition(int partition) {
+        return partitions[partition];
+    }
+
+    @Override
+    public Account create(Account account) {
+        return create(Math.floorMod(nextPartition.getAndIncrement(), partitions.length), account);
+    }
+
+    public Account create(int partition, Account account) {
+        Validate.validIndex(partitions, partition, "There is no partition %d!", partition);
+        return partitions[partition].create(account);
+    }
+
+    @Override
+    public Account createAlongside(Integer accountNo, Account account) {
+        return create(partitionOf(accountNo), account);
+    }
+
+    @Override
+    public Account update(Account account) {
+        return partitions[partitionOf(account.getNumber())].update(account);
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the accounts are in different partitions
+     */
+    @Override
+    public Pair<Account, Account> update(Pair<Account, Account> accounts) {
+        int partition = partitionOf(accounts.getLeft().getNumber());
+        validateSamePartition(partition, accounts.getRight().getNumber());
+        return partitions[partition].update(accounts);
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the accounts are in different partitions
+     */
+    @Override
+    public Pair<Account, Account> updateAndCredit(Account account, Integer creditAccountNo, long amountInMinorUnits) {
+        int partition = partitionOf(account.getNumber());
+        Validate.notNull(creditAccountNo, "Account number %d is not valid!", creditAccountNo);
+        validateSamePartition(partition, creditAccountNo);
+        return partitions[partition].updateAndCredit(account, creditAccountNo, amountInMinorUnits);
+    }
+
+    /**
+     * @throws - IllegalArgumentException when the accounts are in different partitions
+     */
+    @Override
+    public List<Account> update(List<Account> accounts) {
+        Validate.isTrue(!accounts.isEmpty(), "There are no accounts to update!");
+        int partition = partitionOf(accounts.get(0).getNumber());
+        accounts.forEach(account -> validateSamePartition(partition, account.getNumber()));
+        return partitions[partition].update(accounts);
+    }
+
+    @Override
+    public Account get(Integer accountNo) {
+        Validate.notNull(accountNo, "Account number %d is not valid!", accountNo);
+        return partitions[partitionOf(accountNo)].get(accountNo);
+    }
+
+    /**
+     * Takes the locks of each partition in turn in partition order, so the locks are still always taken in the same order.
+     */
+    @Override
+    public <T> T withLocks(Collection<Integer> accountNos, Supplier<T> operation) {
+        TreeMap<Integer, List<Integer>> byPartition = new TreeMap<>();
+        for (Integer accountNo : accountNos) {
+            byPartition.computeIfAbsent(partitionOf(accountNo), partition -> new ArrayList<>()).add(accountNo);
+        }
+        return withLocks(new ArrayList<>(byPartition.values()), 0, operation);
+    }
+
+    private <T> T withLocks(List<List<Integer>> accountNosByPartition, int index, Supplier<T> operation) {
+        if (index == accountNosByPartition.size()) {
+            return operation.get();
+        }
+        List<Integer> accountNos = accountNosByPartition.get(index);
+        return partitions[partitionOf(accountNos.get(0))].withLocks(accountNos, 
+                () -> withLocks(accountNosByPartition, index + 1, operation));
+    }
+
+    @Override
+    public List<FundTransferRequest> getRecoveredTransfers() {
+        List<FundTransferRequest> transfers = new ArrayList<>();
+        for (AccountRepository partition : partitions) {
+            transfers.addAll(partition.getRecoveredTransfers());
+        }
+        return transfers;
+    }
+
+    @Override
+    public List<Account> getRecoveredSubLedgers() {
+        List<Account> subLedgers = new ArrayList<>();
+        for (AccountRepository partition : partitions) {
+            subLedgers.addAll(partition.getRecoveredSubLedgers());
+        }
+        return subLedgers;
+    }
+
+    private void validateSamePartition(int partition, Integer accountNo) {
+        Validate.isTrue(partitionOf(accountNo) == partition, 
+                "Account number %d is in a different ledger, accounts can only be updated together within a ledger!", 
+                accountNo);
+    }
+}
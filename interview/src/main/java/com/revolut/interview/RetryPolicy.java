@@ -0,0 +1,98 @@
+package com.revolut.interview;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Controls how often an operation aborted by a {@link java.util.ConcurrentModificationException} is retried.
+ * The backoff between attempts grows exponentially up to a maximum, with full jitter so that threads which 
+ * conflicted with each other do not retry in lock step. After a number of aborts the operation can fall back 
+ * to holding the account locks for the whole read-validate-commit cycle, which cannot be aborted.
+ */
+public class RetryPolicy {
+    private int maxAttempts = 5;
+    private long initialBackoffMillis = 1;
+    private long maxBackoffMillis = 50;
+    private int pessimisticAfter = 3;
+
+    public static RetryPolicy noRetries() {
+        return new Builder().maxAttempts(1).build();
+    }
+
+    /**
+     * Reads the policy from the <code>retry.maxAttempts</code>, <code>retry.initialBackoffMillis</code>, 
+     * <code>retry.maxBackoffMillis</code> and <code>retry.pessimisticAfter</code> system properties.
+     */
+    public static RetryPolicy fromSystemProperties() {
+        RetryPolicy defaults = new RetryPolicy();
+        return new Builder()
+                .maxAttempts(Integer.getInteger("retry.maxAttempts", defaults.maxAttempts))
+                .initialBackoffMillis(Long.getLong("retry.initialBackoffMillis", defaults.initialBackoffMillis))
+                .maxBackoffMillis(Long.getLong("retry.maxBackoffMillis", defaults.maxBackoffMillis))
+                .pessimisticAfter(Integer.getInteger("retry.pessimisticAfter", defaults.pessimisticAfter))
+                .build();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * @return - the number of aborted attempts after which the next attempt holds the account locks throughout
+     */
+    public int getPessimisticAfter() {
+        return pessimisticAfter;
+    }
+
+    public boolean isPessimistic(int attempt) {
+        return attempt > pessimisticAfter;
+    }
+
+    /**
+     * @return - a random backoff between zero and the exponential backoff for the number of aborted attempts
+     */
+    public long backoffMillis(int abortedAttempts) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(abortedAttempts - 1, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public static class Builder {
+        private RetryPolicy instance = new RetryPolicy();
+
+        public Builder maxAttempts(int maxAttempts) {
+            Validate.isTrue(maxAttempts > 0, "There must be at least one attempt!");
+            instance.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder initialBackoffMillis(long initialBackoffMillis) {
+            instance.initialBackoffMillis = initialBackoffMillis;
+            return this;
+        }
+
+        public Builder maxBackoffMillis(long maxBackoffMillis) {
+            instance.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        public Builder pessimisticAfter(int pessimisticAfter) {
+            instance.pessimisticAfter = pessimisticAfter;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            Validate.isTrue(instance.initialBackoffMillis >= 0 && instance.maxBackoffMillis >= instance.initialBackoffMillis, 
+                    "Backoff must be positive and no more than the maximum backoff!");
+            return instance;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+import static com.revolut.interview.TransactionType.DEBIT;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * An {@link AccountService} which partitions the accounts across a number of single threaded shards instead of locking them.
+ * Each shard exclusively owns its accounts and applies commands to them one at a time from a bounded ring buffer queue,
+ * so no account is ever touched by more than one thread.
+ * A transfer between shards is a debit on the source shard, which then sends a credit message to the target shard.
+ * Credit messages are always applied before the target shard takes its next command, so once a transfer has returned
+ * any following read of either account will include it.
+ * The credit is checked on the target shard before the debit is committed, and should it still fail the amount is
+ * credited back to the source account, so a failed credit never takes a shard down or loses the money.
+ */
+public class ShardedAccountService implements AccountService, AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final AtomicInteger accountCounter = new AtomicInteger();
+    private final AtomicInteger transactionCounter = new AtomicInteger();
+
+    private final Shard[] shards;
+    private final IdempotencyCache idempotencyCache = IdempotencyCache.fromSystemProperties();
+
+    public ShardedAccountService() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ShardedAccountService(int shardCount, int queueCapacity) {
+        Validate.isTrue(shardCount > 0, "There must be at least one shard!");
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            this.shards[i] = new Shard(i, queueCapacity);
+        }
+    }
+
+    @Override
+    public Account createAccount(NewAccountRequest newAccountRequest) {
+        Account newAccount = newAccount(newAccountRequest);
+        return shardOf(newAccount.getNumber()).call(create(newAccount));
+    }
+
+    @Override
+    public CompletableFuture<Account> createAccountAsync(NewAccountRequest newAccountRequest) {
+        Account newAccount;
+        try {
+            newAccount = newAccount(newAccountRequest);
+        } catch (RuntimeException e) {
+            return AccountService.failed(e);
+        }
+        return shardOf(newAccount.getNumber()).submit(create(newAccount));
+    }
+
+    private Account newAccount(NewAccountRequest newAccountRequest) {
+        long initialDeposit = Money.toMinorUnits(newAccountRequest.getInitialDeposit());
+        Validate.isTrue(initialDeposit>=0, "Initial deposit must be positive!");
+        Account.Builder accountBuilder = new Account.Builder()
+                .number(accountCounter.incrementAndGet())
+                .customerName(newAccountRequest.getCustomerName())
+                .overdraftLimit(newAccountRequest.getOverDraftLimit());
+        if (initialDeposit != 0) {
+            accountBuilder.transaction(
+                        new AccountTransaction.Builder()
+                            .type(CREDIT)
+                            .amountInMinorUnits(initialDeposit)
+                            .balanceInMinorUnits(initialDeposit)
+                            .build()
+                    );
+        }
+        return accountBuilder.build();
+    }
+
+    private Function<Map<Integer, Account>, Account> create(Account newAccount) {
+        return accounts -> {
+            commit(newAccount);
+            accounts.put(newAccount.getNumber(), newAccount);
+            return copyOf(newAccount);
+        };
+    }
+
+    @Override
+    public Account getAccount(Integer accountNo) {
+        return shardOf(accountNo).call(accounts -> copyOf(find(accounts, accountNo)));
+    }
+
+    @Override
+    public CompletableFuture<Account> getAccountAsync(Integer accountNo) {
+        return shardOf(accountNo).submit(accounts -> copyOf(find(accounts, accountNo)));
+    }
+
+    /**
+     * A transfer with the idempotency key of a recent transfer is not applied again, it has the same outcome instead.
+     */
+    @Override
+    public void transfer(FundTransferRequest transferRequest) {
+        idempotencyCache.deduplicate(transferRequest, () -> applyTransfer(transferRequest));
+    }
+
+    private void applyTransfer(FundTransferRequest transferRequest) {
+        Integer fromAccountNo = transferRequest.getFromAccountNo();
+        Integer toAccountNo = transferRequest.getToAccountNo();
+        long amount = Money.toMinorUnits(transferRequest.getAmount());
+        Validate.isTrue(amount > 0, "Transfer amount must be positive!");
+        Validate.isTrue(!fromAccountNo.equals(toAccountNo), "Cannot transfer from account %d to itself!", fromAccountNo);
+
+        Shard toShard = shardOf(toAccountNo);
+        // Accounts are never removed, so once the target is known to exist it can safely be credited later
+        toShard.call(accounts -> validateCredit(find(accounts, toAccountNo), amount));
+        shardOf(fromAccountNo).call(debit(fromAccountNo, toShard, toAccountNo, amount));
+    }
+
+    /**
+     * Neither shard is waited on, the future completes on the source shard's thread once the debit is applied.
+     */
+    @Override
+    public CompletableFuture<Void> transferAsync(FundTransferRequest transferRequest) {
+        return idempotencyCache.deduplicateAsync(transferRequest, () -> applyTransferAsync(transferRequest));
+    }
+
+    private CompletableFuture<Void> applyTransferAsync(FundTransferRequest transferRequest) {
+        Integer fromAccountNo = transferRequest.getFromAccountNo();
+        Integer toAccountNo = transferRequest.getToAccountNo();
+        long amount;
+        try {
+            amount = Money.toMinorUnits(transferRequest.getAmount());
+            Validate.isTrue(amount > 0, "Transfer amount must be positive!");
+            Validate.isTrue(!fromAccountNo.equals(toAccountNo), "Cannot transfer from account %d to itself!", fromAccountNo);
+        } catch (RuntimeException e) {
+            return AccountService.failed(e);
+        }
+        Shard toShard = shardOf(toAccountNo);
+        return toShard.submit(accounts -> validateCredit(find(accounts, toAccountNo), amount))
+                .thenCompose(toAccount -> shardOf(fromAccountNo).submit(debit(fromAccountNo, toShard, toAccountNo, amount)));
+    }
+
+    private Function<Map<Integer, Account>, Void> debit(Integer fromAccountNo, Shard toShard, Integer toAccountNo, long amount) {
+        Shard fromShard = shardOf(fromAccountNo);
+        return accounts -> {
+            Account fromAccount = find(accounts, fromAccountNo);
+
+            // Need to validate there is enough cash in the account
+            AccountServiceImpl.validateFunds(fromAccount, amount);
+
+            fromAccount.addTransactionInMinorUnits(DEBIT, amount);
+            commit(fromAccount);
+            toShard.send(toAccounts -> {
+                try {
+                    credit(find(toAccounts, toAccountNo), amount);
+                } catch (RuntimeException e) {
+                    // The debit is already committed, so the amount goes back to the account it was taken from
+                    fromShard.send(fromAccounts -> credit(find(fromAccounts, fromAccountNo), amount));
+                    throw new IllegalStateException(String.format("Credit of %d to account %d failed, refunding account %d!",
+                            amount, toAccountNo, fromAccountNo), e);
+                }
+            });
+            return null;
+        };
+    }
+
+    private void credit(Account account, long amount) {
+        account.addTransactionInMinorUnits(CREDIT, amount);
+        commit(account);
+    }
+
+    /**
+     * @throws - IllegalStateException when crediting the amount would overflow the account's balance
+     */
+    private static Account validateCredit(Account account, long amount) {
+        Validate.validState(amount <= 0 || account.currentBalanceInMinorUnits() <= Long.MAX_VALUE - amount,
+                "Account number %d cannot be credited with %d!", account.getNumber(), amount);
+        return account;
+    }
+
+    /**
+     * Only independent batches are supported, as an atomic batch would need every shard involved to be coordinated.
+     */
+    @Override
+    public List<FundTransferResult> transferBatch(List<FundTransferRequest> transferRequests, boolean atomic) {
+        Validate.isTrue(!atomic, "Atomic batches are not supported when accounts are sharded!");
+        List<FundTransferResult> results = new ArrayList<>(transferRequests.size());
+        for (FundTransferRequest transferRequest : transferRequests) {
+            try {
+                transfer(transferRequest);
+                results.add(FundTransferResult.success());
+            } catch (IllegalArgumentException | IllegalStateException | NullPointerException e) {
+                results.add(FundTransferResult.failure(e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops all of the shard threads, any commands still queued are not applied.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    private Shard shardOf(Integer accountNo) {
+        return shards[Math.floorMod(accountNo, shards.length)];
+    }
+
+    private Account find(Map<Integer, Account> accounts, Integer accountNo) {
+        Account account = accounts.get(accountNo);
+        Validate.notNull(account, "Account number %d is not valid!", accountNo);
+        return account;
+    }
+
+    private void commit(Account account) {
+        List<AccountTransaction> transactions = account.getTransactions();
+        for (int i = account.getCommittedTransactionCount(); i < transactions.size(); i++) {
+            transactions.get(i).setId(transactionCounter.incrementAndGet());
+        }
+        account.markTransactionsCommitted();
+        account.setVersion(account.getVersion() + 1);
+    }
+
+    private Account copyOf(Account account) {
+        return new Account.Builder().copy(account).build();
+    }
+
+    /**
+     * A single thread owning a partition of the accounts.
+     */
+    private static class Shard implements Runnable {
+        private static final Logger LOGGER = Logger.getLogger(ShardedAccountService.class.getName());
+        private static final Runnable WAKE_UP = () -> {};
+
+        private final Map<Integer, Account> accounts = new HashMap<>();
+        private final BlockingQueue<Runnable> commands;
+        private final Queue<Consumer<Map<Integer, Account>>> messages = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+
+        Shard(int index, int queueCapacity) {
+            this.commands = new ArrayBlockingQueue<>(queueCapacity);
+            this.thread = new Thread(this, "account-shard-" + index);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        /**
+         * Runs the command on the shard thread and waits for its result.
+         */
+        <T> T call(Function<Map<Integer, Account>, T> command) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                commands.put(() -> {
+                    try {
+                        result.complete(command.apply(accounts));
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+                return result.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for account shard!", e);
+            } catch (CompletionException e) {
+                throw (RuntimeException) e.getCause();
+            }
+        }
+
+        /**
+         * Queues the command to run on the shard thread without waiting for it.
+         * @throws - RejectedExecutionException when the queue is full, through the future
+         */
+        <T> CompletableFuture<T> submit(Function<Map<Integer, Account>, T> command) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            boolean queued = commands.offer(() -> {
+                try {
+                    result.complete(command.apply(accounts));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            if (!queued) {
+                result.completeExceptionally(new RejectedExecutionException("Account shard is busy!"));
+            }
+            return result;
+        }
+
+        /**
+         * Sends a message from another shard. Messages are unbounded so shards can never block each other,
+         * and they are applied ahead of any queued command.
+         */
+        void send(Consumer<Map<Integer, Account>> message) {
+            messages.add(message);
+            // If the queue is full the shard is busy and will apply the message before its next command anyway
+            commands.offer(WAKE_UP);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Runnable command = commands.take();
+                    applyMessages();
+                    command.run();
+                }
+            } catch (InterruptedException e) {
+                // shutting down
+            }
+        }
+
+        /**
+         * A failed message is reported and the shard carries on, as whoever sent it is not waiting on it.
+         */
+        private void applyMessages() {
+            Consumer<Map<Integer, Account>> message;
+            while ((message = messages.poll()) != null) {
+                try {
+                    message.accept(accounts);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Account shard message failed", e);
+                }
+            }
+        }
+    }
+}
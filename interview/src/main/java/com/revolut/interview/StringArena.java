@@ -0,0 +1,85 @@
+package com.revolut.interview;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * An append-only store of strings outside of the heap, each addressed by the offset it was appended at.
+ * Strings are held as their UTF-8 length and bytes in fixed size pages, and never span two pages.
+ */
+public class StringArena {
+
+    public static final int DEFAULT_PAGE_BYTES = 16 * 1024 * 1024;
+
+    /** The offset of a null string, which takes no space. */
+    public static final long NULL = -1;
+
+    private final int pageBytes;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile ByteBuffer[] pages = new ByteBuffer[0];
+    private long position;
+
+    public StringArena() {
+        this(DEFAULT_PAGE_BYTES);
+    }
+
+    public StringArena(int pageBytes) {
+        this.pageBytes = pageBytes;
+    }
+
+    /**
+     * @return - the offset to read the string back from
+     * @throws - IllegalArgumentException when the string is larger than a page
+     */
+    public long append(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int size = 4 + bytes.length;
+        Validate.isTrue(size <= pageBytes, "String of %d bytes is too large for the arena!", bytes.length);
+        appendLock.lock();
+        try {
+            if (position % pageBytes + size > pageBytes) {
+                position += pageBytes - position % pageBytes;
+            }
+            int page = (int) (position / pageBytes);
+            if (page == pages.length) {
+                ByteBuffer[] grown = new ByteBuffer[pages.length + 1];
+                System.arraycopy(pages, 0, grown, 0, pages.length);
+                grown[pages.length] = ByteBuffer.allocateDirect(pageBytes);
+                pages = grown;
+            }
+            ByteBuffer buffer = pages[page].duplicate();
+            buffer.position((int) (position % pageBytes));
+            buffer.putInt(bytes.length).put(bytes);
+            long offset = position;
+            position += size;
+            return offset;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public String get(long offset) {
+        if (offset == NULL) {
+            return null;
+        }
+        ByteBuffer buffer = pages[(int) (offset / pageBytes)].duplicate();
+        buffer.position((int) (offset % pageBytes));
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return - the number of bytes of memory allocated to the arena
+     */
+    public long getAllocatedBytes() {
+        return (long) pages.length * pageBytes;
+    }
+}
@@ -0,0 +1,187 @@
+package com.revolut.interview;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An append only list of {@link AccountTransaction}s which shares its entries with every copy taken of it.
+ * The entries are held in fixed size chunks within a store, and a copy is just a new view of the same store
+ * with its own size, so copying is O(1) regardless of how long the history is.
+ * The first view to append past the end of the store extends it in place. Any other view appending at the same
+ * position branches into a new store which shares all of the full chunks and only copies the partly filled last one.
+ * <p>
+ * As full chunks never change they can be spilled to a {@link ColdTransactionStore}, leaving only the position of
+ * the chunk in the store on the heap. Reading a spilled entry decodes it from the cold store.
+ */
+public class TransactionHistory extends AbstractList<AccountTransaction> {
+
+    private static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private Store store;
+    private int size;
+
+    public TransactionHistory() {
+        this(new Store(), 0);
+    }
+
+    private TransactionHistory(Store store, int size) {
+        this.store = store;
+        this.size = size;
+    }
+
+    /**
+     * @return - a history containing the given transactions, which is a shared copy if they are already a history
+     */
+    public static TransactionHistory of(List<AccountTransaction> transactions) {
+        if (transactions instanceof TransactionHistory) {
+            return ((TransactionHistory) transactions).copy();
+        }
+        TransactionHistory history = new TransactionHistory();
+        history.addAll(transactions);
+        return history;
+    }
+
+    public TransactionHistory copy() {
+        return new TransactionHistory(store, size);
+    }
+
+    @Override
+    public AccountTransaction get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return store.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(AccountTransaction transaction) {
+        if (!store.append(size, transaction)) {
+            store = store.branch(size);
+            store.append(size, transaction);
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends AccountTransaction> transactions) {
+        transactions.forEach(this::add);
+        return !transactions.isEmpty();
+    }
+
+    /**
+     * Moves every full chunk which is entirely older than the most recent transactions out to the cold store.
+     * Only one thread may spill a history at a time, but it can be read and appended to while it is spilled.
+     * @return - the number of chunks spilled
+     */
+    public int spill(int hotTransactions, ColdTransactionStore coldStore) {
+        return store.spill((size - hotTransactions) >> CHUNK_SHIFT, coldStore);
+    }
+
+    @Override
+    public void clear() {
+        store = new Store();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * The entries of a chunk, or once it has been spilled the position of them in the cold store.
+     */
+    private static class Chunk {
+        private volatile AccountTransaction[] entries = new AccountTransaction[CHUNK_SIZE];
+        private volatile long coldPosition;
+        private volatile ColdTransactionStore coldStore;
+
+        AccountTransaction get(int index) {
+            AccountTransaction[] current = entries;
+            // The cold position is always written before the entries are dropped
+            return current != null ? current[index] : coldStore.get(coldPosition, index);
+        }
+
+        void spill(ColdTransactionStore store) {
+            AccountTransaction[] current = entries;
+            if (current != null) {
+                coldPosition = store.append(current);
+                coldStore = store;
+                entries = null;
+            }
+        }
+    }
+
+    private static class Store {
+        private volatile Chunk[] chunks = new Chunk[4];
+        private final AtomicInteger length = new AtomicInteger();
+        private volatile int spilledChunks;
+
+        AccountTransaction get(int index) {
+            return chunks[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+        }
+
+        /**
+         * Only succeeds when the entry is the next one in the store, otherwise another view has already
+         * extended the store past this position.
+         */
+        boolean append(int index, AccountTransaction transaction) {
+            if (!length.compareAndSet(index, index + 1)) {
+                return false;
+            }
+            int chunk = index >>> CHUNK_SHIFT;
+            Chunk[] current = chunks;
+            if (chunk == current.length) {
+                Chunk[] grown = new Chunk[current.length * 2];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            if (current[chunk] == null) {
+                current[chunk] = new Chunk();
+            }
+            current[chunk].entries[index & CHUNK_MASK] = transaction;
+            // volatile write publishes the entry to views created from now on
+            chunks = current;
+            return true;
+        }
+
+        Store branch(int size) {
+            Store branch = new Store();
+            int fullChunks = size >>> CHUNK_SHIFT;
+            Chunk[] current = chunks;
+            Chunk[] shared = new Chunk[Math.max(4, Integer.highestOneBit(fullChunks) * 2)];
+            System.arraycopy(current, 0, shared, 0, fullChunks);
+            int remainder = size & CHUNK_MASK;
+            if (remainder > 0) {
+                // The last chunk may have since been filled and spilled by a newer view, so read it through the chunk
+                shared[fullChunks] = new Chunk();
+                for (int i = 0; i < remainder; i++) {
+                    shared[fullChunks].entries[i] = current[fullChunks].get(i);
+                }
+            }
+            branch.chunks = shared;
+            branch.length.set(size);
+            branch.spilledChunks = Math.min(spilledChunks, fullChunks);
+            return branch;
+        }
+
+        int spill(int toChunk, ColdTransactionStore coldStore) {
+            int from = spilledChunks;
+            Chunk[] current = chunks;
+            for (int chunk = from; chunk < toChunk; chunk++) {
+                current[chunk].spill(coldStore);
+            }
+            if (toChunk > from) {
+                spilledChunks = toChunk;
+            }
+            return Math.max(0, toChunk - from);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.revolut.interview;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A page of an account's transactions, oldest first. The next page is requested with the cursor, which is the id
+ * of the last transaction in this page, or null when there are no more transactions.
+ */
+public class TransactionPage {
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private List<AccountTransaction> transactions;
+    private Integer nextCursor;
+
+    /**
+     * @param afterTransactionId - the cursor from the previous page, or null for the first page
+     * @throws - IllegalArgumentException when the limit is not between 1 and {@link #MAX_LIMIT}
+     */
+    public static TransactionPage of(List<AccountTransaction> history, Integer afterTransactionId, int limit) {
+        Validate.isTrue(limit > 0 && limit <= MAX_LIMIT, "Page limit must be between 1 and %d!", MAX_LIMIT);
+        int from = indexAfter(history, afterTransactionId);
+        int to = Math.min(history.size(), from + limit);
+        TransactionPage page = new TransactionPage();
+        page.setTransactions(new ArrayList<>(history.subList(from, to)));
+        page.setNextCursor(to < history.size() ? history.get(to - 1).getId() : null);
+        return page;
+    }
+
+    /**
+     * Transaction ids only ever increase through an account's history, as they are given out when the account
+     * is committed, so the position of the cursor is found with a binary search.
+     * @return - the index of the first transaction after the transaction id, or 0 when it is null
+     */
+    public static int indexAfter(List<AccountTransaction> history, Integer afterTransactionId) {
+        if (afterTransactionId == null) {
+            return 0;
+        }
+        if (history instanceof MergedTransactionHistory) {
+            // Searched for in each ledger, as finding a merged transaction by its index is itself a search
+            return ((MergedTransactionHistory) history).indexAfter(afterTransactionId);
+        }
+        int low = 0;
+        int high = history.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (history.get(middle).getId() <= afterTransactionId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public List<AccountTransaction> getTransactions() {
+        return transactions;
+    }
+    public void setTransactions(List<AccountTransaction> transactions) {
+        this.transactions = transactions;
+    }
+    public Integer getNextCursor() {
+        return nextCursor;
+    }
+    public void setNextCursor(Integer nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+}
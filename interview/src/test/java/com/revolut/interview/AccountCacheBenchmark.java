@@ -0,0 +1,86 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+
+import java.util.ConcurrentModificationException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Reading, creating and updating accounts in an {@link AccountCache}, picking accounts uniformly from a seeded random.
+ * The cache is rebuilt before every iteration, so each iteration starts from the same accounts with one transaction each.
+ * Part of the {@link HotPathBenchmarks}, which reports the throughput, 99th percentile latency and allocation of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountCacheBenchmark {
+
+    @Param({"100000"})
+    private int accounts;
+
+    private AccountCache cache;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        private SplittableRandom random;
+
+        @Setup
+        public void setup(ThreadParams threadParams) {
+            random = new SplittableRandom(threadParams.getThreadIndex());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        cache = new AccountCache();
+        for (int i = 0; i < accounts; i++) {
+            cache.create(newAccount());
+        }
+    }
+
+    @Benchmark
+    public Account get(Picker picker) {
+        return cache.get(picker.random.nextInt(accounts) + 1);
+    }
+
+    @Benchmark
+    public Account create() {
+        return cache.create(newAccount());
+    }
+
+    @Benchmark
+    public Account update(Picker picker) {
+        Account account = cache.get(picker.random.nextInt(accounts) + 1);
+        account.addTransactionInMinorUnits(CREDIT, 1);
+        try {
+            return cache.update(account);
+        } catch (ConcurrentModificationException e) {
+            // only when run with more than one thread, an aborted update still counts as an operation
+            return null;
+        }
+    }
+
+    private static Account newAccount() {
+        Account account = new Account.Builder().customerName("Joe Smith").build();
+        account.addTransactionInMinorUnits(CREDIT, 10000);
+        return account;
+    }
+}
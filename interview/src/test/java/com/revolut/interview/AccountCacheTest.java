@@ -4,24 +4,32 @@ import static com.revolut.interview.AccountTestUtils.assertTransaction;
 import static com.revolut.interview.TransactionType.CREDIT;
 import static com.revolut.interview.TransactionType.DEBIT;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.List;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Assert;
-import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class AccountCacheTest {
 
     private AccountCache testee = new AccountCache();
     
-    @Before
-    public void clearData() {
-        AccountCache.clearAndReset();
-    }
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
     
     @Test
     public void testCreateAccountWithNoTransactions() {
@@ -106,6 +114,89 @@ public class AccountCacheTest {
         assertThat(updatedAccounts.getRight().getTransactions()).hasSize(2);    
     }
         
+    @Test
+    public void testCreditIsAppliedToCurrentAccount() {
+        testee.create(createAccount());
+        testee.create(createAccount());
+        
+        Account firstAccount = testee.get(1);
+        firstAccount.addTransaction(DEBIT, new BigDecimal(10));
+        Account secondAccount = testee.get(2);
+        secondAccount.addTransaction(DEBIT, new BigDecimal(5));
+        testee.update(secondAccount);
+        
+        Pair<Account, Account> updatedAccounts = testee.updateAndCredit(firstAccount, 2, 1000);
+        
+        assertThat(updatedAccounts.getLeft().getCurrentBalance()).isEqualTo(new BigDecimal(30));
+        assertThat(updatedAccounts.getRight().getVersion()).isEqualTo(3);
+        assertThat(updatedAccounts.getRight().getTransactions()).hasSize(4);
+        assertTransaction(updatedAccounts.getRight().getTransactions().get(3), 7, CREDIT, 10, 45);
+        assertThat(testee.get(2).getCurrentBalance()).isEqualTo(new BigDecimal(45));
+    }
+    
+    @Test
+    public void testStaleDebitIsNotCredited() {
+        testee.create(createAccount());
+        testee.create(createAccount());
+        
+        Account staleFirstAccount = testee.get(1);
+        staleFirstAccount.addTransaction(DEBIT, new BigDecimal(10));
+        testee.update(testee.get(1));
+        
+        try {
+            testee.updateAndCredit(staleFirstAccount, 2, 1000);
+            Assert.fail("Expecting the stale debit to be aborted!");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        assertThat(testee.get(2).getVersion()).isEqualTo(1);
+        assertThat(testee.get(2).getCurrentBalance()).isEqualTo(new BigDecimal(40));
+    }
+    
+    @Test
+    public void testCreditMustBePositive() {
+        testee.create(createAccount());
+        testee.create(createAccount());
+        
+        for (long amount : new long[] {0, -1000}) {
+            try {
+                testee.updateAndCredit(testee.get(1), 2, amount);
+                Assert.fail("Expecting a credit of " + amount + " to be rejected!");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertThat(testee.get(1).getVersion()).isEqualTo(1);
+        assertThat(testee.get(2).getCurrentBalance()).isEqualTo(new BigDecimal(40));
+    }
+        
+    @Test
+    public void testStaleUpdateOfAccountsIsNeverPublished() {
+        testee.create(createAccount());
+        testee.create(createAccount());
+        
+        Account firstAccount = testee.get(1);
+        firstAccount.addTransaction(DEBIT, new BigDecimal(10));
+        Account staleSecondAccount = testee.get(2);
+        staleSecondAccount.addTransaction(CREDIT, new BigDecimal(10));
+        
+        Account secondAccount = testee.get(2);
+        secondAccount.addTransaction(DEBIT, new BigDecimal(5));
+        testee.update(secondAccount);
+
+        try {
+            testee.update(new ImmutablePair<Account, Account>(firstAccount, staleSecondAccount));
+            Assert.fail("Expecting update of stale account to be rejected!");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        
+        assertThat(testee.get(1).getVersion()).isEqualTo(1);
+        assertThat(testee.get(1).getTransactions()).hasSize(2);
+        assertThat(testee.get(2).getVersion()).isEqualTo(2);
+        assertTransaction(testee.get(2).getTransactions().get(2), 5, DEBIT, 5, 35);
+    }
+    
     @Test
     public void testUpdateAccountsWithPairInReverse() {
         Account testAccount1 = createAccount();        
@@ -124,6 +215,41 @@ public class AccountCacheTest {
         assertThat(updatedAccounts.getRight().getTransactions()).hasSize(3);    
     }    
     
+    @Test
+    public void testUpdateMaintainsVersionAndLastTransactionId() {
+        Account resultAccount = testee.create(createAccount());
+        assertThat(resultAccount.getVersion()).isEqualTo(1);
+        assertThat(resultAccount.getLastTransactionId()).isEqualTo(2);
+        
+        resultAccount.addTransaction(CREDIT, new BigDecimal(100));
+        assertThat(resultAccount.getCurrentBalance()).isEqualTo(new BigDecimal(140));
+        assertThat(resultAccount.getLastTransactionId()).isEqualTo(2);
+        
+        Account updatedAccount = testee.update(resultAccount);
+        assertThat(updatedAccount.getVersion()).isEqualTo(2);
+        assertThat(updatedAccount.getLastTransactionId()).isEqualTo(3);
+        assertThat(testee.get(1).getVersion()).isEqualTo(2);
+    }
+    
+    @Test
+    public void testUpdateListOfAccounts() {
+        testee.create(createAccount());
+        testee.create(createAccount());
+        testee.create(createAccount());
+        
+        Account firstAccount = testee.get(3);
+        firstAccount.addTransaction(DEBIT, new BigDecimal(10));
+        Account secondAccount = testee.get(1);
+        secondAccount.addTransaction(CREDIT, new BigDecimal(10));
+        
+        List<Account> updatedAccounts = testee.update(Arrays.asList(firstAccount, secondAccount));
+        
+        assertThat(updatedAccounts).extracting("number").containsExactly(3, 1);
+        assertTransaction(updatedAccounts.get(0).getTransactions().get(2), 7, DEBIT, 10, 30);
+        assertTransaction(updatedAccounts.get(1).getTransactions().get(2), 8, CREDIT, 10, 50);
+        assertThat(testee.get(2).getVersion()).isEqualTo(1);
+    }
+    
     @Test
     public void testGetAccount() {
         Account testAccount = createAccount();
@@ -140,6 +266,115 @@ public class AccountCacheTest {
         assertTransaction(resultAccount.getTransactions().get(1), 2, DEBIT, 10, 40);
     }
 
+    @Test
+    public void testCachesAreIsolated() {
+        AccountCache otherTestee = new AccountCache();
+        testee.create(createAccount());
+        
+        Account otherAccount = otherTestee.create(createAccount());
+        
+        assertThat(otherAccount.getNumber()).isEqualTo(1);
+        assertTransaction(otherAccount.getTransactions().get(0), 1, CREDIT, 50, 50);
+        assertThat(testee.getCommits()).isEqualTo(0);
+        assertThat(otherTestee.getLocks()).isNotSameAs(testee.getLocks());
+    }
+
+    @Test
+    public void testRecoverFromJournal() {
+        Path directory = folder.getRoot().toPath();
+        AccountJournal journal = new AccountJournal(new Journal.Builder().directory(directory).build());
+        AccountCache journaledTestee = new AccountCache(journal);
+        journaledTestee.create(createAccount());
+        journaledTestee.create(createAccount());
+        Account firstAccount = journaledTestee.get(1);
+        firstAccount.addTransaction(DEBIT, new BigDecimal(15));
+        Account secondAccount = journaledTestee.get(2);
+        secondAccount.addTransaction(CREDIT, new BigDecimal(15));
+        journaledTestee.update(new ImmutablePair<Account, Account>(firstAccount, secondAccount));
+        journal.close();
+        
+        journal = new AccountJournal(new Journal.Builder().directory(directory).build());
+        journaledTestee = new AccountCache(journal);
+        
+        Account recoveredAccount = journaledTestee.get(1);
+        assertThat(recoveredAccount.getCustomerName()).isEqualTo("Joe Smith");
+        assertThat(recoveredAccount.getOverdraftLimit()).isEqualTo(new BigDecimal(100));
+        assertThat(recoveredAccount.getVersion()).isEqualTo(2);
+        assertThat(recoveredAccount.getCurrentBalance()).isEqualTo(new BigDecimal(25));
+        assertThat(recoveredAccount.getLastTransactionId()).isEqualTo(5);
+        assertTransaction(recoveredAccount.getTransactions().get(2), 5, DEBIT, 15, 25);
+        assertTransaction(journaledTestee.get(2).getTransactions().get(2), 6, CREDIT, 15, 55);
+        
+        Account newAccount = journaledTestee.create(createAccount());
+        assertThat(newAccount.getNumber()).isEqualTo(3);
+        assertThat(newAccount.getLastTransactionId()).isEqualTo(8);
+        journal.close();
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testAccountIsNotPublishedWhenJournalingFails() {
+        AccountJournal journal = mock(AccountJournal.class);
+        when(journal.append(any(List.class), any(List.class)))
+                .thenReturn(1L)
+                .thenThrow(new UncheckedIOException(new IOException("Disk full")));
+        AccountCache journaledTestee = new AccountCache(journal);
+        journaledTestee.create(createAccount());
+        Account account = journaledTestee.get(1);
+        account.addTransaction(DEBIT, new BigDecimal(5));
+        
+        try {
+            journaledTestee.update(account);
+            Assert.fail("Expecting the update to fail when it cannot be journaled!");
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+        
+        assertThat(journaledTestee.get(1).getVersion()).isEqualTo(1);
+        assertThat(journaledTestee.get(1).getCurrentBalance()).isEqualTo(new BigDecimal(40));
+        assertThat(journaledTestee.getCommits()).isEqualTo(0);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testAccountIsPublishedButNotDurableWhenSyncFails() {
+        AccountJournal journal = mock(AccountJournal.class);
+        when(journal.append(any(List.class), any(List.class))).thenReturn(1L).thenReturn(2L);
+        doThrow(new UncheckedIOException(new IOException("Disk failed"))).when(journal).awaitDurable(2L);
+        AccountCache journaledTestee = new AccountCache(journal);
+        journaledTestee.create(createAccount());
+        Account account = journaledTestee.get(1);
+        account.addTransaction(DEBIT, new BigDecimal(5));
+        
+        try {
+            journaledTestee.update(account);
+            Assert.fail("Expecting the update to fail when it cannot be made durable!");
+        } catch (NotDurableException e) {
+            assertThat(e.getCause()).isInstanceOf(UncheckedIOException.class);
+        }
+        
+        assertThat(journaledTestee.get(1).getVersion()).isEqualTo(2);
+        assertThat(journaledTestee.get(1).getCurrentBalance()).isEqualTo(new BigDecimal(35));
+    }
+    
+    @Test
+    public void testOlderTransactionsAreMovedToColdStore() {
+        ColdTransactionStore coldStore = ColdTransactionStore.offHeap(ColdTransactionStore.DEFAULT_BLOCK_BYTES);
+        testee.withColdStore(coldStore, 10);
+        testee.create(createAccount());
+        for (int i = 0; i < 100; i++) {
+            Account account = testee.get(1);
+            account.addTransaction(CREDIT, new BigDecimal(1));
+            testee.update(account);
+        }
+        
+        Account account = testee.get(1);
+        assertThat(coldStore.getBytes()).isEqualTo(TransactionHistory.CHUNK_SIZE * ColdTransactionStore.RECORD_BYTES);
+        assertThat(account.getTransactions()).hasSize(102);
+        assertTransaction(account.getTransactions().get(1), 2, DEBIT, 10, 40);
+        assertTransaction(account.getTransactions().get(101), 102, CREDIT, 1, 140);
+    }
+    
     private Account createAccount() {
         Account testAccount = new Account.Builder()
                 .customerName("Joe Smith")
@@ -0,0 +1,169 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+import static com.revolut.interview.TransactionType.DEBIT;
+
+import java.math.BigDecimal;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Multi-threaded stress of committing transfers, comparing the validate then compare and set commit of
+ * {@link AccountCache} against the previous scheme of putting the new version and rolling it back when stale.
+ * The commits and aborts counters give the abort rate of each scheme.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class AccountCommitBenchmark {
+
+    @Param({"2", "100"})
+    private int accounts;
+
+    private AccountCache accountCache = new AccountCache();
+    private PutAndRollbackCache putAndRollbackCache = new PutAndRollbackCache();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long commits;
+        public long aborts;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            commits = 0;
+            aborts = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        accountCache.clearAndReset();
+        putAndRollbackCache = new PutAndRollbackCache();
+        for (int i = 0; i < accounts; i++) {
+            Account account = new Account.Builder()
+                    .customerName("Joe Smith")
+                    .transaction(new AccountTransaction.Builder().type(CREDIT).amount(1000000).balance(1000000).build())
+                    .build();
+            accountCache.create(account);
+            putAndRollbackCache.create(account);
+        }
+    }
+
+    @Benchmark
+    public void compareAndSetCommit(Outcomes outcomes) {
+        transfer(accountCache::get, accountCache::update, outcomes);
+    }
+
+    @Benchmark
+    public void putAndRollbackCommit(Outcomes outcomes) {
+        transfer(putAndRollbackCache::get, putAndRollbackCache::update, outcomes);
+    }
+
+    private void transfer(Function<Integer, Account> getter, Function<Pair<Account, Account>, ?> updater, 
+            Outcomes outcomes) {
+        int from = ThreadLocalRandom.current().nextInt(accounts) + 1;
+        int to = from % accounts + 1;
+        Account fromAccount = getter.apply(from);
+        Account toAccount = getter.apply(to);
+        fromAccount.addTransaction(DEBIT, BigDecimal.ONE);
+        toAccount.addTransaction(CREDIT, BigDecimal.ONE);
+        try {
+            updater.apply(new ImmutablePair<Account, Account>(fromAccount, toAccount));
+            outcomes.commits++;
+        } catch (ConcurrentModificationException e) {
+            outcomes.aborts++;
+        }
+    }
+
+    /**
+     * The commit scheme used before {@link AccountCache} validated accounts ahead of publishing them.
+     */
+    private static class PutAndRollbackCache {
+        private AtomicInteger accountCounter = new AtomicInteger();
+        private AtomicInteger transactionCounter = new AtomicInteger();
+        private Map<Integer, Account> cache = new ConcurrentHashMap<>();
+        private AccountLocks locks = new AccountLocks();
+
+        void create(Account account) {
+            Account newAccount = new Account.Builder().copy(account).build();
+            newAccount.setNumber(accountCounter.incrementAndGet());
+            newAccount.setVersion(1);
+            setTransactionIds(newAccount);
+            cache.put(newAccount.getNumber(), newAccount);
+        }
+
+        Account get(Integer accountNo) {
+            return new Account.Builder().copy(cache.get(accountNo)).build();
+        }
+
+        Account update(Account account) {
+            Account newAccount = new Account.Builder().copy(account).build();
+            locks.lock(newAccount.getNumber());
+            try {
+                int expectedVersion = newAccount.getVersion();
+                newAccount.setVersion(expectedVersion + 1);
+                setTransactionIds(newAccount);
+                Account oldAccount = cache.put(newAccount.getNumber(), newAccount);
+                if (oldAccount.getVersion() != expectedVersion) {
+                    cache.put(oldAccount.getNumber(), oldAccount);
+                    throw new ConcurrentModificationException();
+                }
+                return newAccount;
+            } finally {
+                locks.unlock(newAccount.getNumber());
+            }
+        }
+
+        Pair<Account, Account> update(Pair<Account, Account> accounts) {
+            locks.lock(accounts.getLeft().getNumber(), accounts.getRight().getNumber());
+            try {
+                Account rollbackAccount = cache.get(accounts.getLeft().getNumber());
+                Account first = update(accounts.getLeft());
+                try {
+                    return new ImmutablePair<Account, Account>(first, update(accounts.getRight()));
+                } catch (ConcurrentModificationException e) {
+                    cache.put(rollbackAccount.getNumber(), rollbackAccount);
+                    throw e;
+                }
+            } finally {
+                locks.unlock(accounts.getLeft().getNumber(), accounts.getRight().getNumber());
+            }
+        }
+
+        private void setTransactionIds(Account account) {
+            List<AccountTransaction> transactions = account.getTransactions();
+            for (int i = account.getCommittedTransactionCount(); i < transactions.size(); i++) {
+                transactions.get(i).setId(transactionCounter.incrementAndGet());
+            }
+            account.markTransactionsCommitted();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copying an account with {@link Account.Builder#copy(Account)}, as every read and commit does, for growing histories.
+ * The copy shares the history of the original, so its time and allocation should not grow with the history.
+ * Part of the {@link HotPathBenchmarks}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountCopyBenchmark {
+
+    @Param({"1", "100", "10000", "1000000"})
+    private int history;
+
+    private Account account;
+
+    @Setup
+    public void setup() {
+        account = new Account.Builder().number(1).customerName("Joe Smith").build();
+        for (int i = 1; i <= history; i++) {
+            account.addTransactionInMinorUnits(CREDIT, 1);
+            account.getTransactions().get(i - 1).setId(i);
+        }
+        account.setVersion(history);
+        account.markTransactionsCommitted();
+    }
+
+    @Benchmark
+    public Account copy() {
+        return new Account.Builder().copy(account).build();
+    }
+}
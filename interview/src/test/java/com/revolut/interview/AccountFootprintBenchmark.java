@@ -0,0 +1,67 @@
+package com.revolut.interview;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory needed to hold accounts in an {@link AccountCache} against an {@link OffHeapAccountRepository}.
+ * Each invocation creates every account with one transaction, and reports the heap in use after a full GC 
+ * and the off-heap memory allocated as the <code>heapBytes</code> and <code>offHeapBytes</code> counters.
+ * 50M accounts need a large heap for the cache, e.g. <code>-jvmArgs -Xmx32g</code>, 
+ * and direct memory for the off-heap repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx32g", "-XX:MaxDirectMemorySize=8g"})
+public class AccountFootprintBenchmark {
+
+    @Param({"1000000", "50000000"})
+    private int accounts;
+
+    @Param({"cache", "offHeap"})
+    private String repository;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long heapBytes;
+        public long offHeapBytes;
+    }
+
+    @Benchmark
+    public Object createAccounts(Footprint footprint) {
+        AccountRepository accountRepository = "cache".equals(repository) ? new AccountCache() : new OffHeapAccountRepository();
+        for (int i = 0; i < accounts; i++) {
+            accountRepository.create(new Account.Builder()
+                    .customerName("Customer " + i)
+                    .transaction(new AccountTransaction.Builder()
+                            .type(TransactionType.CREDIT)
+                            .amount(100)
+                            .balance(100)
+                            .build())
+                    .build());
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        footprint.heapBytes = memory.getHeapMemoryUsage().getUsed();
+        footprint.offHeapBytes = accountRepository instanceof OffHeapAccountRepository
+                ? ((OffHeapAccountRepository) accountRepository).getAllocatedBytes() : 0;
+        return accountRepository;
+    }
+}
@@ -0,0 +1,90 @@
+package com.revolut.interview;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares looking up and replacing accounts by number in a {@link ConcurrentHashMap} against an {@link AccountIndex}.
+ * The map is given numbers boxed by autoboxing, exactly as the cache used to, so numbers above 127 are allocated.
+ * Run with <code>-prof gc</code> to see the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class AccountIndexBenchmark {
+
+    @Param({"1000000"})
+    private int accounts;
+
+    @Param({"concurrentHashMap", "accountIndex"})
+    private String index;
+
+    /** The percentage of operations in the mixed workload which replace an account rather than read it. */
+    @Param({"10", "50"})
+    private int writePercent;
+
+    private Map<Integer, Account> map;
+    private AccountIndex accountIndex;
+
+    @Setup
+    public void setup() {
+        map = new ConcurrentHashMap<>();
+        accountIndex = new AccountIndex();
+        for (int i = 1; i <= accounts; i++) {
+            Account account = new Account.Builder().number(i).customerName("Customer " + i).build();
+            if ("accountIndex".equals(index)) {
+                accountIndex.put(i, account);
+            } else {
+                map.put(i, account);
+            }
+        }
+    }
+
+    @Benchmark
+    public Account readOnly() {
+        return get(nextAccount());
+    }
+
+    @Benchmark
+    public Account mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int accountNo = nextAccount();
+        Account account = get(accountNo);
+        if (random.nextInt(100) < writePercent) {
+            // Replacing an account with itself keeps the workload stable without allocating a new account
+            if ("accountIndex".equals(index)) {
+                accountIndex.replace(accountNo, account, account);
+            } else {
+                map.replace(accountNo, account, account);
+            }
+        }
+        return account;
+    }
+
+    private Account get(int accountNo) {
+        return "accountIndex".equals(index) ? accountIndex.get(accountNo) : map.get(accountNo);
+    }
+
+    private int nextAccount() {
+        return 1 + ThreadLocalRandom.current().nextInt(accounts);
+    }
+}
@@ -0,0 +1,71 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AccountIndexTest {
+
+    private AccountIndex testee = new AccountIndex();
+
+    @Test
+    public void testPutAndGet() {
+        Account first = createAccount(1);
+        Account far = createAccount(3 << AccountIndex.SEGMENT_BITS);
+
+        assertThat(testee.put(1, first)).isNull();
+        assertThat(testee.put(3 << AccountIndex.SEGMENT_BITS, far)).isNull();
+
+        assertThat(testee.get(1)).isSameAs(first);
+        assertThat(testee.get(Integer.valueOf(3 << AccountIndex.SEGMENT_BITS))).isSameAs(far);
+        assertThat(testee.get(2)).isNull();
+        assertThat(testee.get(Integer.MAX_VALUE)).isNull();
+        assertThat(testee.get(-1)).isNull();
+        assertThat(testee.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testReplaceAndRemoveOnlyExpectedAccount() {
+        Account first = createAccount(1);
+        Account second = createAccount(1);
+        testee.put(1, first);
+
+        assertThat(testee.replace(1, second, second)).isFalse();
+        assertThat(testee.replace(1, first, second)).isTrue();
+        assertThat(testee.replace(2, null, second)).isFalse();
+        assertThat(testee.remove(1, first)).isFalse();
+        assertThat(testee.remove(1, second)).isTrue();
+
+        assertThat(testee.get(1)).isNull();
+        assertThat(testee.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testIterateInAccountNumberOrder() {
+        Account first = createAccount(5);
+        Account second = createAccount(70000);
+        Account last = createAccount(Integer.MAX_VALUE);
+        testee.put(Integer.MAX_VALUE, last);
+        testee.put(70000, second);
+        testee.put(5, first);
+
+        assertThat(testee.values()).containsExactly(first, second, last);
+        assertThat(testee.keySet()).containsExactly(5, 70000, Integer.MAX_VALUE);
+        assertThat(testee.entrySet()).extracting(Map.Entry::getValue).containsExactly(first, second, last);
+
+        testee.clear();
+        assertThat(testee.values()).isEmpty();
+        assertThat(testee.get(5)).isNull();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPutNegativeAccountNumber() {
+        testee.put(-1, createAccount(-1));
+    }
+
+    private Account createAccount(int number) {
+        return new Account.Builder().number(number).customerName("Joe Smith").build();
+    }
+}
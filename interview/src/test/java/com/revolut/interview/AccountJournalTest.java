@@ -0,0 +1,220 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.AccountTestUtils.assertTransaction;
+import static com.revolut.interview.TransactionType.CREDIT;
+import static com.revolut.interview.TransactionType.DEBIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccountJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AccountJournal journal;
+    private AccountCache testee;
+
+    @Before
+    public void open() {
+        reopen();
+    }
+
+    @After
+    public void close() {
+        journal.close();
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndJournalTail() throws IOException {
+        testee.create(createAccount("Joe Smith", 100));
+        testee.create(createAccount("Jane Smith", 50));
+        transfer(1, 2, 30);
+        testee.snapshot();
+        transfer(2, 1, 5);
+        testee.create(createAccount("Jim Smith", 0));
+
+        reopen();
+
+        assertThat(files("segment-")).hasSize(2);
+        Account firstAccount = testee.get(1);
+        assertThat(firstAccount.getCustomerName()).isEqualTo("Joe Smith");
+        assertThat(firstAccount.getVersion()).isEqualTo(3);
+        assertThat(firstAccount.getCurrentBalance()).isEqualTo(new BigDecimal(75));
+        assertTransaction(firstAccount.getTransactions().get(1), 3, DEBIT, 30, 70);
+        assertTransaction(firstAccount.getTransactions().get(2), 6, CREDIT, 5, 75);
+        assertThat(testee.get(2).getCurrentBalance()).isEqualTo(new BigDecimal(75));
+        assertThat(testee.get(3).getCustomerName()).isEqualTo("Jim Smith");
+        assertThat(testee.create(createAccount("Jo Smith", 10)).getNumber()).isEqualTo(4);
+    }
+
+    @Test
+    public void testOnlyLatestSnapshotsAndTheirJournalAreKept() throws IOException {
+        testee.create(createAccount("Joe Smith", 100));
+        testee.snapshot();
+        testee.create(createAccount("Jane Smith", 50));
+        testee.snapshot();
+        testee.create(createAccount("Jim Smith", 10));
+        testee.snapshot();
+
+        assertThat(files("snapshot-")).hasSize(2);
+        assertThat(files("segment-")).hasSize(2);
+
+        reopen();
+
+        assertThat(testee.get(3).getCurrentBalance()).isEqualTo(new BigDecimal(10));
+    }
+
+    @Test
+    public void testRecoverFromPreviousSnapshotWhenLatestIsCorrupt() throws IOException {
+        testee.create(createAccount("Joe Smith", 100));
+        testee.snapshot();
+        testee.create(createAccount("Jane Smith", 50));
+        transfer(1, 2, 20);
+        testee.snapshot();
+
+        List<Path> snapshots = files("snapshot-");
+        try (RandomAccessFile file = new RandomAccessFile(snapshots.get(snapshots.size() - 1).toFile(), "rw")) {
+            file.seek(file.length() - 10);
+            file.write(0xFF);
+        }
+
+        reopen();
+
+        assertThat(testee.get(1).getCurrentBalance()).isEqualTo(new BigDecimal(80));
+        assertThat(testee.get(2).getCurrentBalance()).isEqualTo(new BigDecimal(70));
+    }
+
+    @Test
+    public void testSnapshotKeepsHighWaterMarkOfIdBlocks() {
+        journal.close();
+        journal = new AccountJournal(new Journal.Builder().directory(folder.getRoot().toPath()).build());
+        Map<Integer, Account> accounts = new HashMap<>();
+        IdAllocator accountIds = new IdAllocator(100);
+        IdAllocator transactionIds = new IdAllocator(100);
+        journal.recover(accounts, accountIds, transactionIds);
+        assertThat(accountIds.next()).isEqualTo(1);
+        assertThat(transactionIds.next()).isEqualTo(1);
+        journal.snapshot(accounts.values(), accountIds, transactionIds);
+        journal.close();
+
+        journal = new AccountJournal(new Journal.Builder().directory(folder.getRoot().toPath()).build());
+        accountIds = new IdAllocator(100);
+        transactionIds = new IdAllocator(100);
+        journal.recover(accounts, accountIds, transactionIds);
+
+        // Ids in the blocks reserved before the snapshot are never handed out again
+        assertThat(accountIds.next()).isEqualTo(101);
+        assertThat(transactionIds.next()).isEqualTo(101);
+    }
+
+    @Test
+    public void testRecoversIdempotencyKeysFromSnapshotAndJournal() {
+        testee.create(createAccount("Joe Smith", 100));
+        testee.create(createAccount("Jane Smith", 50));
+        transfer(1, 2, 10, "transfer-\u00e9");
+        testee.snapshot();
+        transfer(2, 1, 5, null);
+        transfer(2, 1, 5, "transfer-2");
+
+        reopen();
+
+        assertThat(testee.get(1).getTransactions().get(1).getIdempotencyKey()).isEqualTo("transfer-\u00e9");
+        assertThat(testee.get(2).getTransactions().get(2).getIdempotencyKey()).isNull();
+        assertThat(testee.getRecoveredTransfers()).extracting(FundTransferRequest::getIdempotencyKey)
+                .containsExactly("transfer-\u00e9", "transfer-2");
+        FundTransferRequest recovered = testee.getRecoveredTransfers().get(0);
+        assertThat(recovered.getFromAccountNo()).isEqualTo(1);
+        assertThat(recovered.getToAccountNo()).isNull();
+        assertThat(recovered.getAmount()).isEqualTo(new BigDecimal(10));
+    }
+
+    @Test
+    public void testRecoversOnlyMostRecentTransfers() {
+        reopen(2);
+        testee.create(createAccount("Joe Smith", 100));
+        testee.create(createAccount("Jane Smith", 50));
+        transfer(1, 2, 10, "transfer-1");
+        transfer(1, 2, 10, "transfer-2");
+        transfer(1, 2, 10, "transfer-3");
+        testee.snapshot();
+        transfer(1, 2, 10, "transfer-4");
+
+        reopen(2);
+
+        assertThat(testee.getRecoveredTransfers()).extracting(FundTransferRequest::getIdempotencyKey)
+                .containsExactly("transfer-3", "transfer-4");
+    }
+
+    @Test
+    public void testRecoversSubLedgersOfHotAccounts() {
+        testee.create(createAccount("Joe Smith", 100));
+        testee.create(new Account.Builder().subLedgerOf(1).build());
+        testee.snapshot();
+        testee.create(new Account.Builder().subLedgerOf(1).build());
+
+        reopen();
+
+        assertThat(testee.getRecoveredSubLedgers()).extracting(Account::getNumber).containsExactlyInAnyOrder(2, 3);
+        assertThat(testee.getRecoveredSubLedgers()).extracting(Account::getSubLedgerOf).containsOnly(1);
+        assertThat(testee.get(1).getSubLedgerOf()).isNull();
+    }
+
+    private void reopen() {
+        reopen(IdempotencyCache.DEFAULT_MAX_KEYS);
+    }
+
+    private void reopen(int recentTransfers) {
+        if (journal != null) {
+            journal.close();
+        }
+        journal = new AccountJournal(new Journal.Builder().directory(folder.getRoot().toPath()).build(), recentTransfers);
+        testee = new AccountCache(journal);
+    }
+
+    private void transfer(Integer fromAccountNo, Integer toAccountNo, int amount) {
+        transfer(fromAccountNo, toAccountNo, amount, null);
+    }
+
+    private void transfer(Integer fromAccountNo, Integer toAccountNo, int amount, String idempotencyKey) {
+        Account fromAccount = testee.get(fromAccountNo);
+        fromAccount.addTransactionInMinorUnits(DEBIT, Money.toMinorUnits(new BigDecimal(amount)), idempotencyKey);
+        Account toAccount = testee.get(toAccountNo);
+        toAccount.addTransaction(CREDIT, new BigDecimal(amount));
+        testee.update(new ImmutablePair<Account, Account>(fromAccount, toAccount));
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Account createAccount(String customerName, int deposit) {
+        return new Account.Builder()
+                .customerName(customerName)
+                .overdraftLimit(0)
+                .transaction(new AccountTransaction.Builder()
+                        .type(CREDIT)
+                        .amount(deposit)
+                        .balance(deposit)
+                        .build())
+                .build();
+    }
+}
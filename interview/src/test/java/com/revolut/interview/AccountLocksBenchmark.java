@@ -0,0 +1,85 @@
+package com.revolut.interview;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares locking a pair of accounts with the previous synchronized(Integer) approach against {@link AccountLocks}.
+ * The previous approach locks on a number boxed by {@link Integer#valueOf(int)}, exactly as a deserialized request
+ * would hold it, so only numbers outside the Integer cache are distinct instances.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class AccountLocksBenchmark {
+
+    @Param({"2", "1000"})
+    private int accounts;
+
+    private AccountLocks locks;
+    private long[] balances;
+
+    @Setup
+    public void setup() {
+        locks = new AccountLocks();
+        balances = new long[accounts + 1];
+    }
+
+    @TearDown
+    public void report() {
+        System.out.printf("%nStripe acquisitions %d, contended %d%n", locks.getAcquisitions(), locks.getContentions());
+    }
+
+    @Benchmark
+    @SuppressWarnings("synchronization")
+    public long synchronizedOnBoxedNumber() {
+        Integer first = Integer.valueOf(nextAccount());
+        Integer second = Integer.valueOf(nextAccount());
+        boolean reverse = first > second;
+        synchronized (reverse ? second : first) {
+            synchronized (reverse ? first : second) {
+                return transfer(first, second);
+            }
+        }
+    }
+
+    @Benchmark
+    public long stripedLocks() {
+        Integer first = nextAccount();
+        Integer second = nextAccount();
+        locks.lock(first, second);
+        try {
+            return transfer(first, second);
+        } finally {
+            locks.unlock(first, second);
+        }
+    }
+
+    private int nextAccount() {
+        return ThreadLocalRandom.current().nextInt(accounts) + 1;
+    }
+
+    private long transfer(int from, int to) {
+        balances[from]--;
+        balances[to]++;
+        return balances[to];
+    }
+}
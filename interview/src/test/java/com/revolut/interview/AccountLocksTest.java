@@ -0,0 +1,65 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AccountLocksTest {
+
+    private AccountLocks testee = new AccountLocks(16);
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testStripesMustBePowerOfTwo() {
+        new AccountLocks(12);
+    }
+
+    @Test
+    public void testSameAccountAlwaysMapsToSameStripe() {
+        assertThat(testee.stripeOf(Integer.valueOf(1000))).isEqualTo(testee.stripeOf(Integer.valueOf(1000)));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(testee.stripeOf(i)).isBetween(0, 15);
+        }
+    }
+
+    @Test
+    public void testLockingTwoAccountsInSameStripe() {
+        Integer first = 1;
+        Integer second = 1 + findAccountInSameStripe(first);
+
+        testee.lock(first, second);
+        testee.unlock(first, second);
+
+        assertThat(testee.getAcquisitions()).isEqualTo(1);
+    }
+
+    @Test
+    public void testOppositeOrderTransfersDoNotDeadlock() throws InterruptedException {
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        CountDownLatch finished = new CountDownLatch(10000);
+        for (int i = 0; i < 10000; i++) {
+            boolean reverse = i % 2 == 0;
+            service.submit(() -> {
+                testee.lock(reverse ? 2 : 1, reverse ? 1 : 2);
+                testee.unlock(reverse ? 2 : 1, reverse ? 1 : 2);
+                finished.countDown();
+            });
+        }
+        service.shutdown();
+
+        assertThat(finished.await(1, TimeUnit.MINUTES)).isTrue();
+        assertThat(testee.getAcquisitions()).isEqualTo(testee.stripeOf(1) == testee.stripeOf(2) ? 10000 : 20000);
+    }
+
+    private int findAccountInSameStripe(Integer accountNo) {
+        for (int i = 1; ; i++) {
+            if (testee.stripeOf(accountNo + i) == testee.stripeOf(accountNo)) {
+                return i;
+            }
+        }
+    }
+}
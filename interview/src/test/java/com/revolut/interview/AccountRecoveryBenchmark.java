@@ -0,0 +1,90 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup time of a journaled {@link AccountCache}, recovering from a snapshot against replaying the whole journal.
+ * Every account has one transaction, and 10M accounts need a heap of several GB, e.g. <code>-jvmArgs -Xmx8g</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class AccountRecoveryBenchmark {
+
+    @Param({"10000000"})
+    private int accounts;
+
+    @Param({"snapshot", "journal"})
+    private String recoverFrom;
+
+    private Path directory;
+    private AccountJournal journal;
+
+    @Setup(Level.Trial)
+    public void writeAccounts() throws IOException {
+        directory = Files.createTempDirectory("account-recovery");
+        AccountJournal journal = createJournal();
+        AccountCache cache = new AccountCache(journal);
+        for (int i = 0; i < accounts; i++) {
+            cache.create(new Account.Builder()
+                    .customerName("Customer " + i)
+                    .transaction(new AccountTransaction.Builder()
+                            .type(TransactionType.CREDIT)
+                            .amount(100)
+                            .balance(100)
+                            .build())
+                    .build());
+        }
+        if ("snapshot".equals(recoverFrom)) {
+            cache.snapshot();
+        }
+        journal.close();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJournal() {
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteAccounts() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public AccountCache recover() {
+        journal = createJournal();
+        return new AccountCache(journal);
+    }
+
+    private AccountJournal createJournal() {
+        return new AccountJournal(new Journal.Builder()
+                .directory(directory)
+                .fsyncPolicy(Journal.FsyncPolicy.OS)
+                .build());
+    }
+}
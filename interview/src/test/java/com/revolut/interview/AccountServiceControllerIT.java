@@ -1,12 +1,18 @@
 package com.revolut.interview;
 
 import static com.revolut.interview.AccountTestUtils.assertTransaction;
+import static com.revolut.interview.AccountTestUtils.createFundTransferRequest;
 import static com.revolut.interview.TransactionType.CREDIT;
 import static com.revolut.interview.TransactionType.DEBIT;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
 
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -33,6 +39,82 @@ public class AccountServiceControllerIT extends AccountServiceControllerITBase {
         assertTransaction(toAccount.getTransactions().get(1), 4, CREDIT, 1100, 1200);
     }
 
+    @Test
+    public void testTransferBatch() {
+        addAccountAndCheck("Joe Smith", 0, 100);
+        addAccountAndCheck("Fred Blogs", 0, 100);
+        FundTransferBatchRequest request = new FundTransferBatchRequest();
+        request.setTransfers(Arrays.asList(
+                createFundTransferRequest(1, 2, 60), 
+                createFundTransferRequest(1, 2, 60), 
+                createFundTransferRequest(2, 1, 10)));
+        
+        List<FundTransferResult> results = target("accounts/transfers").request()
+                .post(Entity.entity(request, MediaType.APPLICATION_JSON), new GenericType<List<FundTransferResult>>() {});
+        
+        assertThat(results).extracting("success").containsExactly(true, false, true);
+        assertThat(getAccount(1).getCurrentBalance()).isEqualTo(new BigDecimal(50));
+        assertThat(getAccount(2).getCurrentBalance()).isEqualTo(new BigDecimal(150));
+    }
+
+    @Test
+    public void testGetAccountSummary() {
+        addAccountAndCheck("Joe Smith", 1000, 100);
+        addAccountAndCheck("Fred Blogs", 0, 0);
+        transferFunds(1, 2, 30);
+        
+        AccountSummary summary = target("accounts/1/summary").request().get(AccountSummary.class);
+        
+        assertThat(summary.getNumber()).isEqualTo(1);
+        assertThat(summary.getCustomerName()).isEqualTo("Joe Smith");
+        assertThat(summary.getCurrentBalance()).isEqualTo(new BigDecimal(70));
+        assertThat(summary.getOverdraftLimit()).isEqualTo(new BigDecimal(1000));
+        assertThat(summary.getVersion()).isEqualTo(2);
+    }
+    
+    @Test
+    public void testPageThroughTransactions() {
+        addAccountAndCheck("Joe Smith", 0, 100);
+        addAccountAndCheck("Fred Blogs", 0, 100);
+        for (int i = 0; i < 4; i++) {
+            transferFunds(1, 2, 10);
+        }
+        
+        TransactionPage firstPage = target("accounts/1/transactions").queryParam("limit", 3).request()
+                .get(TransactionPage.class);
+        assertThat(firstPage.getTransactions()).extracting("id").containsExactly(1, 3, 5);
+        assertThat(firstPage.getNextCursor()).isEqualTo(5);
+        
+        TransactionPage lastPage = target("accounts/1/transactions").queryParam("limit", 3)
+                .queryParam("after", firstPage.getNextCursor()).request().get(TransactionPage.class);
+        assertThat(lastPage.getTransactions()).extracting("id").containsExactly(7, 9);
+        assertTransaction(lastPage.getTransactions().get(1), 9, DEBIT, 10, 60);
+        assertThat(lastPage.getNextCursor()).isNull();
+    }
+    
+    @Test
+    public void testStreamTransactions() {
+        addAccountAndCheck("Joe Smith", 0, 100);
+        addAccountAndCheck("Fred Blogs", 0, 100);
+        transferFunds(1, 2, 12);
+        
+        String lines = target("accounts/2/transactions").queryParam("after", 2).request(AccountServiceController.APPLICATION_NDJSON)
+                .get(String.class);
+        
+        assertThat(lines).isEqualTo("{\"amount\":12,\"balance\":112,\"id\":4,\"type\":\"CREDIT\"}\n");
+        assertThat(target("accounts/2/transactions").request(AccountServiceController.APPLICATION_NDJSON).get(String.class))
+                .isEqualTo("{\"amount\":100,\"balance\":100,\"id\":2,\"type\":\"CREDIT\"}\n" + lines);
+    }
+    
+    @Test
+    public void testInvalidPageLimitIsHandled() {
+        addAccountAndCheck("Joe Smith", 0, 100);
+        
+        Response response = target("accounts/1/transactions").queryParam("limit", 0).request().get();
+        
+        assertThat(response.getStatus()).isEqualTo(Status.BAD_REQUEST.getStatusCode());
+    }
+
     @Test
     public void testNegativeDepositErrorIsHandled() {
         Response response = addAccount("Joe Smith", 1000, -100);
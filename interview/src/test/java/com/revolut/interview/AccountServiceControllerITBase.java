@@ -10,21 +10,44 @@ import javax.ws.rs.core.Application;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
-import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.test.JerseyTest;
-import org.junit.Before;
+import org.junit.After;
 
 public class AccountServiceControllerITBase extends JerseyTest {
+    
+    private static final String BLOCK_SIZE_PROPERTY = "ids.blockSize";
+    
+    private AccountService accountService;
+    private boolean sequentialIds;
         
+    /**
+     * The service under test is chosen by the same system properties as {@link AccountServiceInitializer},
+     * except that transaction ids are handed out in sequence unless set otherwise, so the tests know the ids to expect
+     */
     @Override
     protected Application configure() {
-        return new ResourceConfig(AccountServiceController.class);
+        if (System.getProperty(BLOCK_SIZE_PROPERTY) == null) {
+            System.setProperty(BLOCK_SIZE_PROPERTY, "1");
+            sequentialIds = true;
+        }
+        accountService = AccountServiceInitializer.createAccountService();
+        return AccountServiceInitializer.createResourceConfig(accountService);
+    }
+    
+    @Override
+    protected void configureClient(ClientConfig config) {
+        AccountServiceInitializer.registerJsonCodecs(config);
     }
     
-    @Before
-    public void clearCache() {
-        // Need to do this so all test classes can run in one execution
-        AccountCache.clearAndReset();
+    @After
+    public void closeService() throws Exception {
+        if (sequentialIds) {
+            System.clearProperty(BLOCK_SIZE_PROPERTY);
+        }
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
     }
 
     protected Account getAccount(Integer accountNo) {
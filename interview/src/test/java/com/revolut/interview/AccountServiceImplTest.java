@@ -6,13 +6,25 @@ import static com.revolut.interview.TransactionType.CREDIT;
 import static com.revolut.interview.TransactionType.DEBIT;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -27,6 +39,14 @@ public class AccountServiceImplTest {
     @InjectMocks
     private AccountService testee = new AccountServiceImpl();
     
+    @InjectMocks
+    private AccountServiceImpl retryingTestee = new AccountServiceImpl(new RetryPolicy.Builder()
+            .maxAttempts(3)
+            .initialBackoffMillis(0)
+            .maxBackoffMillis(0)
+            .pessimisticAfter(1)
+            .build());
+    
     @Mock
     private AccountRepository mockRepo;
         
@@ -43,7 +63,7 @@ public class AccountServiceImplTest {
     private ArgumentCaptor<Account> accountToCaptor;
     
     @Captor 
-    private ArgumentCaptor<Pair<Account, Account>> accountsToCaptor;
+    private ArgumentCaptor<List<Account>> accountListCaptor;
     
     @Test
     public void testCreateAccount() {
@@ -71,7 +91,6 @@ public class AccountServiceImplTest {
 
     }
     
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     @Test
     public void testTransfer() {
         Account toRepoFromAccount = new Account.Builder()
@@ -81,38 +100,252 @@ public class AccountServiceImplTest {
                                         .balance(100)
                                         .build())
                                 .build();
-        Account toRepoToAccount = new Account.Builder()
-                                .number(2)
-                                .transaction(new AccountTransaction.Builder()
-                                        .balance(200)
-                                        .build())
-                                .build();
         
-        Account updatedRepoFromAccount = new Account.Builder().build();
-        Account updatedRepoToAccount = new Account.Builder().build();
-
         when(mockRepo.get(1)).thenReturn(toRepoFromAccount);
-        when(mockRepo.get(2)).thenReturn(toRepoToAccount);
-        when(mockRepo.update(new ImmutablePair(toRepoFromAccount, toRepoToAccount)))
-                .thenReturn(new ImmutablePair(updatedRepoFromAccount, updatedRepoToAccount));
         
         this.testee.transfer(createFundTransferRequest(1, 2, 300));
 
-        verify(mockRepo).update(accountsToCaptor.capture());
+        // Only the debited account is read, the credit is applied by the repository to the account as it is then
+        verify(mockRepo).updateAndCredit(accountFromCaptor.capture(), eq(2), eq(30000L));
+        verify(mockRepo, never()).get(2);
 
-        Account fromAccountSavedToRepo = accountsToCaptor.getValue().getLeft();
+        Account fromAccountSavedToRepo = accountFromCaptor.getValue();
         assertThat(fromAccountSavedToRepo.getNumber()).isEqualTo(1);
         assertThat(fromAccountSavedToRepo.getOverdraftLimit()).isEqualTo(new BigDecimal(200));
         assertThat(fromAccountSavedToRepo.getTransactions()).hasSize(2);
         assertThat(fromAccountSavedToRepo.getTransactions().get(0).getBalance()).isEqualTo(new BigDecimal(100));
         assertTransaction(fromAccountSavedToRepo.getTransactions().get(1), null, DEBIT, 300, -200);
-
-        Account toAccountSavedToRepo = accountsToCaptor.getValue().getRight();
-        assertThat(toAccountSavedToRepo.getNumber()).isEqualTo(2);
-        assertThat(toAccountSavedToRepo.getOverdraftLimit()).isEqualTo(BigDecimal.ZERO);
-        assertThat(toAccountSavedToRepo.getTransactions()).hasSize(2);
-        assertThat(toAccountSavedToRepo.getTransactions().get(0).getBalance()).isEqualTo(new BigDecimal(200));
-        assertTransaction(toAccountSavedToRepo.getTransactions().get(1), null, CREDIT, 300, 500);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testTransferBatchCommitsEachAccountOnce() {
+        when(mockRepo.get(1)).thenReturn(createAccount(1, 100));
+        when(mockRepo.get(2)).thenReturn(createAccount(2, 200));
+        when(mockRepo.get(3)).thenReturn(createAccount(3, 0));
+        
+        List<FundTransferResult> results = this.testee.transferBatch(Arrays.asList(
+                createFundTransferRequest(1, 2, 50), 
+                createFundTransferRequest(2, 3, 250),
+                createFundTransferRequest(1, 3, 51)), false);
+        
+        assertThat(results).extracting("success").containsExactly(true, true, false);
+        assertThat(results.get(2).getMessage()).startsWith("Insufficient funds in account 1");
+        verify(mockRepo, times(1)).get(1);
+        verify(mockRepo, times(1)).get(2);
+        verify(mockRepo).update(accountListCaptor.capture());
+        
+        List<Account> accountsSavedToRepo = accountListCaptor.getValue();
+        assertThat(accountsSavedToRepo).extracting("number").containsExactly(1, 2, 3);
+        assertTransaction(accountsSavedToRepo.get(0).getTransactions().get(1), null, DEBIT, 50, 50);
+        assertThat(accountsSavedToRepo.get(1).getTransactions()).hasSize(3);
+        assertTransaction(accountsSavedToRepo.get(1).getTransactions().get(2), null, DEBIT, 250, 0);
+        assertTransaction(accountsSavedToRepo.get(2).getTransactions().get(1), null, CREDIT, 250, 250);
+    }
+    
+    @Test
+    public void testAtomicTransferBatchAppliesNothingOnFailure() {
+        when(mockRepo.get(1)).thenReturn(createAccount(1, 100));
+        when(mockRepo.get(2)).thenReturn(createAccount(2, 200));
+        
+        List<FundTransferResult> results = this.testee.transferBatch(Arrays.asList(
+                createFundTransferRequest(1, 2, 50), 
+                createFundTransferRequest(1, 2, 51)), true);
+        
+        assertThat(results).extracting("success").containsExactly(false, false);
+        verify(mockRepo, never()).update(anyListOf(Account.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testTransferRetriesWithLocksAfterAbort() {
+        when(mockRepo.get(1)).thenReturn(createAccount(1, 100), createAccount(1, 100));
+        when(mockRepo.updateAndCredit(any(Account.class), eq(2), eq(5000L)))
+                .thenThrow(new ConcurrentModificationException())
+                .thenReturn(null);
+        when(mockRepo.withLocks(any(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArguments()[1]).get());
+        
+        this.retryingTestee.transfer(createFundTransferRequest(1, 2, 50));
+        
+        verify(mockRepo, times(2)).updateAndCredit(any(Account.class), eq(2), eq(5000L));
+        verify(mockRepo).withLocks(eq(Arrays.asList(1, 2)), any());
+        ConflictMetrics metrics = this.retryingTestee.getConflictMetrics();
+        assertThat(metrics.getAttempts(1)).isEqualTo(2);
+        assertThat(metrics.getAborts(2)).isEqualTo(1);
+        assertThat(metrics.getFailures(1)).isEqualTo(0);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testTransferFailsWhenRetriesRunOut() {
+        when(mockRepo.get(1)).thenAnswer(invocation -> createAccount(1, 100));
+        when(mockRepo.updateAndCredit(any(Account.class), eq(2), eq(5000L))).thenThrow(new ConcurrentModificationException());
+        when(mockRepo.withLocks(any(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArguments()[1]).get());
+        
+        try {
+            this.retryingTestee.transfer(createFundTransferRequest(1, 2, 50));
+            Assert.fail("Expecting transfer to fail once retries run out!");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        
+        verify(mockRepo, times(3)).updateAndCredit(any(Account.class), eq(2), eq(5000L));
+        assertThat(this.retryingTestee.getConflictMetrics().getAborts(1)).isEqualTo(3);
+        assertThat(this.retryingTestee.getConflictMetrics().getFailures(2)).isEqualTo(1);
+    }
+    
+    @Test
+    public void testTransferWithSameIdempotencyKeyIsOnlyAppliedOnce() {
+        AccountServiceImpl keyedTestee = new AccountServiceImpl(new AccountCache(), RetryPolicy.noRetries());
+        keyedTestee.createAccount(createNewAccountRequest(100));
+        keyedTestee.createAccount(createNewAccountRequest(0));
+        FundTransferRequest transferRequest = createFundTransferRequest(1, 2, 40);
+        transferRequest.setIdempotencyKey("transfer-1");
+        
+        keyedTestee.transfer(transferRequest);
+        keyedTestee.transferAsync(transferRequest).join();
+        keyedTestee.transfer(transferRequest);
+        
+        Account fromAccount = keyedTestee.getAccount(1);
+        assertThat(fromAccount.getCurrentBalance()).isEqualTo(new BigDecimal(60));
+        assertThat(fromAccount.getTransactions().get(1).getIdempotencyKey()).isEqualTo("transfer-1");
+        assertThat(keyedTestee.getAccount(2).getCurrentBalance()).isEqualTo(new BigDecimal(40));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testTransferWithIdempotencyKeyCanBeRetriedAfterAbort() {
+        AccountServiceImpl keyedTestee = new AccountServiceImpl(mockRepo, RetryPolicy.noRetries());
+        when(mockRepo.get(1)).thenAnswer(invocation -> createAccount(1, 100));
+        when(mockRepo.updateAndCredit(any(Account.class), eq(2), eq(5000L)))
+                .thenThrow(new ConcurrentModificationException())
+                .thenReturn(null);
+        FundTransferRequest transferRequest = createFundTransferRequest(1, 2, 50);
+        transferRequest.setIdempotencyKey("transfer-1");
+        
+        try {
+            keyedTestee.transfer(transferRequest);
+            Assert.fail("Expecting the first attempt to be aborted!");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        keyedTestee.transfer(transferRequest);
+        keyedTestee.transfer(transferRequest);
+        
+        verify(mockRepo, times(2)).updateAndCredit(any(Account.class), eq(2), eq(5000L));
+    }
+    
+    @Test
+    public void testIdempotencyKeysAreRecoveredFromRepository() {
+        FundTransferRequest recoveredTransfer = createFundTransferRequest(1, null, 50);
+        recoveredTransfer.setIdempotencyKey("transfer-1");
+        when(mockRepo.getRecoveredTransfers()).thenReturn(Arrays.asList(recoveredTransfer));
+        AccountServiceImpl keyedTestee = new AccountServiceImpl(mockRepo, RetryPolicy.noRetries());
+        FundTransferRequest transferRequest = createFundTransferRequest(1, 2, 50);
+        transferRequest.setIdempotencyKey("transfer-1");
+        
+        keyedTestee.transfer(transferRequest);
+        
+        verify(mockRepo, never()).get(any());
+    }
+    
+    @Test
+    public void testContendedAccountIsSplitIntoSubLedgers() {
+        AccountCache abortingOnce = new AccountCache() {
+            private boolean aborted;
+            
+            @Override
+            public Pair<Account, Account> updateAndCredit(Account account, Integer creditAccountNo, long amount) {
+                if (!aborted) {
+                    aborted = true;
+                    throw new ConcurrentModificationException();
+                }
+                return super.updateAndCredit(account, creditAccountNo, amount);
+            }
+        };
+        AccountServiceImpl hotTestee = new AccountServiceImpl(abortingOnce, new RetryPolicy.Builder()
+                .maxAttempts(2).initialBackoffMillis(0).maxBackoffMillis(0).build(), 
+                Runnable::run, new IdempotencyCache(), new HotAccounts(4, 1, 0.5));
+        hotTestee.createAccount(createNewAccountRequest(100));
+        hotTestee.createAccount(createNewAccountRequest(0));
+        
+        hotTestee.transfer(createFundTransferRequest(1, 2, 10));
+        int[] subLedgers = hotTestee.getHotAccounts().subLedgersOf(2);
+        assertThat(subLedgers).hasSize(4);
+        for (int i = 0; i < 8; i++) {
+            hotTestee.transfer(createFundTransferRequest(1, 2, 5));
+        }
+        hotTestee.transfer(createFundTransferRequest(2, 1, 45));
+        try {
+            hotTestee.transfer(createFundTransferRequest(2, 2, 1));
+            Assert.fail("Expecting a hot account transferring to itself to be rejected!");
+        } catch (IllegalArgumentException e) {
+            // expected, even though the credit would have gone to a sub-ledger
+        }
+        
+        // The debit could not be covered by the account on its own, so the sub-ledgers were swept into it first
+        Account hotAccount = hotTestee.getAccount(2);
+        int transactions = hotAccount.getTransactions().size();
+        assertThat(hotAccount.getCurrentBalance()).isEqualTo(new BigDecimal(5));
+        assertThat(transactions).isBetween(12, 15);
+        assertThat(hotAccount.getTransactions().get(8).getBalance()).isEqualTo(new BigDecimal(50));
+        assertTransaction(hotAccount.getTransactions().get(transactions - 2), hotAccount.getLastTransactionId() - 1, CREDIT, 40, 50);
+        assertTransaction(hotAccount.getTransactions().get(transactions - 1), hotAccount.getLastTransactionId(), DEBIT, 45, 5);
+        for (int subLedger : subLedgers) {
+            assertThat(abortingOnce.get(subLedger).getCurrentBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+        }
+        assertThat(hotTestee.getAccount(1).getCurrentBalance()).isEqualTo(new BigDecimal(95));
+        try {
+            hotTestee.getAccount(subLedgers[0]);
+            Assert.fail("Expecting sub-ledgers to be hidden!");
+        } catch (NullPointerException e) {
+            assertThat(e.getMessage()).isEqualTo("Account number " + subLedgers[0] + " is not valid!");
+        }
+    }
+    
+    @Test
+    public void testBatchCreditsHotAccountThroughSubLedgersAndSweepsThemForDebit() {
+        AccountCache accountRepo = new AccountCache();
+        HotAccounts hotAccounts = new HotAccounts(2, 1, 0.5);
+        AccountServiceImpl hotTestee = new AccountServiceImpl(accountRepo, RetryPolicy.noRetries(), 
+                Runnable::run, new IdempotencyCache(), hotAccounts);
+        hotTestee.createAccount(createNewAccountRequest(100));
+        hotTestee.createAccount(createNewAccountRequest(0));
+        hotAccounts.split(2, subLedger -> accountRepo.create(subLedger).getNumber());
+        int[] subLedgers = hotAccounts.subLedgersOf(2);
+        
+        hotTestee.transferBatch(Arrays.asList(createFundTransferRequest(1, 2, 10), createFundTransferRequest(1, 2, 20)), true);
+        
+        assertThat(accountRepo.get(2).getCurrentBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(accountRepo.get(subLedgers[0]).getCurrentBalance().add(accountRepo.get(subLedgers[1]).getCurrentBalance()))
+                .isEqualByComparingTo(new BigDecimal(30));
+        assertThat(hotTestee.getAccount(2).getCurrentBalance()).isEqualByComparingTo(new BigDecimal(30));
+        
+        List<FundTransferResult> results = hotTestee.transferBatch(Arrays.asList(createFundTransferRequest(2, 1, 25)), true);
+        
+        assertThat(results.get(0).isSuccess()).isTrue();
+        assertThat(accountRepo.get(2).getCurrentBalance()).isEqualByComparingTo(new BigDecimal(5));
+        for (int subLedger : subLedgers) {
+            assertThat(accountRepo.get(subLedger).getCurrentBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+        }
+        assertThat(hotTestee.getAccount(2).getCurrentBalance()).isEqualByComparingTo(new BigDecimal(5));
+        assertThat(hotTestee.getAccount(1).getCurrentBalance()).isEqualByComparingTo(new BigDecimal(95));
+    }
+    
+    private NewAccountRequest createNewAccountRequest(int initialDeposit) {
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setInitialDeposit(new BigDecimal(initialDeposit));
+        return request;
+    }
+    
+    private Account createAccount(Integer number, Integer balance) {
+        return new Account.Builder()
+                .number(number)
+                .transaction(new AccountTransaction.Builder()
+                        .balance(balance)
+                        .build())
+                .build();
     }
     
     @Test
@@ -131,6 +364,18 @@ public class AccountServiceImplTest {
         testee.createAccount(request);
     }
 
+    @Test
+    public void testTransferOfNegativeAmountIsRejected() {
+        try {
+            testee.transfer(createFundTransferRequest(1, 2, -50));
+            Assert.fail("Expecting a negative transfer to be rejected!");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        
+        verify(mockRepo, never()).updateAndCredit(any(Account.class), any(Integer.class), any(Long.class));
+    }
+
     @Test(expected=IllegalStateException.class)
     public void testInsufficientFundsForTransfer() {
         Account toRepoFromAccount = new Account.Builder()
@@ -152,4 +397,41 @@ public class AccountServiceImplTest {
         
         this.testee.transfer(createFundTransferRequest(1, 2, 301));
     }
+
+    @Test
+    public void testAsyncOperationsRunOnExecutor() {
+        List<Runnable> executed = new ArrayList<>();
+        AccountServiceImpl asyncTestee = new AccountServiceImpl(new AccountCache(), RetryPolicy.noRetries(), task -> {
+            executed.add(task);
+            task.run();
+        });
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setOverDraftLimit(new BigDecimal(0));
+        request.setInitialDeposit(new BigDecimal(100));
+        asyncTestee.createAccountAsync(request).join();
+        asyncTestee.createAccountAsync(request).join();
+        
+        asyncTestee.transferAsync(createFundTransferRequest(1, 2, 40)).join();
+        
+        assertThat(asyncTestee.getAccountAsync(2).join().getCurrentBalance()).isEqualTo(new BigDecimal(140));
+        assertThat(executed).hasSize(4);
+    }
+    
+    @Test
+    public void testAsyncOperationFailsWhenExecutorIsFull() {
+        AccountServiceImpl asyncTestee = new AccountServiceImpl(new AccountCache(), RetryPolicy.noRetries(), task -> {
+            throw new RejectedExecutionException("Full!");
+        });
+        
+        CompletableFuture<Account> result = asyncTestee.getAccountAsync(1);
+        
+        assertThat(result.isCompletedExceptionally()).isTrue();
+        try {
+            result.join();
+            Assert.fail("Expected the operation to be rejected");
+        } catch (CompletionException e) {
+            assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+        }
+    }
 }
@@ -0,0 +1,199 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.revolut.interview.BinaryTransferClient.Response;
+import com.revolut.interview.BinaryTransferServer.Status;
+
+public class BinaryTransferServerTest {
+
+    private BinaryTransferServer testee;
+
+    @After
+    public void shutdown() throws IOException {
+        testee.close();
+    }
+
+    @Test
+    public void testPipelinedTransfers() throws IOException {
+        AccountService accountService = new AccountServiceImpl();
+        accountService.createAccount(createRequest(100));
+        accountService.createAccount(createRequest(0));
+        testee = new BinaryTransferServer(accountService, 0).start();
+
+        try (BinaryTransferClient client = new BinaryTransferClient("localhost", testee.getPort())) {
+            for (int i = 0; i < 100; i++) {
+                client.send(i, 1, 2, 50);
+            }
+            client.send(100, 1, 2, 5001);
+            client.send(101, 1, 3, 1);
+            client.flush();
+
+            for (int i = 0; i < 100; i++) {
+                Response response = client.receive();
+                assertThat(response.getCorrelationId()).isEqualTo(i);
+                assertThat(response.getStatus()).isEqualTo(Status.OK);
+                assertThat(response.getMessage()).isEmpty();
+            }
+            Response insufficientFunds = client.receive();
+            assertThat(insufficientFunds.getCorrelationId()).isEqualTo(100);
+            assertThat(insufficientFunds.getStatus()).isEqualTo(Status.REJECTED);
+            assertThat(insufficientFunds.getMessage()).startsWith("Insufficient funds in account 1");
+            Response unknownAccount = client.receive();
+            assertThat(unknownAccount.getCorrelationId()).isEqualTo(101);
+            assertThat(unknownAccount.getStatus()).isEqualTo(Status.FAILED);
+        }
+        assertThat(accountService.getAccount(1).getCurrentBalance()).isEqualTo(new BigDecimal("50"));
+        assertThat(accountService.getAccount(2).getCurrentBalance()).isEqualTo(new BigDecimal("50"));
+    }
+
+    @Test
+    public void testDuplicateTransfersWithIdempotencyKeyAreAppliedOnce() throws IOException {
+        AccountService accountService = new AccountServiceImpl();
+        accountService.createAccount(createRequest(100));
+        accountService.createAccount(createRequest(0));
+        testee = new BinaryTransferServer(accountService, 0).start();
+
+        try (BinaryTransferClient client = new BinaryTransferClient("localhost", testee.getPort())) {
+            for (int i = 0; i < 3; i++) {
+                client.send(i, 1, 2, 2500, "transfer-1");
+            }
+            client.flush();
+
+            for (int i = 0; i < 3; i++) {
+                Response response = client.receive();
+                assertThat(response.getCorrelationId()).isEqualTo(i);
+                assertThat(response.getStatus()).isEqualTo(Status.OK);
+            }
+        }
+        assertThat(accountService.getAccount(1).getCurrentBalance()).isEqualTo(new BigDecimal("75"));
+    }
+
+    @Test
+    public void testResponsesKeepRequestOrderWhenTransfersCompleteOutOfOrder() throws IOException {
+        AccountService accountService = mock(AccountService.class);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        CompletableFuture<Void> third = new CompletableFuture<>();
+        when(accountService.transferAsync(any(FundTransferRequest.class)))
+                .thenReturn(first).thenReturn(second).thenReturn(third);
+        testee = new BinaryTransferServer(accountService, 0).start();
+
+        try (BinaryTransferClient client = new BinaryTransferClient("localhost", testee.getPort())) {
+            client.send(1, 1, 2, 1);
+            client.send(2, 1, 2, 1);
+            client.send(3, 1, 2, 1);
+            client.flush();
+            verify(accountService, timeout(5000).times(3)).transferAsync(any(FundTransferRequest.class));
+
+            third.complete(null);
+            second.completeExceptionally(new IllegalStateException("Insufficient funds"));
+            first.complete(null);
+
+            assertThat(client.receive().getCorrelationId()).isEqualTo(1);
+            Response response = client.receive();
+            assertThat(response.getCorrelationId()).isEqualTo(2);
+            assertThat(response.getStatus()).isEqualTo(Status.REJECTED);
+            assertThat(response.getMessage()).isEqualTo("Insufficient funds");
+            assertThat(client.receive().getCorrelationId()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void testStopsReadingWhileTooManyTransfersArePending() throws IOException, InterruptedException {
+        AccountService accountService = mock(AccountService.class);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        when(accountService.transferAsync(any(FundTransferRequest.class)))
+                .thenReturn(first).thenReturn(second).thenReturn(CompletableFuture.completedFuture(null));
+        testee = new BinaryTransferServer(accountService, 0, 2).start();
+
+        try (BinaryTransferClient client = new BinaryTransferClient("localhost", testee.getPort())) {
+            for (int i = 1; i <= 4; i++) {
+                client.send(i, 1, 2, 1);
+            }
+            client.flush();
+            verify(accountService, timeout(5000).times(2)).transferAsync(any(FundTransferRequest.class));
+            Thread.sleep(100);
+            verify(accountService, times(2)).transferAsync(any(FundTransferRequest.class));
+
+            first.complete(null);
+            second.complete(null);
+
+            for (int i = 1; i <= 4; i++) {
+                assertThat(client.receive().getCorrelationId()).isEqualTo(i);
+            }
+        }
+    }
+
+    @Test
+    public void testRespondsToEverythingSentBeforeClientShutsDownOutput() throws IOException {
+        AccountService accountService = new AccountServiceImpl();
+        accountService.createAccount(createRequest(100));
+        accountService.createAccount(createRequest(0));
+        testee = new BinaryTransferServer(accountService, 0).start();
+
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", testee.getPort()))) {
+            ByteBuffer request = ByteBuffer.allocate(2 * (Integer.BYTES + BinaryTransferServer.REQUEST_BYTES));
+            request.putInt(BinaryTransferServer.REQUEST_BYTES).putLong(1).putInt(1).putInt(2).putLong(100);
+            request.putInt(BinaryTransferServer.REQUEST_BYTES).putLong(2).putInt(1).putInt(2).putLong(100000);
+            request.flip();
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+            channel.shutdownOutput();
+
+            ByteBuffer responses = ByteBuffer.allocate(1024);
+            while (channel.read(responses) >= 0) {
+                // read until the server closes the connection
+            }
+            responses.flip();
+            assertThat(responses.getInt()).isEqualTo(Long.BYTES + 1 + Short.BYTES);
+            assertThat(responses.getLong()).isEqualTo(1);
+            assertThat(responses.get()).isEqualTo((byte) Status.OK.ordinal());
+            assertThat(responses.getShort()).isEqualTo((short) 0);
+            assertThat(responses.getInt()).isGreaterThan(Long.BYTES + 1 + Short.BYTES);
+            assertThat(responses.getLong()).isEqualTo(2);
+            assertThat(responses.get()).isEqualTo((byte) Status.REJECTED.ordinal());
+        }
+    }
+
+    @Test
+    public void testClosesConnectionOnFrameOfWrongLength() throws IOException {
+        testee = new BinaryTransferServer(mock(AccountService.class), 0).start();
+
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", testee.getPort()))) {
+            ByteBuffer request = ByteBuffer.allocate(Integer.BYTES + 8);
+            request.putInt(8).putLong(1);
+            request.flip();
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+
+            assertThat(channel.read(ByteBuffer.allocate(16))).isEqualTo(-1);
+        }
+    }
+
+    private static NewAccountRequest createRequest(int initialDeposit) {
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setInitialDeposit(new BigDecimal(initialDeposit));
+        return request;
+    }
+}
@@ -0,0 +1,64 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BoundedVirtualThreadExecutorTest {
+
+    @Test
+    public void testTasksRunOnVirtualThreads() {
+        BoundedVirtualThreadExecutor testee = new BoundedVirtualThreadExecutor("test", 1);
+
+        Thread thread = CompletableFuture.supplyAsync(Thread::currentThread, testee).join();
+
+        assertThat(thread.isVirtual()).isTrue();
+        assertThat(thread.getName()).startsWith("test-");
+        testee.shutdown();
+    }
+
+    @Test
+    public void testRejectsTasksOverTheLimitUntilOneFinishes() throws InterruptedException {
+        BoundedVirtualThreadExecutor testee = new BoundedVirtualThreadExecutor("test", 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        testee.execute(() -> await(release));
+        testee.execute(() -> {
+            await(release);
+            finished.countDown();
+        });
+
+        assertThat(testee.getActiveCount()).isEqualTo(2);
+        assertThatThrownBy(() -> testee.execute(() -> {})).isInstanceOf(RejectedExecutionException.class);
+        assertThat(testee.getActiveCount()).isEqualTo(2);
+
+        release.countDown();
+        assertThat(finished.await(10, TimeUnit.SECONDS)).isTrue();
+        testee.shutdown();
+        assertThat(testee.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(testee.getActiveCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRejectsTasksOnceShutDown() {
+        BoundedVirtualThreadExecutor testee = new BoundedVirtualThreadExecutor("test", 1);
+        testee.shutdown();
+
+        assertThatThrownBy(() -> testee.execute(() -> {})).isInstanceOf(RejectedExecutionException.class);
+        assertThat(testee.getActiveCount()).isEqualTo(0);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+import static com.revolut.interview.TransactionType.DEBIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ColdTransactionStoreTest {
+
+    private static final int BLOCK_BYTES = ColdTransactionStore.RECORD_BYTES * TransactionHistory.CHUNK_SIZE * 3 / 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOffHeapStore() {
+        assertAppendAndGet(ColdTransactionStore.offHeap(BLOCK_BYTES));
+    }
+
+    @Test
+    public void testMappedStore() {
+        assertAppendAndGet(ColdTransactionStore.mapped(folder.getRoot().toPath(), BLOCK_BYTES));
+
+        assertThat(folder.getRoot().list()).containsExactlyInAnyOrder("cold-00000000.log", "cold-00000001.log");
+    }
+
+    private void assertAppendAndGet(ColdTransactionStore store) {
+        long first = store.append(createChunk(0));
+        long second = store.append(createChunk(100));
+
+        // The second chunk does not fit in the rest of the first block so starts the next one
+        assertThat(second).isEqualTo(BLOCK_BYTES);
+        AccountTransaction transaction = store.get(first, 1);
+        assertThat(transaction.getId()).isEqualTo(1);
+        assertThat(transaction.getType()).isEqualTo(DEBIT);
+        assertThat(transaction.amountInMinorUnits()).isEqualTo(-1);
+        assertThat(transaction.balanceInMinorUnits()).isEqualTo(Long.MAX_VALUE - 1);
+        assertThat(store.get(second, 63).getId()).isEqualTo(163);
+        store.close();
+    }
+
+    private AccountTransaction[] createChunk(int firstId) {
+        AccountTransaction[] chunk = new AccountTransaction[TransactionHistory.CHUNK_SIZE];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = new AccountTransaction.Builder()
+                    .type(i % 2 == 0 ? CREDIT : DEBIT)
+                    .amountInMinorUnits(-i)
+                    .balanceInMinorUnits(Long.MAX_VALUE - i)
+                    .build();
+            chunk[i].setId(firstId + i);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,41 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ConflictMetricsTest {
+
+    private ConflictMetrics testee = new ConflictMetrics(4);
+
+    @Test
+    public void testOnlyCountsAccountsOnceAborted() {
+        testee.attempted(1);
+        testee.attempted(2);
+        testee.aborted(2);
+        testee.attempted(2);
+
+        assertThat(testee.getAttempts(1)).isEqualTo(0);
+        assertThat(testee.getAttempts(2)).isEqualTo(2);
+        assertThat(testee.getAborts(2)).isEqualTo(1);
+        assertThat(testee.getCountedAccounts()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDropsLeastAbortedAccountsWhenFull() {
+        for (int accountNo = 1; accountNo <= 4; accountNo++) {
+            for (int i = 0; i < accountNo; i++) {
+                testee.aborted(accountNo);
+            }
+        }
+
+        testee.aborted(5);
+        testee.failed(5);
+
+        assertThat(testee.getCountedAccounts()).isEqualTo(3);
+        assertThat(testee.getAborts(1)).isEqualTo(0);
+        assertThat(testee.getAborts(2)).isEqualTo(0);
+        assertThat(testee.getAborts(4)).isEqualTo(4);
+        assertThat(testee.getFailures(5)).isEqualTo(1);
+    }
+}
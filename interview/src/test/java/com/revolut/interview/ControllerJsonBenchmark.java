@@ -0,0 +1,115 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * The whole JSON path of the controller over HTTP: reading an account and making a transfer through the embedded server,
+ * with MOXy or the streaming {@link JsonCodec}s (<code>json.codec</code>). Each thread is one client on its own connection,
+ * picking accounts uniformly from a seeded random. Client and server share the process, so the allocation reported
+ * by <code>-prof gc</code> includes the client's.
+ * Part of the {@link HotPathBenchmarks}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerJsonBenchmark {
+
+    private static final int ACCOUNTS = 10000;
+
+    @Param({"moxy", "streaming"})
+    private String codec;
+
+    private HttpServer httpServer;
+    private URI baseUri;
+
+    @State(Scope.Thread)
+    public static class Client {
+        private SplittableRandom random;
+        private HttpClient httpClient;
+
+        @Setup
+        public void setup(ThreadParams threadParams) {
+            random = new SplittableRandom(threadParams.getThreadIndex());
+            httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        // Each parameter combination runs in its own fork, so the codec cannot leak into the other
+        System.setProperty("json.codec", codec);
+        AccountService service = AccountServiceInitializer.createAccountService();
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setInitialDeposit(new BigDecimal(Integer.MAX_VALUE));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            service.createAccount(request);
+        }
+        baseUri = UriBuilder.fromUri("http://localhost/").port(9998).build();
+        httpServer = AccountServiceInitializer.createHttpServer(baseUri, AccountServiceInitializer.createResourceConfig(service));
+        httpServer.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        httpServer.shutdownNow();
+    }
+
+    @Benchmark
+    public int getAccount(Client client) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("accounts/" + (client.random.nextInt(ACCOUNTS) + 1)))
+                .GET()
+                .build();
+        return send(client, request, "getAccount");
+    }
+
+    @Benchmark
+    public int transfer(Client client) throws IOException, InterruptedException {
+        int from = client.random.nextInt(ACCOUNTS) + 1;
+        int to = from % ACCOUNTS + 1;
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("accounts/transfer"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"fromAccountNo\":" + from + ",\"toAccountNo\":" + to + ",\"amount\":1}"))
+                .build();
+        return send(client, request, "transfer");
+    }
+
+    /**
+     * Fails the benchmark on an error response, rather than timing requests which never reached the service.
+     */
+    private static int send(Client client, HttpRequest request, String operation) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IllegalStateException(String.format("%s failed with status %d!", operation, response.statusCode()));
+        }
+        return response.body().length;
+    }
+}
@@ -0,0 +1,129 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.AccountTestUtils.assertTransaction;
+import static com.revolut.interview.TransactionType.CREDIT;
+import static com.revolut.interview.TransactionType.DEBIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HotAccountsTest {
+
+    @Test
+    public void testSplitsOnlyOnceContended() {
+        HotAccounts testee = new HotAccounts(2, 10, 0.5);
+        ConflictMetrics metrics = new ConflictMetrics();
+        for (int i = 0; i < 15; i++) {
+            metrics.attempted(1);
+        }
+        for (int i = 0; i < 9; i++) {
+            metrics.aborted(1);
+        }
+        assertThat(testee.isContended(1, metrics)).isFalse();
+
+        metrics.aborted(1);
+        assertThat(testee.isContended(1, metrics)).isTrue();
+
+        int[] next = {10};
+        testee.split(1, subLedger -> {
+            assertThat(subLedger.getSubLedgerOf()).isEqualTo(1);
+            assertThat(testee.subLedgersOf(1)).isNull();
+            // Splitting again while the sub-ledgers are being created leaves it to the first split
+            testee.split(1, ignored -> -1);
+            return next[0]++;
+        });
+        testee.split(1, subLedger -> next[0]++);
+
+        assertThat(testee.subLedgersOf(1)).containsExactly(10, 11);
+        assertThat(testee.isContended(1, metrics)).isFalse();
+        assertThat(testee.isSubLedger(11)).isTrue();
+        assertThat(testee.creditAccountOf(1)).isIn(10, 11);
+        assertThat(testee.creditAccountOf(2)).isEqualTo(2);
+    }
+
+    @Test
+    public void testDisabledNeverSplitsButKeepsRecoveredSubLedgers() {
+        HotAccounts testee = HotAccounts.disabled();
+        ConflictMetrics metrics = new ConflictMetrics();
+        metrics.attempted(1);
+        for (int i = 0; i < HotAccounts.DEFAULT_MIN_ABORTS; i++) {
+            metrics.aborted(1);
+        }
+
+        testee.recover(Arrays.asList(subLedger(5, 3), subLedger(4, 3)));
+
+        assertThat(testee.isContended(1, metrics)).isFalse();
+        assertThat(testee.subLedgersOf(3)).containsExactly(4, 5);
+        assertThat(testee.subLedgersOf(1)).isNull();
+    }
+
+    @Test
+    public void testMergesSubLedgersIntoAccount() {
+        Account account = new Account.Builder().number(1).customerName("Joe Smith").overdraftLimit(10).build();
+        account.addTransactionInMinorUnits(CREDIT, 1000);
+        account.getTransactions().get(0).setId(1);
+        account.addTransactionInMinorUnits(DEBIT, 1500);
+        account.getTransactions().get(1).setId(4);
+        account.setVersion(3);
+        account.markTransactionsCommitted();
+        Account subLedger = subLedger(2, 1);
+        subLedger.addTransactionInMinorUnits(CREDIT, 200);
+        subLedger.getTransactions().get(0).setId(2);
+        subLedger.addTransactionInMinorUnits(CREDIT, 300, "transfer-1");
+        subLedger.getTransactions().get(1).setId(3);
+        subLedger.setVersion(3);
+        subLedger.markTransactionsCommitted();
+
+        Account merged = new HotAccounts(2, 1, 0).merge(account, Collections.singletonList(subLedger));
+
+        assertThat(merged.getNumber()).isEqualTo(1);
+        assertThat(merged.getCustomerName()).isEqualTo("Joe Smith");
+        assertThat(merged.currentBalanceInMinorUnits()).isEqualTo(0);
+        assertThat(merged.availableFundsInMinorUnits()).isEqualTo(1000);
+        assertThat(merged.getVersion()).isEqualTo(5);
+        assertThat(merged.getLastTransactionId()).isEqualTo(4);
+        assertThat(merged.getTransactions()).extracting(AccountTransaction::getId).containsExactly(1, 2, 3, 4);
+        assertThat(merged.getTransactions()).extracting(AccountTransaction::balanceInMinorUnits)
+                .containsExactly(1000L, 1200L, 1500L, 0L);
+        assertThat(merged.getTransactions().get(2).getIdempotencyKey()).isEqualTo("transfer-1");
+        assertTransaction(subLedger.getTransactions().get(0), 2, CREDIT, 2, 2);
+    }
+
+    @Test
+    public void testMergedHistoryCanBeReadFromAnywhere() {
+        Account account = new Account.Builder().number(1).build();
+        Account firstSubLedger = subLedger(2, 1);
+        Account secondSubLedger = subLedger(3, 1);
+        Account[] ledgers = {account, firstSubLedger, secondSubLedger};
+        for (int id = 1; id <= 300; id++) {
+            Account ledger = ledgers[(id * 7) % 3];
+            ledger.addTransactionInMinorUnits(CREDIT, id);
+            ledger.getTransactions().get(ledger.getTransactions().size() - 1).setId(id * 2);
+        }
+        Account merged = new HotAccounts(2, 1, 0).merge(account, Arrays.asList(firstSubLedger, secondSubLedger));
+        List<AccountTransaction> transactions = merged.getTransactions();
+
+        assertThat(transactions).hasSize(300);
+        assertThat(merged.currentBalanceInMinorUnits()).isEqualTo(300 * 301 / 2);
+        assertThat(merged.getLastTransactionId()).isEqualTo(600);
+        for (int index : new int[] {299, 0, 150, 151, 42, 299, 1}) {
+            assertThat(transactions.get(index).getId()).isEqualTo((index + 1) * 2);
+            assertThat(transactions.get(index).balanceInMinorUnits()).isEqualTo((index + 1) * (index + 2) / 2);
+        }
+        assertThat(TransactionPage.indexAfter(transactions, 101)).isEqualTo(50);
+        TransactionPage page = TransactionPage.of(transactions, 200, 3);
+        assertThat(page.getTransactions()).extracting(AccountTransaction::getId).containsExactly(202, 204, 206);
+        assertThat(page.getNextCursor()).isEqualTo(206);
+        assertThat(merged.getTransactions()).extracting(AccountTransaction::amountInMinorUnits).isSorted();
+    }
+
+    private static Account subLedger(Integer number, Integer hotAccountNo) {
+        Account subLedger = new Account.Builder().number(number).subLedgerOf(hotAccountNo).build();
+        subLedger.setVersion(1);
+        return subLedger;
+    }
+}
@@ -0,0 +1,96 @@
+package com.revolut.interview;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of the hot path twice, once for throughput with the GC profiler and once sampling the time
+ * of each operation, then reports each benchmark's ops/s, 99th percentile latency and allocation together, e.g.
+ * <code>mvn test-compile exec:exec -Pbenchmark -Dbenchmark.main=com.revolut.interview.HotPathBenchmarks</code>.
+ * The <code>benchmark</code> property picks which of them run by a regular expression, as for any other benchmark.
+ * Every benchmark seeds its randoms and rebuilds its state between iterations, so runs on the same machine compare.
+ */
+public class HotPathBenchmarks {
+
+    static final List<Class<?>> BENCHMARKS = Arrays.asList(AccountCacheBenchmark.class, SkewedTransferBenchmark.class,
+            AccountCopyBenchmark.class, ControllerJsonBenchmark.class);
+
+    public static void main(String[] args) throws RunnerException {
+        Pattern filter = Pattern.compile(args.length == 0 ? ".*" : args[0]);
+        List<String> includes = BENCHMARKS.stream()
+                .map(Class::getName)
+                .filter(name -> filter.matcher(name).find())
+                .map(name -> Pattern.quote(name) + "\\.")
+                .collect(Collectors.toList());
+        if (includes.isEmpty()) {
+            System.err.println("No hot path benchmark matches " + filter);
+            return;
+        }
+
+        Collection<RunResult> throughput = new Runner(options(includes)
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+        Collection<RunResult> latency = new Runner(options(includes)
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .build()).run();
+
+        Map<String, double[]> rows = new LinkedHashMap<>();
+        for (RunResult result : throughput) {
+            double[] row = rows.computeIfAbsent(label(result.getParams()), label -> new double[4]);
+            row[0] = result.getPrimaryResult().getScore();
+            row[2] = secondaryScore(result, "gc.alloc.rate");
+            row[3] = secondaryScore(result, "gc.alloc.rate.norm");
+        }
+        for (RunResult result : latency) {
+            double[] row = rows.computeIfAbsent(label(result.getParams()), label -> new double[4]);
+            row[1] = result.getPrimaryResult().getStatistics().getPercentile(99);
+        }
+
+        System.out.println();
+        System.out.println(String.format("%-70s %14s %12s %14s %12s", "Benchmark", "ops/s", "p99 us", "alloc MB/s", "alloc B/op"));
+        rows.forEach((label, row) -> System.out.println(
+                String.format("%-70s %14.0f %12.2f %14.1f %12.1f", label, row[0], row[1], row[2], row[3])));
+    }
+
+    private static ChainedOptionsBuilder options(List<String> includes) {
+        ChainedOptionsBuilder options = new OptionsBuilder();
+        includes.forEach(options::include);
+        return options;
+    }
+
+    /**
+     * @return - the benchmark's class and method with its parameters, the same for both runs
+     */
+    private static String label(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        String label = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+        String paramValues = params.getParamsKeys().stream()
+                .map(key -> key + "=" + params.getParam(key))
+                .collect(Collectors.joining(", "));
+        return paramValues.isEmpty() ? label : label + " (" + paramValues + ")";
+    }
+
+    private static double secondaryScore(RunResult result, String name) {
+        Result<?> secondary = result.getSecondaryResults().get(name);
+        return secondary == null ? Double.NaN : secondary.getScore();
+    }
+}
@@ -0,0 +1,141 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transfer latency over HTTP of the pooled server against the virtual thread server (<code>http.virtualThreads</code>).
+ * Each invocation starts <code>clients</code> concurrent clients, each on its own connection, which send
+ * <code>transfersPerClient</code> transfers one after another, and reports the median and 99th percentile latency
+ * in microseconds as the <code>p50Micros</code> and <code>p99Micros</code> counters, with non 2xx responses as <code>errors</code>.
+ * Client and server share a process, so 10k clients need twice as many open files, e.g. <code>ulimit -n 65536</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class HttpServerModeBenchmark {
+
+    private static final int ACCOUNTS = 10000;
+
+    @Param({"pooled", "virtual"})
+    private String server;
+
+    @Param({"10000"})
+    private int clients;
+
+    @Param({"10"})
+    private int transfersPerClient;
+
+    private HttpServer httpServer;
+    private URI transferUri;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Latency {
+        public long p50Micros;
+        public long p99Micros;
+        public long errors;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        // Each parameter combination runs in its own fork, so the mode cannot leak into the other
+        System.setProperty("http.virtualThreads", Boolean.toString("virtual".equals(server)));
+        AccountService service = AccountServiceInitializer.createAccountService();
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setInitialDeposit(new BigDecimal(Integer.MAX_VALUE));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            service.createAccount(request);
+        }
+        URI baseUri = UriBuilder.fromUri("http://localhost/").port(9998).build();
+        httpServer = AccountServiceInitializer.createHttpServer(baseUri, AccountServiceInitializer.createResourceConfig(service));
+        httpServer.start();
+        transferUri = UriBuilder.fromUri(baseUri).path("accounts/transfer").build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        httpServer.shutdownNow();
+    }
+
+    @Benchmark
+    public void transfers(Latency latency) throws InterruptedException {
+        long[] latencies = new long[clients * transfersPerClient];
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        for (int client = 0; client < clients; client++) {
+            int first = client * transfersPerClient;
+            clientThreads.execute(() -> {
+                for (int i = first; i < first + transfersPerClient; i++) {
+                    long start = System.nanoTime();
+                    if (!transfer(httpClient)) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - start;
+                }
+            });
+        }
+        clientThreads.shutdown();
+        clientThreads.awaitTermination(1, TimeUnit.HOURS);
+
+        Arrays.sort(latencies);
+        latency.p50Micros = TimeUnit.NANOSECONDS.toMicros(percentile(latencies, 0.50));
+        latency.p99Micros = TimeUnit.NANOSECONDS.toMicros(percentile(latencies, 0.99));
+        latency.errors = errors.get();
+    }
+
+    private boolean transfer(HttpClient httpClient) {
+        int from = ThreadLocalRandom.current().nextInt(ACCOUNTS) + 1;
+        int to = from % ACCOUNTS + 1;
+        HttpRequest request = HttpRequest.newBuilder(transferUri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"fromAccountNo\":" + from + ",\"toAccountNo\":" + to + ",\"amount\":1}"))
+                .build();
+        try {
+            int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            return status >= 200 && status < 300;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+}
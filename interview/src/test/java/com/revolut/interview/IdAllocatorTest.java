@@ -0,0 +1,102 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IdAllocatorTest {
+
+    @Test
+    public void testIdsAreSequentialWithBlocksOfOne() {
+        IdAllocator testee = new IdAllocator(1);
+
+        assertThat(testee.next()).isEqualTo(1);
+        assertThat(testee.next()).isEqualTo(2);
+        assertThat(testee.getHighWaterMark()).isEqualTo(2);
+    }
+
+    @Test
+    public void testThreadsTakeTheirOwnBlocks() throws InterruptedException {
+        IdAllocator testee = new IdAllocator(10);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    ids.add(testee.next());
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(ids).hasSize(4000);
+        assertThat(testee.getHighWaterMark()).isEqualTo(4000);
+    }
+
+    @Test
+    public void testNextAfterTakesNewBlockWhenBlockIsBehind() throws InterruptedException {
+        IdAllocator testee = new IdAllocator(10, 2);
+        assertThat(testee.next()).isEqualTo(1);
+        Thread other = new Thread(testee::next);
+        while (((other.threadId() ^ Thread.currentThread().threadId()) & 1) == 0) {
+            // Threads are spread over the stripes by their id, so the other thread has to be on the other stripe
+            other = new Thread(testee::next);
+        }
+        other.start();
+        other.join();
+
+        // Another thread was given 11 from its block, so this thread's block cannot follow it
+        assertThat(testee.next(11)).isEqualTo(21);
+        assertThat(testee.next(21)).isEqualTo(22);
+        assertThat(testee.getHighWaterMark()).isEqualTo(30);
+    }
+
+    @Test
+    public void testThreadsOnTheSameStripeShareItsBlock() throws InterruptedException {
+        IdAllocator testee = new IdAllocator(10, 1);
+        for (int i = 0; i < 5; i++) {
+            Thread thread = Thread.ofVirtual().start(testee::next);
+            thread.join();
+        }
+
+        // A thread per request does not take a block each
+        assertThat(testee.next()).isEqualTo(6);
+        assertThat(testee.getHighWaterMark()).isEqualTo(10);
+    }
+
+    @Test
+    public void testRaiseToDiscardsBlocks() {
+        IdAllocator testee = new IdAllocator(10);
+        assertThat(testee.next()).isEqualTo(1);
+
+        testee.raiseTo(50);
+        assertThat(testee.next()).isEqualTo(51);
+
+        testee.reset();
+        assertThat(testee.next()).isEqualTo(1);
+    }
+
+    @Test
+    public void testIdsPastLimitAreRefused() {
+        IdAllocator testee = new IdAllocator(4);
+        testee.raiseTo(10);
+        testee.limitTo(12);
+        assertThat(testee.next()).isEqualTo(11);
+        assertThat(testee.next()).isEqualTo(12);
+
+        try {
+            testee.next();
+            Assert.fail("Expecting ids past the limit to be refused!");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.AccountTestUtils.createFundTransferRequest;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class IdempotencyCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testKeepsFirstOutcomeOfKey() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+
+        assertThat(testee.putIfAbsent("a", first)).isNull();
+        assertThat(testee.putIfAbsent("a", new CompletableFuture<>())).isSameAs(first);
+        assertThat(testee.get("a")).isSameAs(first);
+        assertThat(testee.get("b")).isNull();
+        assertThat(testee.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testForgetsKeysOnceExpired() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 1, clock::get);
+        testee.putSucceeded("a");
+        clock.set(500);
+        testee.putSucceeded("b");
+
+        clock.set(1000);
+        assertThat(testee.get("a")).isNull();
+        assertThat(testee.get("b")).isNotNull();
+        clock.set(1500);
+        assertThat(testee.get("b")).isNull();
+        assertThat(testee.size()).isZero();
+    }
+
+    @Test
+    public void testEvictsOldestKeyWhenFull() {
+        IdempotencyCache testee = new IdempotencyCache(3, 1000, 1, clock::get);
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        testee.putSucceeded("a");
+        testee.putIfAbsent("b", second);
+        testee.putSucceeded("c");
+        testee.remove("b", second);
+
+        testee.putSucceeded("d");
+        testee.putSucceeded("e");
+
+        assertThat(testee.get("a")).isNull();
+        assertThat(testee.get("b")).isNull();
+        assertThat(testee.get("c")).isNotNull();
+        assertThat(testee.get("d")).isNotNull();
+        assertThat(testee.get("e")).isNotNull();
+        assertThat(testee.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRemovesOnlyWithSameOutcome() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+        CompletableFuture<Void> outcome = new CompletableFuture<>();
+        testee.putIfAbsent("a", outcome);
+
+        assertThat(testee.remove("a", new CompletableFuture<>())).isFalse();
+        assertThat(testee.remove("a", outcome)).isTrue();
+        assertThat(testee.get("a")).isNull();
+    }
+
+    @Test
+    public void testMatchesMapThroughRandomOperations() {
+        // Large enough that keys only leave by expiring or being removed, with gaps left in the ring by removals
+        IdempotencyCache testee = new IdempotencyCache(256, 100, 1, clock::get);
+        Map<String, CompletableFuture<Void>> expected = new LinkedHashMap<>();
+        Map<String, Long> expiries = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String key = "key-" + random.nextInt(200);
+            clock.addAndGet(random.nextInt(2));
+            expiries.entrySet().removeIf(entry -> {
+                boolean expired = entry.getValue() <= clock.get();
+                if (expired) {
+                    expected.remove(entry.getKey());
+                }
+                return expired;
+            });
+            if (random.nextInt(4) == 0 && expected.containsKey(key)) {
+                assertThat(testee.remove(key, expected.get(key))).isTrue();
+                expected.remove(key);
+                expiries.remove(key);
+            } else {
+                CompletableFuture<Void> outcome = new CompletableFuture<>();
+                CompletableFuture<Void> existing = testee.putIfAbsent(key, outcome);
+                assertThat(existing).isSameAs(expected.get(key));
+                if (existing == null) {
+                    // Completed, as keys in progress are kept past their time to live
+                    outcome.complete(null);
+                    expected.put(key, outcome);
+                    expiries.put(key, clock.get() + 100);
+                }
+            }
+            assertThat(testee.get(key)).isSameAs(expected.get(key));
+            assertThat(testee.size()).isEqualTo(expected.size());
+        }
+    }
+
+    @Test
+    public void testDeduplicateRunsTransferOnce() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+        AtomicInteger runs = new AtomicInteger();
+
+        testee.deduplicate(keyed("a"), runs::incrementAndGet);
+        testee.deduplicate(keyed("a"), runs::incrementAndGet);
+        testee.deduplicate(keyed(null), runs::incrementAndGet);
+
+        assertThat(runs.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDuplicateOfTransferInProgressGetsItsOutcome() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+        CompletableFuture<Void> transfer = new CompletableFuture<>();
+
+        CompletableFuture<Void> first = testee.deduplicateAsync(keyed("a"), () -> transfer);
+        CompletableFuture<Void> duplicate = testee.deduplicateAsync(keyed("a"), () -> CompletableFuture.completedFuture(null));
+        transfer.completeExceptionally(new InsufficientFundsException("Insufficient funds"));
+
+        assertThat(duplicate).isSameAs(first);
+        assertThatThrownBy(duplicate::join).hasCauseInstanceOf(InsufficientFundsException.class);
+        assertThatThrownBy(() -> testee.deduplicate(keyed("a"), () -> { }))
+                .isInstanceOf(InsufficientFundsException.class).hasMessage("Insufficient funds");
+    }
+
+    @Test
+    public void testKeepsKeyOfTransferAppliedButNotDurable() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThatThrownBy(() -> testee.deduplicate(keyed("a"), () -> {
+            runs.incrementAndGet();
+            throw new NotDurableException(new IllegalStateException("Journal failed"));
+        })).isInstanceOf(NotDurableException.class);
+        assertThatThrownBy(() -> testee.deduplicate(keyed("a"), runs::incrementAndGet))
+                .isInstanceOf(NotDurableException.class);
+
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testForgetsKeyOfTransferWhichFailedWithOtherIllegalState() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+
+        assertThatThrownBy(() -> testee.deduplicate(keyed("a"), () -> {
+            throw new IllegalStateException("The journal has failed!");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(testee.get("a")).isNull();
+    }
+
+    @Test
+    public void testEvictsOldestCompletedKeyRatherThanOneInProgress() {
+        IdempotencyCache testee = new IdempotencyCache(3, 1000, 1, clock::get);
+        CompletableFuture<Void> inProgress = new CompletableFuture<>();
+        testee.putIfAbsent("a", inProgress);
+        testee.putSucceeded("b");
+        testee.putSucceeded("c");
+
+        testee.putSucceeded("d");
+        testee.putSucceeded("e");
+
+        assertThat(testee.get("a")).isSameAs(inProgress);
+        assertThat(testee.get("b")).isNull();
+        assertThat(testee.get("c")).isNull();
+        assertThat(testee.get("d")).isNotNull();
+        assertThat(testee.get("e")).isNotNull();
+        assertThat(testee.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRefusesNewKeyWhenAllKeysAreInProgress() {
+        IdempotencyCache testee = new IdempotencyCache(2, 1000, 1, clock::get);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        testee.deduplicateAsync(keyed("a"), () -> first);
+        testee.deduplicateAsync(keyed("b", 1, 3, 10), CompletableFuture::new);
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<Void> refused = testee.deduplicateAsync(keyed("c"), () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+        assertThatThrownBy(refused::join).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(runs.get()).isZero();
+
+        first.complete(null);
+        testee.deduplicate(keyed("c"), runs::incrementAndGet);
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(testee.get("a")).isNull();
+    }
+
+    @Test
+    public void testForgetsKeyOfTransferWhichCanBeRetried() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+
+        CompletableFuture<Void> aborted = testee.deduplicateAsync(keyed("a"),
+                () -> AccountService.failed(new CompletionException(new ConcurrentModificationException("Aborted"))));
+        assertThatThrownBy(aborted::join).hasCauseInstanceOf(ConcurrentModificationException.class);
+        assertThat(testee.get("a")).isNull();
+
+        testee.deduplicate(keyed("a"), () -> { });
+        assertThat(testee.get("a").isDone()).isTrue();
+    }
+
+    @Test
+    public void testRejectsKeyWhichIsTooLong() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i <= IdempotencyCache.MAX_KEY_LENGTH; i++) {
+            key.append('k');
+        }
+
+        assertThatThrownBy(() -> testee.deduplicate(keyed(key.toString()), () -> { }))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(testee.size()).isZero();
+    }
+
+    @Test
+    public void testRejectsKeyReusedForDifferentTransfer() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+        AtomicInteger runs = new AtomicInteger();
+        testee.deduplicate(keyed("a"), runs::incrementAndGet);
+
+        FundTransferRequest sameTransfer = keyed("a");
+        sameTransfer.setAmount(new BigDecimal("10.00"));
+        testee.deduplicate(sameTransfer, runs::incrementAndGet);
+        for (FundTransferRequest otherTransfer : new FundTransferRequest[] { 
+                keyed("a", 3, 2, 10), keyed("a", 1, 3, 10), keyed("a", 1, 2, 11) }) {
+            assertThatThrownBy(() -> testee.deduplicate(otherTransfer, runs::incrementAndGet))
+                    .isInstanceOf(IdempotencyKeyReusedException.class);
+        }
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(testee.get("a").isCompletedExceptionally()).isFalse();
+    }
+
+    @Test
+    public void testRecoveredTransferWithoutAccountToMatchesAnyAccountTo() {
+        IdempotencyCache testee = new IdempotencyCache(16, 1000, 4, clock::get);
+        FundTransferRequest recovered = keyed("a");
+        recovered.setToAccountNo(null);
+        testee.putSucceeded(recovered);
+        AtomicInteger runs = new AtomicInteger();
+
+        testee.deduplicate(keyed("a", 1, 3, 10), runs::incrementAndGet);
+
+        assertThat(runs.get()).isZero();
+        assertThatThrownBy(() -> testee.deduplicate(keyed("a", 1, 3, 20), runs::incrementAndGet))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    private FundTransferRequest keyed(String key) {
+        return keyed(key, 1, 2, 10);
+    }
+
+    private FundTransferRequest keyed(String key, Integer fromAccountNo, Integer toAccountNo, Integer amount) {
+        FundTransferRequest transferRequest = createFundTransferRequest(fromAccountNo, toAccountNo, amount);
+        transferRequest.setIdempotencyKey(key);
+        return transferRequest;
+    }
+}
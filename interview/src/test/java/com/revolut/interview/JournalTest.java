@@ -0,0 +1,223 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayRecordsInOrder() {
+        Journal journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        journal.open(record -> {});
+        journal.awaitDurable(journal.append(record("first")));
+        journal.awaitDurable(journal.append(record("second")));
+        journal.close();
+
+        assertThat(replay(Journal.DEFAULT_SEGMENT_BYTES)).containsExactly("first", "second");
+    }
+
+    @Test
+    public void testAppendAfterReopening() {
+        Journal journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        journal.open(record -> {});
+        journal.append(record("first"));
+        journal.close();
+
+        journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        journal.open(record -> {});
+        journal.append(record("second"));
+        journal.close();
+
+        assertThat(replay(Journal.DEFAULT_SEGMENT_BYTES)).containsExactly("first", "second");
+    }
+
+    @Test
+    public void testRollsSegments() throws IOException {
+        Journal journal = createJournal(64);
+        journal.open(record -> {});
+        for (int i = 0; i < 10; i++) {
+            journal.append(record("record-" + i));
+        }
+        journal.close();
+
+        assertThat(segments()).hasSize(4);
+        assertThat(replay(64)).hasSize(10).startsWith("record-0").endsWith("record-9");
+    }
+
+    @Test
+    public void testTornRecordAtEndIsDiscarded() throws IOException {
+        Journal journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        journal.open(record -> {});
+        journal.append(record("first"));
+        journal.append(record("second"));
+        journal.close();
+
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        List<String> replayed = new ArrayList<>();
+        journal.open(record -> replayed.add(StandardCharsets.UTF_8.decode(record).toString()));
+        journal.append(record("third"));
+        journal.close();
+
+        assertThat(replayed).containsExactly("first");
+        assertThat(replay(Journal.DEFAULT_SEGMENT_BYTES)).containsExactly("first", "third");
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testCorruptRecordBeforeLastSegment() throws IOException {
+        Journal journal = createJournal(64);
+        journal.open(record -> {});
+        for (int i = 0; i < 4; i++) {
+            journal.append(record("record-" + i));
+        }
+        journal.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            file.write('X');
+        }
+
+        replay(64);
+    }
+
+    @Test
+    public void testCorruptRecordInLastSegmentIsNotTreatedAsTorn() throws IOException {
+        Journal journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        journal.open(record -> {});
+        journal.append(record("first"));
+        journal.append(record("second"));
+        journal.close();
+
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+        for (long position : new long[] { size - 16, size - 1 }) {
+            // Flips a byte of the payload of the first record, with the second after it, and then of the last record
+            try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+                file.seek(position);
+                int original = file.read();
+                file.seek(position);
+                file.write(original ^ 0xFF);
+                try {
+                    replay(Journal.DEFAULT_SEGMENT_BYTES);
+                    Assert.fail("Expecting a whole record which does not match its CRC to fail the replay!");
+                } catch (IllegalStateException e) {
+                    assertThat(e).hasMessageContaining("does not match its CRC");
+                }
+                file.seek(position);
+                file.write(original);
+            }
+        }
+        assertThat(Files.size(segment)).isEqualTo(size);
+        assertThat(replay(Journal.DEFAULT_SEGMENT_BYTES)).containsExactly("first", "second");
+    }
+
+    @Test
+    public void testConcurrentCommitsShareForces() throws InterruptedException {
+        Journal journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        journal.open(record -> {});
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 200; i++) {
+            String value = "record-" + i;
+            service.submit(() -> journal.awaitDurable(journal.append(record(value))));
+        }
+        service.shutdown();
+        service.awaitTermination(1, TimeUnit.MINUTES);
+        journal.close();
+
+        assertThat(journal.getAppends()).isEqualTo(200);
+        assertThat(journal.getForces()).isBetween(1L, 200L);
+        assertThat(replay(Journal.DEFAULT_SEGMENT_BYTES)).hasSize(200);
+    }
+
+    @Test
+    public void testAlreadyDurableRecordIsNotForcedAgain() {
+        Journal journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        journal.open(record -> {});
+        long first = journal.append(record("first"));
+        long second = journal.append(record("second"));
+
+        journal.awaitDurable(second);
+        journal.awaitDurable(first);
+        journal.close();
+
+        assertThat(journal.getForces()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailedAppendStopsFurtherAppends() {
+        Journal journal = createJournal(Journal.DEFAULT_SEGMENT_BYTES);
+        journal.open(record -> {});
+        journal.append(record("first"));
+
+        // An interrupt closes the channel part way through the write, so the record cannot be cut off again
+        Thread.currentThread().interrupt();
+        try {
+            journal.append(record("second"));
+            Assert.fail("Expecting the interrupted append to fail!");
+        } catch (UncheckedIOException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+        try {
+            journal.append(record("third"));
+            Assert.fail("Expecting the journal to refuse appends once failed!");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        journal.close();
+
+        assertThat(replay(Journal.DEFAULT_SEGMENT_BYTES)).containsExactly("first");
+    }
+
+    private Journal createJournal(long segmentBytes) {
+        return new Journal.Builder()
+                .directory(folder.getRoot().toPath())
+                .segmentBytes(segmentBytes)
+                .build();
+    }
+
+    private List<String> replay(long segmentBytes) {
+        List<String> records = new ArrayList<>();
+        Journal journal = createJournal(segmentBytes);
+        journal.open(record -> records.add(StandardCharsets.UTF_8.decode(record).toString()));
+        journal.close();
+        return records;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private ByteBuffer record(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
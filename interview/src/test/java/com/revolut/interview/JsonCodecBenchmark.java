@@ -0,0 +1,111 @@
+package com.revolut.interview;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.eclipse.persistence.jaxb.rs.MOXyJsonProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to write an account and to read the requests of the hot endpoints, through MOXy and through the {@link JsonCodec}s.
+ * Run with <code>-prof gc</code> for the bytes allocated by each, reported as <code>gc.alloc.rate.norm</code> in B/op.
+ * The account is written to a stream which discards it, so only the codec's own buffers are counted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    @Param({"moxy", "streaming"})
+    private String codec;
+
+    @Param({"1", "100"})
+    private int transactions;
+
+    private MessageBodyWriter<Object> accountWriter;
+    private MessageBodyReader<Object> transferReader;
+    private MessageBodyReader<Object> newAccountReader;
+    private Account account;
+    private byte[] transferJson;
+    private byte[] newAccountJson;
+
+    @Setup
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setup() throws IOException {
+        account = new Account.Builder().number(1).customerName("Joe Smith").overdraftLimit(100).build();
+        for (int i = 0; i < transactions; i++) {
+            account.addTransaction(i % 2 == 0 ? TransactionType.CREDIT : TransactionType.DEBIT, new BigDecimal("12.34"));
+            account.getTransactions().get(i).setId(i + 1);
+        }
+        JsonCodec.FundTransferRequestCodec transferCodec = new JsonCodec.FundTransferRequestCodec();
+        JsonCodec.NewAccountRequestCodec newAccountCodec = new JsonCodec.NewAccountRequestCodec();
+        if ("moxy".equals(codec)) {
+            MOXyJsonProvider moxy = new MOXyJsonProvider();
+            accountWriter = moxy;
+            transferReader = moxy;
+            newAccountReader = moxy;
+        } else {
+            accountWriter = (MessageBodyWriter) new JsonCodec.AccountCodec();
+            transferReader = (MessageBodyReader) transferCodec;
+            newAccountReader = (MessageBodyReader) newAccountCodec;
+        }
+        transferJson = json(transferCodec, AccountTestUtils.createFundTransferRequest(1, 2, 100));
+        NewAccountRequest newAccountRequest = new NewAccountRequest();
+        newAccountRequest.setCustomerName("Joe Smith");
+        newAccountRequest.setInitialDeposit(new BigDecimal("1000.50"));
+        newAccountJson = json(newAccountCodec, newAccountRequest);
+    }
+
+    @Benchmark
+    public void writeAccount() throws IOException {
+        accountWriter.writeTo(account, Account.class, Account.class, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE,
+                new MultivaluedHashMap<>(), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public Object readTransferRequest() throws IOException {
+        return read(transferReader, FundTransferRequest.class, transferJson);
+    }
+
+    @Benchmark
+    public Object readNewAccountRequest() throws IOException {
+        return read(newAccountReader, NewAccountRequest.class, newAccountJson);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object read(MessageBodyReader<Object> reader, Class type, byte[] json) throws IOException {
+        return reader.readFrom(type, type, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE,
+                new MultivaluedHashMap<>(), new ByteArrayInputStream(json));
+    }
+
+    private static <T> byte[] json(JsonCodec<T> codec, T value) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        codec.writeTo(value, codec.getType(), codec.getType(), NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE, null, output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,127 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Test;
+
+public class JsonCodecTest {
+
+    @Test
+    public void testWritesAccountAsMoxyDoes() throws IOException {
+        Account account = new Account.Builder()
+                .number(1)
+                .customerName("Jo \"\u00eb\"")
+                .overdraftLimit(10)
+                .transaction(new AccountTransaction.Builder()
+                        .type(TransactionType.CREDIT)
+                        .amount(new BigDecimal("100.5"))
+                        .balance(new BigDecimal("100.5"))
+                        .build())
+                .build();
+        account.getTransactions().get(0).setId(1);
+        // The idempotency key is only journaled, never written as JSON
+        account.addTransactionInMinorUnits(TransactionType.DEBIT, 25, "transfer-1");
+        account.setVersion(2);
+
+        assertThat(write(new JsonCodec.AccountCodec(), account)).isEqualTo("{\"customerName\":\"Jo \\\"\u00eb\\\"\","
+                + "\"number\":1,\"overdraftLimit\":10,\"transactions\":["
+                + "{\"amount\":100.5,\"balance\":100.5,\"id\":1,\"type\":\"CREDIT\"},"
+                + "{\"amount\":0.25,\"balance\":100.25,\"type\":\"DEBIT\"}],\"version\":2}");
+    }
+
+    @Test
+    public void testReadsAccountWrittenByCodec() throws IOException {
+        JsonCodec.AccountCodec testee = new JsonCodec.AccountCodec();
+        Account account = new Account.Builder()
+                .number(7)
+                .customerName("Joe Smith")
+                .overdraftLimit(50)
+                .transaction(new AccountTransaction.Builder().type(TransactionType.CREDIT).amount(20).balance(20).build())
+                .build();
+        account.getTransactions().get(0).setId(3);
+        account.setVersion(4);
+
+        Account result = read(testee, write(testee, account));
+
+        assertThat(result.getNumber()).isEqualTo(7);
+        assertThat(result.getCustomerName()).isEqualTo("Joe Smith");
+        assertThat(result.overdraftLimitInMinorUnits()).isEqualTo(5000);
+        assertThat(result.currentBalanceInMinorUnits()).isEqualTo(2000);
+        assertThat(result.getVersion()).isEqualTo(4);
+        assertThat(result.getTransactions()).hasSize(1);
+        assertThat(result.getTransactions().get(0).getId()).isEqualTo(3);
+        assertThat(result.getTransactions().get(0).getType()).isEqualTo(TransactionType.CREDIT);
+        assertThat(result.getTransactions().get(0).amountInMinorUnits()).isEqualTo(2000);
+    }
+
+    @Test
+    public void testReadsRequestsIgnoringUnknownMembers() throws IOException {
+        FundTransferRequest transfer = read(new JsonCodec.FundTransferRequestCodec(),
+                "{\"toAccountNo\":2,\"unknown\":{\"a\":[1]},\"fromAccountNo\":\"1\",\"amount\":12.34}");
+        NewAccountRequest newAccount = read(new JsonCodec.NewAccountRequestCodec(),
+                "{\"customerName\":\"Joe\",\"initialDeposit\":100}");
+
+        assertThat(transfer.getFromAccountNo()).isEqualTo(1);
+        assertThat(transfer.getToAccountNo()).isEqualTo(2);
+        assertThat(transfer.getAmount()).isEqualTo(new BigDecimal("12.34"));
+        assertThat(newAccount.getCustomerName()).isEqualTo("Joe");
+        assertThat(newAccount.getInitialDeposit()).isEqualTo(new BigDecimal("100"));
+        assertThat(newAccount.getOverDraftLimit()).isEqualTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void testWritesRequests() throws IOException {
+        FundTransferRequest transfer = AccountTestUtils.createFundTransferRequest(1, 2, 3);
+        NewAccountRequest newAccount = new NewAccountRequest();
+        newAccount.setCustomerName("Joe");
+
+        assertThat(write(new JsonCodec.FundTransferRequestCodec(), transfer))
+                .isEqualTo("{\"amount\":3,\"fromAccountNo\":1,\"toAccountNo\":2}");
+        transfer.setIdempotencyKey("transfer-1");
+        assertThat(write(new JsonCodec.FundTransferRequestCodec(), transfer))
+                .isEqualTo("{\"amount\":3,\"fromAccountNo\":1,\"idempotencyKey\":\"transfer-1\",\"toAccountNo\":2}");
+        assertThat(write(new JsonCodec.NewAccountRequestCodec(), newAccount))
+                .isEqualTo("{\"customerName\":\"Joe\",\"initialDeposit\":0,\"overDraftLimit\":0}");
+    }
+
+    @Test
+    public void testInvalidJsonIsBadRequest() {
+        assertThatThrownBy(() -> read(new JsonCodec.FundTransferRequestCodec(), "{\"fromAccountNo\":\"x\"}"))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageStartingWith("Expected a whole number");
+        assertThatThrownBy(() -> read(new JsonCodec.AccountTransactionCodec(), "{\"type\":\"REFUND\"}"))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> read(new JsonCodec.AccountTransactionCodec(), "{\"amount\":0.001}"))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    public void testOnlyHandlesItsOwnType() {
+        JsonCodec.AccountCodec testee = new JsonCodec.AccountCodec();
+
+        assertThat(testee.isWriteable(Account.class, Account.class, null, MediaType.APPLICATION_JSON_TYPE)).isTrue();
+        assertThat(testee.isWriteable(AccountSummary.class, AccountSummary.class, null, MediaType.APPLICATION_JSON_TYPE)).isFalse();
+        assertThat(testee.isReadable(Object.class, Object.class, null, MediaType.APPLICATION_JSON_TYPE)).isFalse();
+    }
+
+    private static <T> String write(JsonCodec<T> codec, T value) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        codec.writeTo(value, codec.getType(), codec.getType(), null, MediaType.APPLICATION_JSON_TYPE, null, output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static <T> T read(JsonCodec<T> codec, String json) throws IOException {
+        return codec.readFrom(codec.getType(), codec.getType(), null, MediaType.APPLICATION_JSON_TYPE, null,
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,107 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class JsonParserTest {
+
+    @Test
+    public void testReadsObjectSkippingUnknownMembers() throws IOException {
+        JsonParser testee = parser(" { \"a\" : 1 , \"skip\" : [1, {\"x\": null, \"y\": [true, false]}, \"s\"], \"b\": \"two\" } ");
+
+        testee.beginObject();
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextName()).isEqualTo("a");
+        assertThat(testee.nextInteger()).isEqualTo(1);
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextName()).isEqualTo("skip");
+        testee.skipValue();
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextName()).isEqualTo("b");
+        assertThat(testee.nextString()).isEqualTo("two");
+        assertThat(testee.hasNext()).isFalse();
+        testee.endDocument();
+    }
+
+    @Test
+    public void testReadsNumbersNullsAndNumbersInStrings() throws IOException {
+        JsonParser testee = parser("[-2147483648, 2147483647, 1.25e2, \"3.50\", \"7\", null, null]");
+
+        testee.beginArray();
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextInteger()).isEqualTo(Integer.MIN_VALUE);
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextInteger()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextDecimal()).isEqualByComparingTo(new BigDecimal("125"));
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextDecimal()).isEqualTo(new BigDecimal("3.50"));
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextInteger()).isEqualTo(7);
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextInteger()).isNull();
+        assertThat(testee.hasNext()).isTrue();
+        assertThat(testee.nextString()).isNull();
+        assertThat(testee.hasNext()).isFalse();
+    }
+
+    @Test
+    public void testDecodesEscapesAndUtf8() throws IOException {
+        JsonParser testee = parser("\"\\\"\\\\\\/\\n\\u0041 \u00eb\u20ac\ud83d\ude00\"");
+
+        assertThat(testee.nextString()).isEqualTo("\"\\/\nA \u00eb\u20ac\ud83d\ude00");
+    }
+
+    @Test
+    public void testRejectsInvalidJson() {
+        assertThatThrownBy(() -> parser("{\"a\":1 \"b\":2}").skipValue())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected ',' at position 7 of the JSON!");
+        assertThatThrownBy(() -> parser("{\"a\":").skipValue())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> parser("\"abc").nextString())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Unexpected end of document");
+        assertThatThrownBy(() -> parser("2147483648").nextInteger())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Expected a whole number");
+        assertThatThrownBy(() -> parser("1.5").nextInteger())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> parser("1..5").nextDecimal())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Expected a number");
+        assertThatThrownBy(() -> {
+            JsonParser testee = parser("{} {}");
+            testee.skipValue();
+            testee.endDocument();
+        }).isInstanceOf(IllegalArgumentException.class).hasMessageStartingWith("Expected the end of the document");
+    }
+
+    @Test
+    public void testReadsDocumentLargerThanBuffer() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 10000; i++) {
+            json.append(i == 0 ? "" : ", ").append(i);
+        }
+        JsonParser testee = parser(json.append("]").toString());
+
+        testee.beginArray();
+        int count = 0;
+        while (testee.hasNext()) {
+            assertThat(testee.nextInteger()).isEqualTo(count++);
+        }
+        assertThat(count).isEqualTo(10000);
+        testee.endDocument();
+    }
+
+    private static JsonParser parser(String json) {
+        return new JsonParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
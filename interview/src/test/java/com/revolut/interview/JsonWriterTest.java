@@ -0,0 +1,68 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class JsonWriterTest {
+
+    @Test
+    public void testWritesCommasBetweenMembers() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonWriter testee = new JsonWriter(output);
+
+        testee.beginObject()
+                .name("a").value(1)
+                .name("b").beginArray().value(true).beginObject().endObject().value((String) null).endArray()
+                .name("c").value(new BigDecimal("1.50"))
+                .endObject()
+                .flush();
+
+        assertThat(output.toString("UTF-8")).isEqualTo("{\"a\":1,\"b\":[true,{},null],\"c\":1.50}");
+    }
+
+    @Test
+    public void testWritesMoneyAsMoneyWould() throws IOException {
+        long[] amounts = {0, 5, 50, 100, 150, 155, -5, -150, 123456789, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long amount : amounts) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            JsonWriter testee = new JsonWriter(output);
+
+            testee.money(amount).flush();
+
+            assertThat(output.toString("UTF-8")).isEqualTo(Money.toBigDecimal(amount).toString());
+        }
+    }
+
+    @Test
+    public void testEscapesAndEncodesStrings() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonWriter testee = new JsonWriter(output);
+
+        testee.value("\"a\\b\"\n\u0001 \u00eb\u20ac\ud83d\ude00").flush();
+
+        assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8))
+                .isEqualTo("\"\\\"a\\\\b\\\"\\n\\u0001 \u00eb\u20ac\ud83d\ude00\"");
+    }
+
+    @Test
+    public void testFlushesFullBuffer() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonWriter testee = new JsonWriter(output);
+        StringBuilder expected = new StringBuilder("[");
+
+        testee.beginArray();
+        for (int i = 0; i < 10000; i++) {
+            testee.value(i);
+            expected.append(i == 0 ? "" : ",").append(i);
+        }
+        testee.endArray().flush();
+
+        assertThat(output.toString("UTF-8")).isEqualTo(expected.append("]").toString());
+    }
+}
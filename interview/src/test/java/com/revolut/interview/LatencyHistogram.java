@@ -0,0 +1,172 @@
+package com.revolut.interview;
+
+import java.io.PrintStream;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A histogram of latencies in the manner of HdrHistogram, which keeps three significant digits of every value
+ * from one up to an hour in microseconds in a fixed array of counts, so recording never allocates.
+ * Values below 2048 are counted exactly, and each doubling above that is split into 1024 equal buckets.
+ * <p>
+ * A client which waits for each response before sending the next request stops sending while the server stalls,
+ * so the stall is recorded once rather than against every request which should have been sent during it -
+ * coordinated omission. {@link #recordValueWithExpectedInterval(long, long)} adds back the requests which
+ * would have been sent at the expected interval and waited for part of the stall.
+ * <p>
+ * Not thread safe: each thread records its own histogram, which are then {@link #add(LatencyHistogram) added} together.
+ */
+final class LatencyHistogram {
+
+    static final long HIGHEST_TRACKABLE_MICROS = 60L * 60 * 1000 * 1000;
+
+    private static final int SUB_BUCKET_BITS = 11;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    private final long[] counts = new long[indexOf(HIGHEST_TRACKABLE_MICROS) + 1];
+    private long totalCount;
+    private long max;
+    private double sum;
+
+    /**
+     * Values above {@link #HIGHEST_TRACKABLE_MICROS} are counted as that.
+     * @throws - IllegalArgumentException when the value is negative
+     */
+    void recordValue(long value) {
+        Validate.isTrue(value >= 0, "Latency cannot be negative!");
+        long trackable = Math.min(value, HIGHEST_TRACKABLE_MICROS);
+        counts[indexOf(trackable)]++;
+        totalCount++;
+        max = Math.max(max, trackable);
+        sum += trackable;
+    }
+
+    /**
+     * Records the value, and as many values again as requests would have been sent at the expected interval
+     * while waiting for it, each waiting one interval less than the one before.
+     * @param expectedInterval - the expected time between requests, or zero to record the value alone
+     */
+    void recordValueWithExpectedInterval(long value, long expectedInterval) {
+        recordValue(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            recordValue(missing);
+        }
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+        sum += other.sum;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * @param percentile - from 0 to 100
+     * @return - the highest value equivalent to the value at the percentile, or zero when nothing has been recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the percentile distribution in the format of HdrHistogram's <code>.hgrm</code> files, which its plotter reads.
+     * The reported percentiles halve the distance to 100% every <code>ticksPerHalfDistance</code> steps.
+     * @param scale - what to divide the values by, e.g. 1000.0 to write microseconds as milliseconds
+     */
+    void outputPercentileDistribution(PrintStream out, int ticksPerHalfDistance, double scale) {
+        out.println(String.format("%12s %14s %10s %14s", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+        out.println();
+        if (totalCount > 0) {
+            double percentile = 0;
+            while (100 - percentile > 100.0 / totalCount) {
+                long value = getValueAtPercentile(percentile);
+                out.println(String.format("%12.3f %2.12f %10d %14.2f", value / scale, percentile / 100, countAtOrBelow(value), 
+                        1 / (1 - percentile / 100)));
+                long halvings = (long) (Math.log(100 / (100 - percentile)) / Math.log(2));
+                percentile += 100.0 / (ticksPerHalfDistance * Math.pow(2, halvings + 1));
+            }
+            out.println(String.format("%12.3f %2.12f %10d", max / scale, 1.0, totalCount));
+        }
+        out.println(String.format("#[Mean    = %12.3f, StdDeviation   = %12.3f]", getMean() / scale, getStdDeviation() / scale));
+        out.println(String.format("#[Max     = %12.3f, Total count    = %12d]", max / scale, totalCount));
+        out.println(String.format("#[Buckets = %12d, SubBuckets     = %12d]", 
+                (counts.length - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1, SUB_BUCKET_COUNT));
+    }
+
+    private double getStdDeviation() {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double mean = getMean();
+        double squares = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                double deviation = medianEquivalentValue(i) - mean;
+                squares += deviation * deviation * counts[i];
+            }
+        }
+        return Math.sqrt(squares / totalCount);
+    }
+
+    private long countAtOrBelow(long value) {
+        long count = 0;
+        for (int i = 0; i <= indexOf(value); i++) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Keeps the top bits of the value which fit a sub-bucket, the shift then picks the bucket.
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    private static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = index - SUB_BUCKET_COUNT;
+        int shift = bucket / SUB_BUCKET_HALF_COUNT + 1;
+        return (long) (bucket % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT) << shift;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        return index < SUB_BUCKET_COUNT ? index : lowestEquivalentValue(index + 1) - 1;
+    }
+
+    private static double medianEquivalentValue(int index) {
+        return (lowestEquivalentValue(index) + highestEquivalentValue(index)) / 2.0;
+    }
+}
@@ -0,0 +1,95 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram testee = new LatencyHistogram();
+
+    @Test
+    public void testKeepsThreeSignificantDigits() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long value = (long) Math.pow(10, 1 + random.nextDouble() * 8);
+            LatencyHistogram single = new LatencyHistogram();
+            single.recordValue(value);
+
+            assertThat(single.getValueAtPercentile(50)).isEqualTo(value);
+            testee.recordValue(value);
+        }
+        assertThat(testee.getTotalCount()).isEqualTo(10000);
+        assertThat(testee.getValueAtPercentile(100)).isEqualTo(testee.getMax());
+    }
+
+    @Test
+    public void testPercentilesAreHighestEquivalentValues() {
+        for (int value = 1; value <= 100000; value++) {
+            testee.recordValue(value);
+        }
+
+        assertThat(testee.getValueAtPercentile(0)).isEqualTo(1);
+        assertThat(testee.getValueAtPercentile(1)).isEqualTo(1000);
+        assertThat((double) testee.getValueAtPercentile(50)).isCloseTo(50000, offset(50.0));
+        assertThat((double) testee.getValueAtPercentile(99)).isCloseTo(99000, offset(99.0));
+        assertThat(testee.getValueAtPercentile(100)).isEqualTo(100000);
+        assertThat(testee.getMean()).isCloseTo(50000.5, offset(0.001));
+    }
+
+    @Test
+    public void testCorrectsForCoordinatedOmission() {
+        for (int i = 0; i < 99; i++) {
+            testee.recordValueWithExpectedInterval(1000, 10000);
+        }
+        // A stall of one second, during which 99 more requests would have been sent 10ms apart
+        testee.recordValueWithExpectedInterval(1000000, 10000);
+
+        assertThat(testee.getTotalCount()).isEqualTo(199);
+        assertThat((double) testee.getValueAtPercentile(50)).isCloseTo(10000, offset(10.0));
+        assertThat((double) testee.getValueAtPercentile(75)).isCloseTo(510000, offset(510.0));
+
+        LatencyHistogram uncorrected = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            uncorrected.recordValue(1000);
+        }
+        uncorrected.recordValue(1000000);
+        assertThat(uncorrected.getValueAtPercentile(99)).isEqualTo(1000);
+    }
+
+    @Test
+    public void testAddsHistogramsOfEachThread() {
+        LatencyHistogram other = new LatencyHistogram();
+        testee.recordValue(10);
+        other.recordValue(20);
+        other.recordValue(LatencyHistogram.HIGHEST_TRACKABLE_MICROS * 2);
+
+        testee.add(other);
+
+        assertThat(testee.getTotalCount()).isEqualTo(3);
+        assertThat(testee.getValueAtPercentile(50)).isEqualTo(20);
+        assertThat(testee.getMax()).isEqualTo(LatencyHistogram.HIGHEST_TRACKABLE_MICROS);
+    }
+
+    @Test
+    public void testOutputsPercentileDistribution() {
+        for (int value = 1; value <= 1000; value++) {
+            testee.recordValue(value);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        testee.outputPercentileDistribution(new PrintStream(bytes, true), 5, 1000.0);
+
+        String[] lines = bytes.toString().split("\n");
+        assertThat(lines[0].trim()).isEqualTo("Value     Percentile TotalCount 1/(1-Percentile)");
+        assertThat(lines[2].trim()).startsWith("0.001 0.000000000000          1");
+        assertThat(lines[7].trim()).startsWith("0.500 0.500000000000        500");
+        assertThat(lines[lines.length - 4].trim()).isEqualTo("1.000 1.000000000000       1000");
+        assertThat(lines[lines.length - 2]).startsWith("#[Max     =        1.000, Total count    =         1000]");
+    }
+}
@@ -0,0 +1,373 @@
+package com.revolut.interview;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.commons.lang3.Validate;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+/**
+ * Drives the HTTP API of {@link AccountServiceInitializer}'s server with a load profile, and reports the latency of
+ * each endpoint as percentile distributions corrected for coordinated omission, alongside the uncorrected latencies.
+ * <p>
+ * In the open loop requests are due at a fixed arrival rate whether or not earlier ones have been answered, as production
+ * traffic is, and each is timed from when it was due, so any time it waited on the client counts against it.
+ * In the closed loop a fixed number of clients each send a request and wait for its response before the next,
+ * and their latencies are corrected by {@link LatencyHistogram#recordValueWithExpectedInterval(long, long)}
+ * with the interval they are paced at, or the mean latency of the warmup when they are not paced.
+ * <p>
+ * The accounts are created through <code>/accounts</code> first, then each request either reads an account or transfers
+ * between two, picked from a {@link ZipfDistribution}. Without <code>load.url</code> the server is started embedded
+ * in the same process, configured by the same system properties as {@link AccountServiceInitializer#main(String[])}.
+ * The load is configured by system properties, e.g.
+ * <code>mvn test-compile exec:exec -Ploadtest -Dloadtest="-Dload.mode=open -Dload.rate=2000"</code>:
+ * <ul>
+ * <li><code>load.mode</code> - <code>open</code> or <code>closed</code>, closed by default
+ * <li><code>load.rate</code> - requests per second, the arrival rate of the open loop and the rate the closed loop
+ *          is paced to, when not zero
+ * <li><code>load.concurrency</code> - the clients of the closed loop, and the most requests in flight in the open loop
+ * <li><code>load.warmupSeconds</code> and <code>load.durationSeconds</code> - latencies are recorded after the warmup
+ * <li><code>load.accounts</code> and <code>load.skew</code> - the number of accounts, and the exponent of their Zipf distribution
+ * <li><code>load.amount</code> - transfer amounts in minor units: <code>fixed:100</code>, <code>uniform:1:10000</code>
+ *          or <code>lognormal:2500:1.0</code>, with the median and the standard deviation of the amount's logarithm
+ * <li><code>load.readRatio</code> - the share of requests which read an account rather than make a transfer
+ * <li><code>load.seed</code>, <code>load.url</code>, <code>load.port</code> for the embedded server,
+ *          and <code>load.reportDir</code> for the <code>.hgrm</code> percentile reports
+ * </ul>
+ */
+public class LoadGenerator {
+
+    private static final Pattern ACCOUNT_NUMBER = Pattern.compile("\"number\"\\s*:\\s*(\\d+)");
+    private static final long WAIT_FOR_IN_FLIGHT_SECONDS = 30;
+
+    private final boolean openLoop = "open".equals(System.getProperty("load.mode", "closed"));
+    private final int rate = Integer.getInteger("load.rate", openLoop ? 1000 : 0);
+    private final int concurrency = Integer.getInteger("load.concurrency", 16);
+    private final int warmupSeconds = Integer.getInteger("load.warmupSeconds", 5);
+    private final int durationSeconds = Integer.getInteger("load.durationSeconds", 30);
+    private final int accounts = Integer.getInteger("load.accounts", 10000);
+    private final double skew = Double.parseDouble(System.getProperty("load.skew", "0.99"));
+    private final ToLongFunction<SplittableRandom> amounts = amounts(System.getProperty("load.amount", "fixed:100"));
+    private final double readRatio = Double.parseDouble(System.getProperty("load.readRatio", "0.1"));
+    private final long seed = Long.getLong("load.seed", 42);
+    private final Path reportDir = Paths.get(System.getProperty("load.reportDir", "target/loadtest"));
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final URI baseUri;
+    private final ZipfDistribution distribution;
+    private int[] accountNos;
+
+    private final Operation reads = new Operation("account");
+    private final Operation transfers = new Operation("transfer");
+
+    private volatile long measureFromNanos = Long.MAX_VALUE;
+    private volatile long expectedIntervalMicros;
+
+    LoadGenerator(URI baseUri) {
+        Validate.isTrue(!openLoop || rate > 0, "The open loop needs an arrival rate!");
+        Validate.isTrue(concurrency > 0, "There must be at least one client!");
+        Validate.isTrue(accounts > 1, "There must be at least two accounts to transfer between!");
+        Validate.isTrue(readRatio >= 0 && readRatio <= 1, "The read ratio must be between zero and one!");
+        this.baseUri = baseUri;
+        this.distribution = new ZipfDistribution(accounts, skew);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url = System.getProperty("load.url");
+        HttpServer server = null;
+        URI baseUri;
+        if (url == null) {
+            baseUri = UriBuilder.fromUri("http://localhost/").port(Integer.getInteger("load.port", 9998)).build();
+            server = AccountServiceInitializer.createHttpServer(baseUri,
+                    AccountServiceInitializer.createResourceConfig(AccountServiceInitializer.createAccountService()));
+            server.start();
+        } else {
+            baseUri = URI.create(url.endsWith("/") ? url : url + "/");
+        }
+        try {
+            new LoadGenerator(baseUri).run();
+        } finally {
+            if (server != null) {
+                server.shutdownNow();
+            }
+        }
+    }
+
+    void run() throws IOException, InterruptedException {
+        createAccounts();
+        System.out.println(String.format("%s loop, %d %s, %s requests/s, %d accounts with skew %s, for %ds after %ds warmup",
+                openLoop ? "Open" : "Closed", concurrency, openLoop ? "in flight at most" : "clients",
+                rate == 0 ? "unpaced" : Integer.toString(rate), accounts, skew, durationSeconds, warmupSeconds));
+        long startNanos = System.nanoTime();
+        long measureFrom = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long endNanos = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        if (openLoop) {
+            runOpenLoop(startNanos, measureFrom, endNanos);
+        } else {
+            runClosedLoop(measureFrom, endNanos);
+        }
+        report();
+    }
+
+    /**
+     * Creates the accounts with enough funds that transfers are not rejected, keeping the numbers they are given.
+     */
+    private void createAccounts() throws InterruptedException {
+        accountNos = new int[accounts];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        for (int client = 0; client < concurrency; client++) {
+            clients.execute(() -> {
+                for (int i = next.getAndIncrement(); i < accounts; i = next.getAndIncrement()) {
+                    try {
+                        HttpResponse<String> response = httpClient.send(post("accounts",
+                                "{\"customerName\":\"Load Test\",\"initialDeposit\":1000000000}"),
+                                HttpResponse.BodyHandlers.ofString());
+                        Matcher number = ACCOUNT_NUMBER.matcher(response.body());
+                        Validate.validState(response.statusCode() == 200 && number.find(),
+                                "Account was not created: %d %s", response.statusCode(), response.body());
+                        accountNos[i] = Integer.parseInt(number.group(1));
+                    } catch (IOException | RuntimeException e) {
+                        failures.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.HOURS);
+        Validate.validState(failures.get() == 0, "%d accounts could not be created!", failures.get());
+    }
+
+    /**
+     * Sends each request when it is due from one thread, without waiting for responses unless the most requests
+     * are already in flight, when the wait makes the request late, which counts against its latency.
+     */
+    private void runOpenLoop(long startNanos, long measureFrom, long endNanos) throws InterruptedException {
+        measureFromNanos = measureFrom;
+        Semaphore inFlight = new Semaphore(concurrency);
+        SplittableRandom random = new SplittableRandom(seed);
+        double intervalNanos = 1e9 / rate;
+        for (long i = 0; ; i++) {
+            long dueNanos = startNanos + (long) (i * intervalNanos);
+            if (dueNanos >= endNanos) {
+                break;
+            }
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            Request request = nextRequest(random);
+            inFlight.acquire();
+            long sentNanos = System.nanoTime();
+            httpClient.sendAsync(request.httpRequest, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        long completedNanos = System.nanoTime();
+                        inFlight.release();
+                        request.operation.recordSynchronized(dueNanos, sentNanos, completedNanos, response, failure, 0);
+                    });
+        }
+        if (!inFlight.tryAcquire(concurrency, WAIT_FOR_IN_FLIGHT_SECONDS, TimeUnit.SECONDS)) {
+            System.err.println(String.format("%d requests were still in flight after %ds",
+                    concurrency - inFlight.availablePermits(), WAIT_FOR_IN_FLIGHT_SECONDS));
+        }
+    }
+
+    /**
+     * Each client sends its next request once it has the response to the last, paced to its share of the rate if any.
+     * Without a rate the clients are corrected at the mean latency of the warmup,
+     * the interval they would be sending at were there no stalls.
+     */
+    private void runClosedLoop(long measureFrom, long endNanos) throws InterruptedException {
+        long clientIntervalNanos = rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(concurrency) / rate;
+        expectedIntervalMicros = TimeUnit.NANOSECONDS.toMicros(clientIntervalNanos);
+        LongAdder warmupMicros = new LongAdder();
+        LongAdder warmupCount = new LongAdder();
+        List<Thread> clients = new ArrayList<>();
+        for (int client = 0; client < concurrency; client++) {
+            SplittableRandom random = new SplittableRandom(seed + client);
+            Thread thread = new Thread(() -> {
+                long dueNanos = System.nanoTime();
+                while (dueNanos < endNanos) {
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                    Request request = nextRequest(random);
+                    long sentNanos = System.nanoTime();
+                    HttpResponse<Void> response = null;
+                    Throwable failure = null;
+                    try {
+                        response = httpClient.send(request.httpRequest, HttpResponse.BodyHandlers.discarding());
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long completedNanos = System.nanoTime();
+                    if (sentNanos < measureFrom) {
+                        warmupMicros.add(TimeUnit.NANOSECONDS.toMicros(completedNanos - sentNanos));
+                        warmupCount.increment();
+                    }
+                    request.operation.recordSynchronized(sentNanos, sentNanos, completedNanos, response, failure,
+                            expectedIntervalMicros);
+                    // Not catching up on requests which should have been sent while waiting, that is what the correction is for
+                    dueNanos = Math.max(dueNanos + clientIntervalNanos, completedNanos);
+                }
+            }, "load-client-" + client);
+            clients.add(thread);
+            thread.start();
+        }
+        for (long waitNanos = measureFrom - System.nanoTime(); waitNanos > 0; waitNanos = measureFrom - System.nanoTime()) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        if (rate == 0) {
+            expectedIntervalMicros = warmupCount.sum() == 0 ? 0 : warmupMicros.sum() / warmupCount.sum();
+        }
+        measureFromNanos = measureFrom;
+        System.out.println(String.format("Correcting at an expected interval of %.3fms", expectedIntervalMicros / 1000.0));
+        for (Thread client : clients) {
+            client.join();
+        }
+    }
+
+    private Request nextRequest(SplittableRandom random) {
+        int from = distribution.sample(random) - 1;
+        if (random.nextDouble() < readRatio) {
+            return new Request(reads, HttpRequest.newBuilder(baseUri.resolve("accounts/" + accountNos[from])).GET().build());
+        }
+        int to = distribution.sample(random) - 1;
+        if (to == from) {
+            to = (from + 1) % accounts;
+        }
+        String amount = BigDecimal.valueOf(amounts.applyAsLong(random), 2).toPlainString();
+        return new Request(transfers, post("accounts/transfer",
+                "{\"fromAccountNo\":" + accountNos[from] + ",\"toAccountNo\":" + accountNos[to] + ",\"amount\":" + amount + "}"));
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private void report() throws IOException {
+        Files.createDirectories(reportDir);
+        System.out.println(String.format("%-10s %-12s %10s %8s %10s %10s %10s %10s %10s %10s %10s", "Endpoint", "Latency ms",
+                "Count", "Errors", "Req/s", "p50", "p90", "p99", "p99.9", "p99.99", "Max"));
+        for (Operation operation : new Operation[] {reads, transfers}) {
+            operation.report(System.out, "corrected", operation.corrected, durationSeconds);
+            operation.report(System.out, "uncorrected", operation.uncorrected, durationSeconds);
+            writeDistribution(operation.name + ".hgrm", operation.corrected);
+            writeDistribution(operation.name + "-uncorrected.hgrm", operation.uncorrected);
+        }
+        System.out.println("Percentile distributions written to " + reportDir.toAbsolutePath());
+    }
+
+    private void writeDistribution(String fileName, LatencyHistogram histogram) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(reportDir.resolve(fileName)), false, "UTF-8")) {
+            histogram.outputPercentileDistribution(out, 5, 1000.0);
+        }
+    }
+
+    /**
+     * @param spec - <code>fixed:amount</code>, <code>uniform:min:max</code> or <code>lognormal:median:sigma</code>, in minor units
+     */
+    static ToLongFunction<SplittableRandom> amounts(String spec) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "fixed":
+                Validate.isTrue(parts.length == 2, "Expecting fixed:amount but was %s", spec);
+                long amount = Long.parseLong(parts[1]);
+                return random -> amount;
+            case "uniform":
+                Validate.isTrue(parts.length == 3, "Expecting uniform:min:max but was %s", spec);
+                long min = Long.parseLong(parts[1]);
+                long max = Long.parseLong(parts[2]);
+                return random -> random.nextLong(min, max + 1);
+            case "lognormal":
+                Validate.isTrue(parts.length == 3, "Expecting lognormal:median:sigma but was %s", spec);
+                double median = Double.parseDouble(parts[1]);
+                double sigma = Double.parseDouble(parts[2]);
+                return random -> Math.max(1, Math.round(median * Math.exp(sigma * random.nextGaussian())));
+            default:
+                throw new IllegalArgumentException(String.format("Unknown amount distribution %s!", spec));
+        }
+    }
+
+    private static class Request {
+        private final Operation operation;
+        private final HttpRequest httpRequest;
+
+        Request(Operation operation, HttpRequest httpRequest) {
+            this.operation = operation;
+            this.httpRequest = httpRequest;
+        }
+    }
+
+    /**
+     * The latencies of one endpoint in microseconds, recorded from any client thread once the warmup is over.
+     */
+    private class Operation {
+        private final String name;
+        private final LatencyHistogram corrected = new LatencyHistogram();
+        private final LatencyHistogram uncorrected = new LatencyHistogram();
+        private long errors;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param dueNanos - when the request should have been sent, which the corrected latency is timed from
+         * @param expectedIntervalMicros - the interval to correct at, or zero when the request was timed from when it was due
+         */
+        synchronized void recordSynchronized(long dueNanos, long sentNanos, long completedNanos, HttpResponse<?> response,
+                Throwable failure, long expectedIntervalMicros) {
+            if (dueNanos < measureFromNanos) {
+                return;
+            }
+            if (failure != null || response.statusCode() < 200 || response.statusCode() >= 300) {
+                errors++;
+            }
+            corrected.recordValueWithExpectedInterval(TimeUnit.NANOSECONDS.toMicros(completedNanos - dueNanos),
+                    expectedIntervalMicros);
+            uncorrected.recordValue(TimeUnit.NANOSECONDS.toMicros(completedNanos - sentNanos));
+        }
+
+        synchronized void report(PrintStream out, String latency, LatencyHistogram histogram, int seconds) {
+            out.println(String.format("%-10s %-12s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f",
+                    name, latency, uncorrected.getTotalCount(), errors, (double) uncorrected.getTotalCount() / seconds,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getValueAtPercentile(99.99) / 1000.0, histogram.getMax() / 1000.0));
+        }
+    }
+}
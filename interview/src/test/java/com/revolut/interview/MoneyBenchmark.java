@@ -0,0 +1,53 @@
+package com.revolut.interview;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The balance arithmetic of a transfer done with {@link BigDecimal} against {@link Money} minor units.
+ * Run with <code>-prof gc</code> to compare the allocation rate of each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private BigDecimal decimalBalance = new BigDecimal("1000000.00");
+    private BigDecimal decimalOverdraft = new BigDecimal("500.00");
+    private BigDecimal decimalAmount = new BigDecimal("0.01");
+
+    private long balance = Money.toMinorUnits(decimalBalance);
+    private long overdraft = Money.toMinorUnits(decimalOverdraft);
+    private long amount = Money.toMinorUnits(decimalAmount);
+
+    @Benchmark
+    public BigDecimal bigDecimalTransfer() {
+        BigDecimal fundsAvailable = decimalBalance.add(decimalOverdraft);
+        if (fundsAvailable.compareTo(decimalAmount) >= 0) {
+            decimalBalance = decimalBalance.subtract(decimalAmount).add(decimalAmount);
+        }
+        return decimalBalance;
+    }
+
+    @Benchmark
+    public long minorUnitsTransfer() {
+        long fundsAvailable = Math.addExact(balance, overdraft);
+        if (fundsAvailable >= amount) {
+            balance = Math.addExact(Math.subtractExact(balance, amount), amount);
+        }
+        return balance;
+    }
+}
@@ -0,0 +1,51 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+public class MoneyTest {
+
+    @Test
+    public void testToMinorUnits() {
+        assertThat(Money.toMinorUnits(new BigDecimal(12))).isEqualTo(1200);
+        assertThat(Money.toMinorUnits(new BigDecimal("12.3"))).isEqualTo(1230);
+        assertThat(Money.toMinorUnits(new BigDecimal("-0.05"))).isEqualTo(-5);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testToMinorUnitsRejectsFractionsOfMinorUnits() {
+        Money.toMinorUnits(new BigDecimal("1.005"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testToMinorUnitsRejectsOverflow() {
+        Money.toMinorUnits(new BigDecimal(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testToBigDecimalUsesFewestDecimalPlaces() {
+        assertThat(Money.toBigDecimal(1200)).isEqualTo(new BigDecimal(12));
+        assertThat(Money.toBigDecimal(1230)).isEqualTo(new BigDecimal("12.3"));
+        assertThat(Money.toBigDecimal(-5)).isEqualTo(new BigDecimal("-0.05"));
+        assertThat(Money.toBigDecimal(0)).isEqualTo(BigDecimal.ZERO);
+        assertThat(Money.toBigDecimal(100000)).isEqualTo(new BigDecimal(1000));
+    }
+
+    @Test
+    public void testArithmetic() {
+        Money total = Money.of(new BigDecimal("10.50")).plus(Money.ofMinorUnits(25)).minus(Money.of(BigDecimal.ONE));
+
+        assertThat(total.getMinorUnits()).isEqualTo(975);
+        assertThat(total).isEqualTo(Money.ofMinorUnits(975));
+        assertThat(total.toString()).isEqualTo("9.75");
+        assertThat(total.compareTo(Money.ZERO)).isPositive();
+    }
+
+    @Test(expected=ArithmeticException.class)
+    public void testArithmeticOverflow() {
+        Money.ofMinorUnits(Long.MAX_VALUE).plus(Money.ofMinorUnits(1));
+    }
+}
@@ -0,0 +1,165 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.AccountTestUtils.assertTransaction;
+import static com.revolut.interview.TransactionType.CREDIT;
+import static com.revolut.interview.TransactionType.DEBIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OffHeapAccountRepositoryTest {
+
+    private OffHeapAccountRepository testee = new OffHeapAccountRepository(2, new StringArena(64));
+
+    @Test
+    public void testCreateAccount() {
+        Account resultAccount = testee.create(createAccount("Joe Smith"));
+
+        assertThat(resultAccount.getNumber()).isEqualTo(1);
+        assertThat(resultAccount.getVersion()).isEqualTo(1);
+        assertThat(resultAccount.getTransactions()).hasSize(2);
+        assertTransaction(resultAccount.getTransactions().get(0), 1, CREDIT, 50, 50);
+        assertTransaction(resultAccount.getTransactions().get(1), 2, DEBIT, 10, 40);
+    }
+
+    @Test
+    public void testGetAccountHasStateWithoutHistory() {
+        testee.create(createAccount("Joe Smith"));
+        testee.create(createAccount("Jane Doe"));
+        testee.create(createAccount("Jim Jones"));
+
+        Account account = testee.get(3);
+
+        assertThat(account.getNumber()).isEqualTo(3);
+        assertThat(account.getCustomerName()).isEqualTo("Jim Jones");
+        assertThat(account.getOverdraftLimit()).isEqualTo(new BigDecimal("20.5"));
+        assertThat(account.getCurrentBalance()).isEqualTo(new BigDecimal(40));
+        assertThat(account.getLastTransactionId()).isEqualTo(6);
+        assertThat(account.getVersion()).isEqualTo(1);
+        assertThat(account.getTransactions()).isEmpty();
+        // Three accounts with two records per page
+        assertThat(testee.getAllocatedBytes()).isEqualTo(2 * 2 * OffHeapAccountRepository.RECORD_BYTES + 64);
+    }
+
+    @Test
+    public void testUpdateAccount() {
+        testee.create(createAccount("Joe Smith"));
+
+        Account account = testee.get(1);
+        account.addTransaction(CREDIT, new BigDecimal(100));
+        Account updatedAccount = testee.update(account);
+
+        assertThat(updatedAccount.getVersion()).isEqualTo(2);
+        assertThat(updatedAccount.getTransactions()).hasSize(1);
+        assertTransaction(updatedAccount.getTransactions().get(0), 3, CREDIT, 100, 140);
+        assertThat(testee.get(1).getCurrentBalance()).isEqualTo(new BigDecimal(140));
+        assertThat(testee.get(1).getLastTransactionId()).isEqualTo(3);
+    }
+
+    @Test
+    public void testUpdateConcurrencyException() {
+        testee.create(createAccount("Joe Smith"));
+        Account account1 = testee.get(1);
+        Account account2 = testee.get(1);
+        account1.addTransaction(CREDIT, new BigDecimal(100));
+        account2.addTransaction(DEBIT, new BigDecimal(10));
+        testee.update(account1);
+
+        try {
+            testee.update(account2);
+            Assert.fail("Expected the out of date account to be rejected");
+        } catch (ConcurrentModificationException e) {
+            assertThat(testee.getAborts()).isEqualTo(1);
+            assertThat(testee.get(1).getCurrentBalance()).isEqualTo(new BigDecimal(140));
+        }
+    }
+
+    @Test
+    public void testCreditIsAppliedToCurrentAccount() {
+        testee.create(createAccount("Joe Smith"));
+        testee.create(createAccount("Jane Doe"));
+        Account first = testee.get(1);
+        first.addTransaction(DEBIT, new BigDecimal(10));
+        Account second = testee.get(2);
+        second.addTransaction(CREDIT, new BigDecimal(5));
+        testee.update(second);
+
+        Pair<Account, Account> pair = testee.updateAndCredit(first, 2, 1000);
+
+        assertTransaction(pair.getLeft().getTransactions().get(0), 6, DEBIT, 10, 30);
+        assertTransaction(pair.getRight().getTransactions().get(0), 7, CREDIT, 10, 55);
+        assertThat(testee.get(2).getVersion()).isEqualTo(3);
+        assertThat(testee.getAborts()).isZero();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNegativeCreditIsRejected() {
+        testee.create(createAccount("Joe Smith"));
+        testee.create(createAccount("Jane Doe"));
+
+        testee.updateAndCredit(testee.get(1), 2, -1000);
+    }
+
+    @Test
+    public void testUpdatePairAndList() {
+        testee.create(createAccount("Joe Smith"));
+        testee.create(createAccount("Jane Doe"));
+        testee.create(createAccount("Jim Jones"));
+
+        Account first = testee.get(1);
+        Account second = testee.get(2);
+        first.addTransaction(DEBIT, new BigDecimal(10));
+        second.addTransaction(CREDIT, new BigDecimal(10));
+        Pair<Account, Account> pair = testee.update(new ImmutablePair<>(first, second));
+
+        assertTransaction(pair.getLeft().getTransactions().get(0), 7, DEBIT, 10, 30);
+        assertTransaction(pair.getRight().getTransactions().get(0), 8, CREDIT, 10, 50);
+
+        Account stale = testee.get(3);
+        List<Account> accounts = Arrays.asList(testee.get(2), stale);
+        testee.update(stale);
+        try {
+            testee.update(accounts);
+            Assert.fail("Expected the out of date account to be rejected");
+        } catch (ConcurrentModificationException e) {
+            assertThat(testee.get(2).getVersion()).isEqualTo(2);
+        }
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testGetUnknownAccount() {
+        testee.create(createAccount("Joe Smith"));
+        testee.get(2);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUpdatePairOfSameAccount() {
+        testee.create(createAccount("Joe Smith"));
+        testee.update(new ImmutablePair<>(testee.get(1), testee.get(1)));
+    }
+
+    private Account createAccount(String customerName) {
+        return new Account.Builder()
+                .customerName(customerName)
+                .overdraftLimit(new BigDecimal("20.50"))
+                .transaction(new AccountTransaction.Builder()
+                        .type(CREDIT)
+                        .amount(new BigDecimal(50))
+                        .balance(new BigDecimal(50))
+                        .build())
+                .transaction(new AccountTransaction.Builder()
+                        .type(DEBIT)
+                        .amount(new BigDecimal(10))
+                        .balance(new BigDecimal(40))
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.AccountTestUtils.assertTransaction;
+import static com.revolut.interview.TransactionType.CREDIT;
+import static com.revolut.interview.TransactionType.DEBIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartitionedAccountRepositoryTest {
+
+    private static final int SECOND_PARTITION = 1 << 29;
+
+    private PartitionedAccountRepository testee = new PartitionedAccountRepository(3, 
+            (partition, firstIdAfter, lastId) -> new AccountCache(firstIdAfter, lastId, null));
+
+    @Test
+    public void testAccountsAreSpreadAcrossPartitionsByNumberPrefix() {
+        Account first = testee.create(createAccount(50));
+        Account second = testee.create(createAccount(50));
+        Account third = testee.create(createAccount(50));
+        Account fourth = testee.create(createAccount(50));
+
+        assertThat(first.getNumber()).isEqualTo(1);
+        assertThat(second.getNumber()).isEqualTo(SECOND_PARTITION + 1);
+        assertThat(third.getNumber()).isEqualTo(2 * SECOND_PARTITION + 1);
+        assertThat(fourth.getNumber()).isEqualTo(2);
+        assertTransaction(second.getTransactions().get(0), SECOND_PARTITION + 1, CREDIT, 50, 50);
+        assertThat(testee.partitionOf(second.getNumber())).isEqualTo(1);
+        assertThat(testee.get(SECOND_PARTITION + 1).getNumber()).isEqualTo(SECOND_PARTITION + 1);
+        assertThat(((AccountCache) testee.getPartition(0)).getCommits()).isEqualTo(0);
+    }
+
+    @Test
+    public void testUpdateWithinPartition() {
+        testee.create(0, createAccount(50));
+        testee.create(0, createAccount(50));
+        Account first = testee.get(1);
+        Account second = testee.get(2);
+        first.addTransaction(DEBIT, new BigDecimal(20));
+        second.addTransaction(CREDIT, new BigDecimal(20));
+
+        testee.withLocks(Arrays.asList(1, 2), () -> testee.update(new ImmutablePair<>(first, second)));
+
+        assertThat(testee.get(1).getCurrentBalance()).isEqualTo(new BigDecimal(30));
+        assertThat(testee.get(2).getCurrentBalance()).isEqualTo(new BigDecimal(70));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUpdateAcrossPartitions() {
+        testee.create(0, createAccount(50));
+        testee.create(1, createAccount(50));
+
+        testee.update(Arrays.asList(testee.get(1), testee.get(SECOND_PARTITION + 1)));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCreditAcrossPartitions() {
+        testee.create(0, createAccount(50));
+        testee.create(1, createAccount(50));
+
+        testee.updateAndCredit(testee.get(1), SECOND_PARTITION + 1, 1000);
+    }
+
+    @Test
+    public void testPartitionIdsStopBeforeTheNextPartition() {
+        assertThat(testee.lastIdOf(0)).isEqualTo(SECOND_PARTITION - 1);
+        assertThat(testee.partitionOf(testee.lastIdOf(0))).isEqualTo(0);
+        assertThat(testee.partitionOf(testee.lastIdOf(0) + 1)).isEqualTo(1);
+        assertThat(new PartitionedAccountRepository(2, (partition, firstIdAfter, lastId) -> null).lastIdOf(1))
+                .isEqualTo(Integer.MAX_VALUE);
+
+        AccountCache partition = new AccountCache(testee.lastIdOf(0) - 1, testee.lastIdOf(0), null);
+        partition.create(new Account.Builder().customerName("Joe Smith").build());
+        try {
+            partition.create(new Account.Builder().customerName("Joe Smith").build());
+            Assert.fail("Expecting the partition to refuse account numbers of the next partition!");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testGetAccountBeyondLastPartition() {
+        testee.get(3 * SECOND_PARTITION + 1);
+    }
+
+    private Account createAccount(int deposit) {
+        return new Account.Builder()
+                .customerName("Joe Smith")
+                .transaction(new AccountTransaction.Builder()
+                        .type(CREDIT)
+                        .amount(deposit)
+                        .balance(deposit)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,35 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    private RetryPolicy testee = new RetryPolicy.Builder()
+            .maxAttempts(10)
+            .initialBackoffMillis(2)
+            .maxBackoffMillis(20)
+            .pessimisticAfter(4)
+            .build();
+
+    @Test
+    public void testBackoffGrowsExponentiallyUpToMaximum() {
+        for (int i = 0; i < 1000; i++) {
+            assertThat(testee.backoffMillis(1)).isBetween(0L, 2L);
+            assertThat(testee.backoffMillis(3)).isBetween(0L, 8L);
+            assertThat(testee.backoffMillis(40)).isBetween(0L, 20L);
+        }
+    }
+
+    @Test
+    public void testPessimisticOnlyAfterAborts() {
+        assertThat(testee.isPessimistic(4)).isFalse();
+        assertThat(testee.isPessimistic(5)).isTrue();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBackoffCannotExceedMaximum() {
+        new RetryPolicy.Builder().initialBackoffMillis(10).maxBackoffMillis(5).build();
+    }
+}
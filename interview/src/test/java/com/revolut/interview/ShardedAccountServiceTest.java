@@ -0,0 +1,195 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.AccountTestUtils.assertTransaction;
+import static com.revolut.interview.AccountTestUtils.createFundTransferRequest;
+import static com.revolut.interview.TransactionType.CREDIT;
+import static com.revolut.interview.TransactionType.DEBIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ShardedAccountServiceTest {
+
+    private ShardedAccountService testee = new ShardedAccountService(4, 16);
+
+    @After
+    public void shutdown() {
+        testee.close();
+    }
+
+    @Test
+    public void testCreateAccount() {
+        Account resultAccount = testee.createAccount(createRequest(1000, 100));
+
+        assertThat(resultAccount.getNumber()).isEqualTo(1);
+        assertThat(resultAccount.getCustomerName()).isEqualTo("Joe Smith");
+        assertThat(resultAccount.getOverdraftLimit()).isEqualTo(new BigDecimal(1000));
+        assertThat(resultAccount.getVersion()).isEqualTo(1);
+        assertThat(resultAccount.getTransactions()).hasSize(1);
+        assertTransaction(resultAccount.getTransactions().get(0), 1, CREDIT, 100, 100);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCreateAccountWithNegativeDeposit() {
+        testee.createAccount(createRequest(1000, -100));
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testGetUnknownAccount() {
+        testee.getAccount(1);
+    }
+
+    @Test
+    public void testAsyncTransferBetweenShards() {
+        testee.createAccountAsync(createRequest(200, 100)).join();
+        testee.createAccountAsync(createRequest(0, 50)).join();
+
+        testee.transferAsync(createFundTransferRequest(1, 2, 30)).join();
+
+        assertThat(testee.getAccountAsync(1).join().getCurrentBalance()).isEqualTo(new BigDecimal(70));
+        assertThat(testee.getAccountAsync(2).join().getCurrentBalance()).isEqualTo(new BigDecimal(80));
+    }
+
+    @Test
+    public void testAsyncTransferToUnknownAccount() {
+        testee.createAccount(createRequest(0, 100));
+
+        CompletableFuture<Void> result = testee.transferAsync(createFundTransferRequest(1, 2, 30));
+
+        assertThat(catchCause(result)).isInstanceOf(NullPointerException.class);
+        assertThat(testee.getAccount(1).getCurrentBalance()).isEqualTo(new BigDecimal(100));
+    }
+
+    @Test
+    public void testTransferBetweenShards() {
+        testee.createAccount(createRequest(200, 100));
+        testee.createAccount(createRequest(0, 200));
+
+        testee.transfer(createFundTransferRequest(1, 2, 300));
+
+        Account fromAccount = testee.getAccount(1);
+        assertThat(fromAccount.getCurrentBalance()).isEqualTo(new BigDecimal(-200));
+        assertTransaction(fromAccount.getTransactions().get(1), 3, DEBIT, 300, -200);
+        Account toAccount = testee.getAccount(2);
+        assertThat(toAccount.getCurrentBalance()).isEqualTo(new BigDecimal(500));
+        assertTransaction(toAccount.getTransactions().get(1), 4, CREDIT, 300, 500);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testInsufficientFundsForTransfer() {
+        testee.createAccount(createRequest(200, 100));
+        testee.createAccount(createRequest(0, 200));
+
+        testee.transfer(createFundTransferRequest(1, 2, 301));
+    }
+
+    @Test
+    public void testTransferToUnknownAccountLeavesFundsUntouched() {
+        testee.createAccount(createRequest(0, 100));
+
+        try {
+            testee.transfer(createFundTransferRequest(1, 2, 50));
+        } catch (NullPointerException e) {
+            // expected
+        }
+
+        assertThat(testee.getAccount(1).getCurrentBalance()).isEqualTo(new BigDecimal(100));
+    }
+
+    @Test
+    public void testTransferOverflowingCreditIsRejectedBeforeDebit() {
+        testee.createAccount(createRequest(0, 100));
+        testee.createAccount(createRequest(BigDecimal.valueOf(Long.MAX_VALUE - 50, 2)));
+
+        try {
+            testee.transfer(createFundTransferRequest(1, 2, 1));
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertThat(testee.getAccount(1).getCurrentBalance()).isEqualTo(new BigDecimal(100));
+        assertThat(testee.getAccount(2).getCurrentBalance()).isEqualByComparingTo(BigDecimal.valueOf(Long.MAX_VALUE - 50, 2));
+    }
+
+    @Test
+    public void testFailedCreditIsRefundedAndShardKeepsRunning() {
+        testee.createAccount(createRequest(0, 100));
+        testee.createAccount(createRequest(0, 100));
+        testee.createAccount(createRequest(BigDecimal.valueOf(Long.MAX_VALUE - 150, 2)));
+
+        // Both credits are usually checked before either is applied, so the second one fails on the target shard
+        CompletableFuture<Void> first = testee.transferAsync(createFundTransferRequest(1, 3, 1));
+        CompletableFuture<Void> second = testee.transferAsync(createFundTransferRequest(2, 3, 1));
+        catchCause(first);
+        catchCause(second);
+
+        assertThat(testee.getAccount(3).getCurrentBalance()).isEqualByComparingTo(BigDecimal.valueOf(Long.MAX_VALUE - 50, 2));
+        assertThat(testee.getAccount(1).getCurrentBalance().add(testee.getAccount(2).getCurrentBalance()))
+                .isEqualTo(new BigDecimal(199));
+        testee.transfer(createFundTransferRequest(3, 1, 1));
+        assertThat(testee.getAccount(1).getCurrentBalance()).isPositive();
+    }
+
+    @Test
+    public void testConcurrentTransfersConserveFunds() throws InterruptedException {
+        for (int i = 0; i < 8; i++) {
+            testee.createAccount(createRequest(0, 1000));
+        }
+
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 2000; i++) {
+            service.submit(() -> {
+                int from = ThreadLocalRandom.current().nextInt(8) + 1;
+                int to = from % 8 + 1;
+                try {
+                    testee.transfer(createFundTransferRequest(from, to, 10));
+                } catch (IllegalStateException e) {
+                    // insufficient funds is fine
+                }
+            });
+        }
+        service.shutdown();
+        service.awaitTermination(1, TimeUnit.MINUTES);
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 1; i <= 8; i++) {
+            assertThat(testee.getAccount(i).getCurrentBalance()).isNotNegative();
+            total = total.add(testee.getAccount(i).getCurrentBalance());
+        }
+        assertThat(total).isEqualTo(new BigDecimal(8000));
+    }
+
+    private NewAccountRequest createRequest(Integer overDraftLimit, Integer initialDeposit) {
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setOverDraftLimit(new BigDecimal(overDraftLimit));
+        request.setInitialDeposit(new BigDecimal(initialDeposit));
+        return request;
+    }
+
+    private NewAccountRequest createRequest(BigDecimal initialDeposit) {
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setOverDraftLimit(BigDecimal.ZERO);
+        request.setInitialDeposit(initialDeposit);
+        return request;
+    }
+
+    private Throwable catchCause(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.revolut.interview;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Transfer throughput of the sharded engine against the locking {@link AccountServiceImpl}.
+ * {@link #main(String[])} compares how each scales with 1, 4, 8 and 16 cores, e.g.
+ * <code>mvn test-compile exec:exec -Pbenchmark -Dbenchmark.main=com.revolut.interview.ShardedTransferBenchmark</code>,
+ * which needs a machine with at least 16 cores for the numbers to mean anything.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedTransferBenchmark {
+
+    private static final int ACCOUNTS = 10000;
+    private static final int[] CORES = {1, 4, 8, 16};
+
+    @Param({"locking", "sharded"})
+    private String accountService;
+
+    @Param({"1", "4", "8", "16"})
+    private int shards;
+
+    private AccountService service;
+
+    /**
+     * Runs both engines once for each number of cores, with as many threads and shards, in a fork which is only
+     * shown that many processors, then reports their throughput side by side.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Map<Integer, double[]> rows = new LinkedHashMap<>();
+        for (int cores : CORES) {
+            double[] row = rows.computeIfAbsent(cores, key -> new double[2]);
+            for (RunResult result : new Runner(new OptionsBuilder()
+                    .include(Pattern.quote(ShardedTransferBenchmark.class.getName()) + "\\.")
+                    .threads(cores)
+                    .param("shards", Integer.toString(cores))
+                    .jvmArgsAppend("-XX:ActiveProcessorCount=" + cores)
+                    .build()).run()) {
+                boolean sharded = "sharded".equals(result.getParams().getParam("accountService"));
+                row[sharded ? 1 : 0] = result.getPrimaryResult().getScore();
+            }
+        }
+
+        System.out.println();
+        System.out.println(String.format("%6s %16s %16s %10s", "Cores", "locking ops/ms", "sharded ops/ms", "speedup"));
+        rows.forEach((cores, row) -> System.out.println(
+                String.format("%6d %16.1f %16.1f %10.2f", cores, row[0], row[1], row[1] / row[0])));
+    }
+
+    @Setup
+    public void setup() {
+        service = "sharded".equals(accountService)
+                ? new ShardedAccountService(shards, ShardedAccountService.DEFAULT_QUEUE_CAPACITY)
+                : new AccountServiceImpl();
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setInitialDeposit(new BigDecimal(Integer.MAX_VALUE));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            service.createAccount(request);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (service instanceof ShardedAccountService) {
+            ((ShardedAccountService) service).close();
+        }
+    }
+
+    @Benchmark
+    public void transfer() {
+        int from = ThreadLocalRandom.current().nextInt(ACCOUNTS) + 1;
+        int to = from % ACCOUNTS + 1;
+        try {
+            service.transfer(AccountTestUtils.createFundTransferRequest(from, to, 1));
+        } catch (RuntimeException e) {
+            // conflicts are counted as completed operations for both engines
+        }
+    }
+}
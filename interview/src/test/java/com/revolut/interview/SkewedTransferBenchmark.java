@@ -0,0 +1,86 @@
+package com.revolut.interview;
+
+import java.math.BigDecimal;
+import java.util.ConcurrentModificationException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * {@link AccountServiceImpl#transfer(FundTransferRequest)} between accounts picked from a {@link ZipfDistribution},
+ * from uniform to a few hot accounts taking most transfers, to show how contention on them costs throughput.
+ * Each thread picks from its own seeded random, and the service is rebuilt before every iteration.
+ * Transfers which run out of retries count as operations, their number is in the service's conflict metrics.
+ * Part of the {@link HotPathBenchmarks}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SkewedTransferBenchmark {
+
+    private static final int ACCOUNTS = 10000;
+
+    @Param({"0", "0.99", "1.2"})
+    private double exponent;
+
+    private ZipfDistribution distribution;
+    private AccountService service;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        private SplittableRandom random;
+
+        @Setup
+        public void setup(ThreadParams threadParams) {
+            random = new SplittableRandom(threadParams.getThreadIndex());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupDistribution() {
+        distribution = new ZipfDistribution(ACCOUNTS, exponent);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupAccounts() {
+        service = new AccountServiceImpl();
+        NewAccountRequest request = new NewAccountRequest();
+        request.setCustomerName("Joe Smith");
+        request.setInitialDeposit(new BigDecimal(Integer.MAX_VALUE));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            service.createAccount(request);
+        }
+    }
+
+    @Benchmark
+    public void transfer(Picker picker) {
+        int from = distribution.sample(picker.random);
+        int to = distribution.sample(picker.random);
+        if (to == from) {
+            to = from % ACCOUNTS + 1;
+        }
+        try {
+            service.transfer(AccountTestUtils.createFundTransferRequest(from, to, 1));
+        } catch (ConcurrentModificationException e) {
+            // retries ran out on a hot account
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.revolut.interview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class StringArenaTest {
+
+    private StringArena testee = new StringArena(16);
+
+    @Test
+    public void testAppendAndGet() {
+        long first = testee.append("Joe");
+        long second = testee.append("Zo\u00eb");
+        long none = testee.append(null);
+
+        assertThat(testee.get(first)).isEqualTo("Joe");
+        assertThat(testee.get(second)).isEqualTo("Zo\u00eb");
+        assertThat(testee.get(none)).isNull();
+        assertThat(none).isEqualTo(StringArena.NULL);
+    }
+
+    @Test
+    public void testStringsDoNotSpanPages() {
+        testee.append("Joe Smith");
+        long second = testee.append("Jane");
+
+        assertThat(second).isEqualTo(16);
+        assertThat(testee.get(second)).isEqualTo("Jane");
+        assertThat(testee.getAllocatedBytes()).isEqualTo(32);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testStringLargerThanPage() {
+        testee.append("Joe Smith Junior");
+    }
+}
@@ -0,0 +1,148 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TransactionHistoryTest {
+
+    @Test
+    public void testAppendAcrossChunks() {
+        TransactionHistory history = createHistory(200);
+
+        assertThat(history).hasSize(200);
+        for (int i = 0; i < 200; i++) {
+            assertThat(history.get(i).getId()).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testCopySharesEntries() {
+        TransactionHistory history = createHistory(100);
+
+        TransactionHistory copy = history.copy();
+
+        assertThat(copy).isNotSameAs(history);
+        assertThat(copy).isEqualTo(history);
+        assertThat(copy.get(99)).isSameAs(history.get(99));
+    }
+
+    @Test
+    public void testAppendToCopyDoesNotChangeOriginal() {
+        TransactionHistory history = createHistory(10);
+
+        TransactionHistory copy = history.copy();
+        copy.add(createTransaction(10));
+
+        assertThat(history).hasSize(10);
+        assertThat(copy).hasSize(11);
+        assertThat(copy.get(10).getId()).isEqualTo(10);
+    }
+
+    @Test
+    public void testDivergingCopiesBranch() {
+        TransactionHistory history = createHistory(70);
+
+        TransactionHistory first = history.copy();
+        TransactionHistory second = history.copy();
+        first.add(createTransaction(100));
+        second.add(createTransaction(200));
+        second.add(createTransaction(201));
+
+        assertThat(history).hasSize(70);
+        assertThat(first).hasSize(71);
+        assertThat(first.get(70).getId()).isEqualTo(100);
+        assertThat(second).hasSize(72);
+        assertThat(second.get(70).getId()).isEqualTo(200);
+        assertThat(second.get(71).getId()).isEqualTo(201);
+        assertThat(second.get(69)).isSameAs(first.get(69));
+    }
+
+    @Test
+    public void testOfListAndClear() {
+        TransactionHistory history = TransactionHistory.of(Arrays.asList(createTransaction(1), createTransaction(2)));
+        assertThat(history).hasSize(2);
+
+        history.clear();
+
+        assertThat(history).isEmpty();
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testGetPastSizeOfCopy() {
+        TransactionHistory history = createHistory(5);
+        TransactionHistory copy = history.copy();
+        history.add(createTransaction(5));
+
+        copy.get(5);
+    }
+
+    @Test
+    public void testSpillKeepsHotTransactionsOnHeap() {
+        ColdTransactionStore coldStore = ColdTransactionStore.offHeap(ColdTransactionStore.DEFAULT_BLOCK_BYTES);
+        TransactionHistory history = createHistory(200);
+        AccountTransaction hot = history.get(150);
+
+        assertThat(history.spill(50, coldStore)).isEqualTo(2);
+
+        assertThat(coldStore.getBytes()).isEqualTo(128 * ColdTransactionStore.RECORD_BYTES);
+        assertThat(history.get(150)).isSameAs(hot);
+        assertThat(history.get(5).getId()).isEqualTo(5);
+        assertThat(history.get(5).getBalance()).isEqualTo(new BigDecimal(5));
+        assertThat(history.spill(50, coldStore)).isEqualTo(0);
+    }
+
+    @Test
+    public void testAppendAndCopyAfterSpill() {
+        ColdTransactionStore coldStore = ColdTransactionStore.offHeap(ColdTransactionStore.DEFAULT_BLOCK_BYTES);
+        TransactionHistory history = createHistory(130);
+        TransactionHistory copy = history.copy();
+
+        history.spill(0, coldStore);
+        copy.add(createTransaction(130));
+
+        assertThat(copy).hasSize(131);
+        assertThat(copy.get(63).getId()).isEqualTo(63);
+        assertThat(copy.get(130).getId()).isEqualTo(130);
+    }
+
+    @Test
+    public void testStaleCopyBranchesFromSpilledChunk() {
+        ColdTransactionStore coldStore = ColdTransactionStore.offHeap(ColdTransactionStore.DEFAULT_BLOCK_BYTES);
+        TransactionHistory history = createHistory(70);
+        TransactionHistory staleCopy = history.copy();
+        for (int i = 70; i < 200; i++) {
+            history.add(createTransaction(i));
+        }
+        history.spill(0, coldStore);
+
+        staleCopy.add(createTransaction(1000));
+
+        assertThat(staleCopy).hasSize(71);
+        assertThat(staleCopy.get(69).getId()).isEqualTo(69);
+        assertThat(staleCopy.get(70).getId()).isEqualTo(1000);
+        assertThat(history.get(70).getId()).isEqualTo(70);
+    }
+
+    private TransactionHistory createHistory(int size) {
+        TransactionHistory history = new TransactionHistory();
+        for (int i = 0; i < size; i++) {
+            history.add(createTransaction(i));
+        }
+        return history;
+    }
+
+    private AccountTransaction createTransaction(Integer id) {
+        AccountTransaction transaction = new AccountTransaction.Builder()
+                .type(CREDIT)
+                .amount(1)
+                .balance(id)
+                .build();
+        transaction.setId(id);
+        return transaction;
+    }
+}
@@ -0,0 +1,61 @@
+package com.revolut.interview;
+
+import static com.revolut.interview.TransactionType.CREDIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TransactionPageTest {
+
+    @Test
+    public void testFirstPage() {
+        TransactionPage page = TransactionPage.of(history(2, 4, 6, 8), null, 2);
+
+        assertThat(page.getTransactions()).extracting("id").containsExactly(2, 4);
+        assertThat(page.getNextCursor()).isEqualTo(4);
+    }
+
+    @Test
+    public void testPageAfterCursorBetweenIds() {
+        TransactionPage page = TransactionPage.of(history(2, 4, 6, 8), 5, 2);
+
+        assertThat(page.getTransactions()).extracting("id").containsExactly(6, 8);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void testPageAfterLastTransaction() {
+        TransactionPage page = TransactionPage.of(history(2, 4), 4, 10);
+
+        assertThat(page.getTransactions()).isEmpty();
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void testIndexAfter() {
+        List<AccountTransaction> history = history(2, 4, 6, 8, 10);
+
+        assertThat(TransactionPage.indexAfter(history, null)).isEqualTo(0);
+        assertThat(TransactionPage.indexAfter(history, 1)).isEqualTo(0);
+        assertThat(TransactionPage.indexAfter(history, 6)).isEqualTo(3);
+        assertThat(TransactionPage.indexAfter(history, 11)).isEqualTo(5);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testLimitAboveMaximum() {
+        TransactionPage.of(history(2), null, TransactionPage.MAX_LIMIT + 1);
+    }
+
+    private List<AccountTransaction> history(int... ids) {
+        List<AccountTransaction> history = new ArrayList<>();
+        for (int id : ids) {
+            AccountTransaction transaction = new AccountTransaction.Builder().type(CREDIT).amount(1).balance(id).build();
+            transaction.setId(id);
+            history.add(transaction);
+        }
+        return history;
+    }
+}
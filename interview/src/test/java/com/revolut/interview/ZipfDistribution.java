@@ -0,0 +1,36 @@
+package com.revolut.interview;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Picks account numbers from 1 to n, number k with a probability proportional to 1 / k^exponent, so that a few
+ * accounts take most of the traffic as in a real ledger. An exponent of zero picks every account equally.
+ * Numbers are picked by a binary search of the cumulative probabilities, using the random given so runs repeat.
+ */
+final class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    ZipfDistribution(int accounts, double exponent) {
+        Validate.isTrue(accounts > 0, "There must be at least one account!");
+        Validate.isTrue(exponent >= 0, "The exponent cannot be negative!");
+        this.cumulative = new double[accounts];
+        double total = 0;
+        for (int k = 1; k <= accounts; k++) {
+            total += 1 / Math.pow(k, exponent);
+            cumulative[k - 1] = total;
+        }
+        for (int i = 0; i < accounts; i++) {
+            cumulative[i] /= total;
+        }
+        cumulative[accounts - 1] = 1;
+    }
+
+    int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return (index >= 0 ? index + 1 : -index - 1) + 1;
+    }
+}